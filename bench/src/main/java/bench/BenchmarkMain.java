@@ -0,0 +1,35 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so every result comes with
+ * its allocation rate and bytes allocated per operation.  It takes the
+ * same arguments as the JMH command line, such as a benchmark regex or
+ * -p engine=inplace, and the profiler is added to them:
+ *
+ *   java -jar bench/target/benchmarks.jar [jmh options] [regex]
+ *
+ * @author Jerry Chen
+ */
+public class BenchmarkMain {
+    /**
+     * Run the benchmarks.
+     *
+     * @param args JMH command line arguments
+     * @throws RunnerException if a benchmark fails
+     * @throws CommandLineOptionException if the arguments are not JMH's
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
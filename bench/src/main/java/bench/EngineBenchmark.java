@@ -0,0 +1,63 @@
+package bench;
+
+import magnets.MagnetsPuzzle;
+import magnets.MagnetsRun;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves every puzzle in data/ from scratch with any engine Magnets
+ * accepts, presolve included, as in -p engine=sat.
+ *
+ * @author Jerry Chen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+    /** the puzzle file */
+    @Param({"magnets-1.txt", "magnets-2.txt", "magnets-3.txt", "magnets-4.txt", "magnets-5.txt",
+            "magnets-6.txt", "magnets-7.txt", "magnets-8.txt", "magnets-9.txt", "magnets-10.txt",
+            "magnets-11.txt", "magnets-12.txt", "magnets-13.txt", "magnets-14.txt", "magnets-15.txt",
+            "magnets-16.txt", "magnets-nosol.txt"})
+    public String puzzle;
+
+    /** the engine, as given to Magnets */
+    @Param({"inplace", "propagate"})
+    public String engine;
+
+    /** the puzzle, read once */
+    private MagnetsPuzzle loaded;
+
+    /**
+     * Read the puzzle.
+     */
+    @Setup
+    public void setup() {
+        loaded = Puzzles.load(puzzle);
+    }
+
+    /**
+     * Solve with the chosen engine.
+     *
+     * @return the outcome
+     */
+    @Benchmark
+    public MagnetsRun solve() {
+        return MagnetsRun.run(loaded, engine, false);
+    }
+}
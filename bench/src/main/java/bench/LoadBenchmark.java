@@ -0,0 +1,74 @@
+package bench;
+
+import magnets.MagnetsConfig;
+import magnets.MagnetsPuzzle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times loading every puzzle in data/: parsing the file, and building the
+ * initial configuration of an already parsed puzzle.
+ *
+ * @author Jerry Chen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+    /** the puzzle file */
+    @Param({"magnets-1.txt", "magnets-2.txt", "magnets-3.txt", "magnets-4.txt", "magnets-5.txt",
+            "magnets-6.txt", "magnets-7.txt", "magnets-8.txt", "magnets-9.txt", "magnets-10.txt",
+            "magnets-11.txt", "magnets-12.txt", "magnets-13.txt", "magnets-14.txt", "magnets-15.txt",
+            "magnets-16.txt", "magnets-nosol.txt"})
+    public String puzzle;
+
+    /** the path of the puzzle file */
+    private String path;
+    /** the puzzle, read once */
+    private MagnetsPuzzle loaded;
+
+    /**
+     * Find and read the puzzle.
+     */
+    @Setup
+    public void setup() {
+        path = Puzzles.file(puzzle).toString();
+        loaded = Puzzles.load(puzzle);
+    }
+
+    /**
+     * Parse the puzzle file.
+     *
+     * @return the puzzle
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public MagnetsPuzzle read() throws IOException {
+        return MagnetsPuzzle.read(path);
+    }
+
+    /**
+     * Build the initial configuration of the puzzle.
+     *
+     * @return the configuration
+     */
+    @Benchmark
+    public MagnetsConfig initialConfig() {
+        return new MagnetsConfig(loaded);
+    }
+}
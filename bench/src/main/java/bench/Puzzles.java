@@ -0,0 +1,66 @@
+package bench;
+
+import magnets.MagnetsGenerator;
+import magnets.MagnetsPuzzle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The puzzles the benchmarks run on: the files in data/, and synthetic
+ * boards of any size.  The data directory is data/ under the working
+ * directory, or ../data when the benchmarks are run from bench/, and can
+ * be set with -Dmagnets.data=dir.
+ *
+ * @author Jerry Chen
+ */
+final class Puzzles {
+    /**
+     * There are only static methods.
+     */
+    private Puzzles() {
+    }
+
+    /**
+     * Find a puzzle file of the data directory.
+     *
+     * @param name the file name, such as magnets-1.txt
+     * @return its path
+     */
+    static Path file(String name) {
+        String dir = System.getProperty("magnets.data");
+        if (dir == null) {
+            dir = Files.isDirectory(Paths.get("data")) ? "data" : "../data";
+        }
+        return Paths.get(dir, name);
+    }
+
+    /**
+     * Read a puzzle file of the data directory.
+     *
+     * @param name the file name, such as magnets-1.txt
+     * @return the puzzle
+     * @throws UncheckedIOException if it cannot be read
+     */
+    static MagnetsPuzzle load(String name) {
+        try {
+            return MagnetsPuzzle.read(file(name).toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Build a square board with a known solution, every count given.
+     *
+     * @param size the number of rows and columns, which must be even
+     * @param seed the seed, so every run builds the same board
+     * @return the puzzle
+     */
+    static MagnetsPuzzle generate(int size, long seed) {
+        return new MagnetsGenerator(seed).generate(size, size, 0, false);
+    }
+}
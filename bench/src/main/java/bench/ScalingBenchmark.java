@@ -0,0 +1,66 @@
+package bench;
+
+import magnets.MagnetsPuzzle;
+import magnets.MagnetsRun;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves synthetic square boards of increasing size, to see how each
+ * engine scales.  The boards are built from a fixed seed, so every run
+ * times the same puzzles.  Every count is given, which the backtracking
+ * engines find hard past 12x12; the sat engine goes much further, as in
+ * -p engine=sat -p size=16,24,32.
+ *
+ * @author Jerry Chen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBenchmark {
+    /** the seed every board is built from */
+    private final static long SEED = 2024;
+
+    /** the rows and columns of the board */
+    @Param({"4", "6", "8", "10", "12"})
+    public int size;
+
+    /** the engine, as given to Magnets */
+    @Param({"inplace", "propagate", "sat"})
+    public String engine;
+
+    /** the board */
+    private MagnetsPuzzle puzzle;
+
+    /**
+     * Build the board.
+     */
+    @Setup
+    public void setup() {
+        puzzle = Puzzles.generate(size, SEED + size);
+    }
+
+    /**
+     * Solve the board.
+     *
+     * @return the outcome
+     */
+    @Benchmark
+    public MagnetsRun solve() {
+        return MagnetsRun.run(puzzle, engine, false);
+    }
+}
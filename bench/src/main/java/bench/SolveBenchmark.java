@@ -0,0 +1,75 @@
+package bench;
+
+import backtracking.Backtracker;
+import backtracking.Configuration;
+import magnets.MagnetsConfig;
+import magnets.MagnetsPuzzle;
+import magnets.ValueOrdering;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves every puzzle in data/ from scratch with the classic recursive
+ * Backtracker.solve on a MagnetsConfig, with the fixed and the slack
+ * value orderings.  EngineBenchmark times the engines Magnets accepts.
+ *
+ * @author Jerry Chen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SolveBenchmark {
+    /** the puzzle file */
+    @Param({"magnets-1.txt", "magnets-2.txt", "magnets-3.txt", "magnets-4.txt", "magnets-5.txt",
+            "magnets-6.txt", "magnets-7.txt", "magnets-8.txt", "magnets-9.txt", "magnets-10.txt",
+            "magnets-11.txt", "magnets-12.txt", "magnets-13.txt", "magnets-14.txt", "magnets-15.txt",
+            "magnets-16.txt", "magnets-nosol.txt"})
+    public String puzzle;
+
+    /** the puzzle, read once */
+    private MagnetsPuzzle loaded;
+
+    /**
+     * Read the puzzle.
+     */
+    @Setup
+    public void setup() {
+        loaded = Puzzles.load(puzzle);
+    }
+
+    /**
+     * Solve with the classic recursive search.
+     *
+     * @return the solution
+     */
+    @Benchmark
+    public Optional<Configuration> solve() {
+        return new Backtracker(false).solve(new MagnetsConfig(loaded));
+    }
+
+    /**
+     * Solve with the classic recursive search, trying the values that best
+     * fit the counts first.
+     *
+     * @return the solution
+     */
+    @Benchmark
+    public Optional<Configuration> solveSlack() {
+        return new Backtracker(false).solve(new MagnetsConfig(loaded, ValueOrdering.SLACK));
+    }
+}
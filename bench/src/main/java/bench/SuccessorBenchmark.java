@@ -0,0 +1,145 @@
+package bench;
+
+import backtracking.Configuration;
+import magnets.MagnetsConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the hot paths of one step of the search on every puzzle in
+ * data/: building the successors of a configuration, eagerly and lazily,
+ * checking them with isValid(), and the in-place apply, check and undo
+ * of a move.  Each benchmark goes over the same sample of configurations
+ * taken from the search tree at every depth.
+ *
+ * @author Jerry Chen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuccessorBenchmark {
+    /** the most configurations sampled from the search tree */
+    private final static int SAMPLE = 256;
+
+    /** the puzzle file */
+    @Param({"magnets-1.txt", "magnets-2.txt", "magnets-3.txt", "magnets-4.txt", "magnets-5.txt",
+            "magnets-6.txt", "magnets-7.txt", "magnets-8.txt", "magnets-9.txt", "magnets-10.txt",
+            "magnets-11.txt", "magnets-12.txt", "magnets-13.txt", "magnets-14.txt", "magnets-15.txt",
+            "magnets-16.txt", "magnets-nosol.txt"})
+    public String puzzle;
+
+    /** valid configurations, from every depth of the search tree */
+    private MagnetsConfig[] configs;
+    /** every successor of the sampled configurations, valid or not */
+    private Configuration[] successors;
+
+    /**
+     * Walk the search tree a level at a time, keeping a sample of every
+     * level, until there are enough configurations or the tree runs out.
+     */
+    @Setup
+    public void setup() {
+        List<MagnetsConfig> sample = new ArrayList<>();
+        List<Configuration> level = new ArrayList<>();
+        level.add(new MagnetsConfig(Puzzles.load(puzzle)));
+        while (!level.isEmpty() && sample.size() < SAMPLE) {
+            List<Configuration> next = new ArrayList<>();
+            // spread a level's share of the sample across the level
+            int stride = Math.max(1, level.size() / 8);
+            for (int i = 0; i < level.size(); i += stride) {
+                if (!level.get(i).isGoal()) {
+                    sample.add((MagnetsConfig) level.get(i));
+                }
+            }
+            for (Configuration config : level) {
+                Iterator<Configuration> it = config.successorIterator();
+                while (it.hasNext() && next.size() < SAMPLE * 4) {
+                    next.add(it.next());
+                }
+            }
+            level = next;
+        }
+        configs = sample.toArray(new MagnetsConfig[0]);
+        List<Configuration> all = new ArrayList<>();
+        for (MagnetsConfig config : configs) {
+            all.addAll(config.getSuccessors());
+        }
+        successors = all.toArray(new Configuration[0]);
+    }
+
+    /**
+     * Build every successor, valid or not, as getSuccessors() does.
+     *
+     * @param bh takes the successors
+     */
+    @Benchmark
+    public void getSuccessors(Blackhole bh) {
+        for (MagnetsConfig config : configs) {
+            Collection<Configuration> children = config.getSuccessors();
+            bh.consume(children);
+        }
+    }
+
+    /**
+     * Build only the valid successors, as the search does.
+     *
+     * @param bh takes the successors
+     */
+    @Benchmark
+    public void successorIterator(Blackhole bh) {
+        for (MagnetsConfig config : configs) {
+            Iterator<Configuration> it = config.successorIterator();
+            while (it.hasNext()) {
+                bh.consume(it.next());
+            }
+        }
+    }
+
+    /**
+     * Check successors that are already built.
+     *
+     * @param bh takes the verdicts
+     */
+    @Benchmark
+    public void isValid(Blackhole bh) {
+        for (Configuration config : successors) {
+            bh.consume(config.isValid());
+        }
+    }
+
+    /**
+     * Apply, check and undo every move in place.
+     *
+     * @param bh takes the verdicts
+     */
+    @Benchmark
+    public void applyMove(Blackhole bh) {
+        for (MagnetsConfig config : configs) {
+            int moves = config.getMoveCount();
+            for (int move = 0; move < moves; move++) {
+                config.applyMove(move);
+                bh.consume(config.isValid());
+                config.undoMove();
+            }
+        }
+    }
+}
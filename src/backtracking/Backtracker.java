@@ -1,20 +1,72 @@
 package backtracking;
 
-import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class represents the classic recursive backtracking algorithm.
  * It has a solver that can take a valid configuration and return a
  * solution, if one exists.
  *
+ * If it is given a TranspositionTable, every MemoizableConfiguration that
+ * is searched without finding a solution is recorded there, and later
+ * configurations with the same key are skipped instead of searched again.
+ * The recursive solve and count methods use the table; the iterative
+ * ones and solutions() do not.
+ *
+ * A SearchListener, if one is set, is told about the same configurations
+ * that debugging prints, along with their depth in the search tree, and
+ * about each configuration that is backed out of.  The solve methods and
+ * solutions() tell it when they start and finish; the count methods do
+ * not use it.
+ *
+ * solve(), solveInPlace(), solveIterative() and solveIterativeInPlace()
+ * can also run under SearchLimits, which stop the search once a timeout
+ * passes, a number of configurations have been generated, or it is
+ * cancelled or interrupted.
+ * A backtracker runs one search at a time.
+ *
  * @author RIT CS
  */
 public class Backtracker {
+    /** the initial size of the move stack of the iterative search */
+    private final static int INITIAL_DEPTH = 64;
+    /** how many configurations a limited search generates between checks of the clock */
+    private final static int CHECK_INTERVAL = 1 << 10;
     /** Should debug output be enabled? */
     private boolean debug;
     /** counts number of configurations generated */
-    private int configCount;
+    private long configCount;
+    /** the failed configurations seen so far, or null to not memoize */
+    private final TranspositionTable table;
+    /** receives the configurations visited, or null for none */
+    private SearchListener listener;
+    /** the limits of the running search, or null if it has none */
+    private SearchLimits limits;
+    /** the config count at which the running search stops */
+    private long nodeLimit;
+    /** the System.nanoTime() at which the running search stops */
+    private long deadline;
+    /** the System.nanoTime() at which progress is next reported */
+    private long nextProgress;
+    /** the config count at which the limits are next checked */
+    private long nextCheck;
+    /** when the running search started, from System.nanoTime() */
+    private long startTime;
+    /** the config count when the running search started */
+    private long startCount;
+    /** why the running search stopped early, or null if it has not */
+    private SolveResult.Status stop;
 
     /**
      * Initialize a new backtracker.
@@ -22,7 +74,20 @@ public class Backtracker {
      * @param debug Is debugging output enabled?
      */
     public Backtracker(boolean debug) {
+        this(debug, null);
+    }
+
+    /**
+     * Initialize a new backtracker that skips configurations already
+     * known to fail.
+     *
+     * @param debug Is debugging output enabled?
+     * @param table the table of failed configurations, or null to not
+     *  memoize
+     */
+    public Backtracker(boolean debug, TranspositionTable table) {
         this.debug = debug;
+        this.table = table;
         if (this.debug) {
             System.out.println("Backtracker debugging enabled...");
         }
@@ -42,41 +107,649 @@ public class Backtracker {
         }
     }
 
+    /**
+     * Set the listener that is told about every configuration visited.
+     * Use SearchListener.of() to set more than one.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Tell the listener, if there is one, about a configuration.
+     *
+     * @param kind What happened to the config
+     * @param depth Its depth in the search tree
+     * @param config The config
+     */
+    private void visit(SearchListener.Kind kind, int depth, Configuration config) {
+        if (listener != null) {
+            listener.record(kind, depth, config);
+        }
+    }
+
+    /**
+     * Tell the listener, if there is one, that a search is starting.
+     *
+     * @param config The config the search starts from
+     */
+    private void started(Configuration config) {
+        if (listener != null) {
+            listener.started(config);
+            listener.record(SearchListener.Kind.CURRENT, 0, config);
+        }
+    }
+
+    /**
+     * Tell the listener, if there is one, that a configuration has been
+     * backed out of.
+     *
+     * @param depth The depth of the config
+     */
+    private void backtracked(int depth) {
+        if (listener != null) {
+            listener.backtracked(depth);
+        }
+    }
+
+    /**
+     * Tell the listener, if there is one, that a search has finished.
+     *
+     * @param sol The outcome of the search
+     * @return sol
+     */
+    private Optional<Configuration> finished(Optional<Configuration> sol) {
+        if (listener != null) {
+            listener.finished(sol.isPresent());
+        }
+        return sol;
+    }
+
+    /**
+     * Start a search under limits.
+     *
+     * @param limits The limits
+     */
+    private void begin(SearchLimits limits) {
+        boolean unlimited = limits.getTimeout() == null && limits.getMaxNodes() == Long.MAX_VALUE
+                && limits.getCancellation() == null && limits.getProgress() == null;
+        this.limits = unlimited ? null : limits;
+        this.stop = null;
+        this.startTime = System.nanoTime();
+        this.startCount = configCount;
+        long maxNodes = limits.getMaxNodes();
+        this.nodeLimit = maxNodes > Long.MAX_VALUE - configCount ? Long.MAX_VALUE : configCount + maxNodes;
+        this.deadline = limits.getDeadline(startTime);
+        this.nextProgress = startTime + limits.getProgressNanos();
+        this.nextCheck = configCount;  // check at once, in case it is already cancelled
+    }
+
+    /**
+     * Finish a search under limits.
+     *
+     * @param sol The solution it found, if any
+     * @return The outcome
+     */
+    private SolveResult end(Optional<Configuration> sol) {
+        SolveResult.Status status = sol.isPresent() ? SolveResult.Status.SOLVED
+                : stop != null ? stop : SolveResult.Status.UNSOLVABLE;
+        this.limits = null;
+        this.stop = null;
+        return new SolveResult(status, sol, configCount - startCount, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Should the running search stop?  The node limit is checked every
+     * time, and the clock, the token and the thread's interrupt flag every
+     * CHECK_INTERVAL configurations, when progress is also reported.
+     *
+     * @return true once a limit has been reached
+     */
+    private boolean isStopped() {
+        if (limits == null) {
+            return false;
+        }
+        if (stop == null && configCount >= nodeLimit) {
+            stop = SolveResult.Status.NODE_LIMIT;
+        }
+        if (stop == null && configCount >= nextCheck) {
+            nextCheck = configCount + CHECK_INTERVAL;
+            CancellationToken token = limits.getCancellation();
+            long now = System.nanoTime();
+            if ((token != null && token.isCancelled()) || Thread.currentThread().isInterrupted()) {
+                stop = SolveResult.Status.CANCELLED;
+            } else if (now - deadline >= 0) {
+                stop = SolveResult.Status.TIMED_OUT;
+            } else if (limits.getProgress() != null && now - nextProgress >= 0) {
+                nextProgress = now + limits.getProgressNanos();
+                limits.getProgress().progress(configCount - startCount, now - startTime);
+            }
+        }
+        return stop != null;
+    }
+
+    /**
+     * Get the memo key of a configuration, if memoizing is enabled and
+     * the configuration supports it.
+     *
+     * @param config The config about to be searched
+     * @return The key, or null if the config is not memoized
+     */
+    private Object memoKey(Configuration config) {
+        if (table == null || !(config instanceof MemoizableConfiguration)) {
+            return null;
+        }
+        return ((MemoizableConfiguration) config).getMemoKey();
+    }
+
+    /**
+     * Get the successors of a configuration to search.  While debugging
+     * or listening, the successors the iterator skips as invalid are still
+     * printed and recorded as invalid, as the in-place search does, though
+     * only the ones handed out are counted.
+     *
+     * @param config The config being searched
+     * @param depth Its depth in the search tree
+     * @return The iterator over its successors
+     */
+    private Iterator<Configuration> successors(Configuration config, int depth) {
+        if (!debug && listener == null) {
+            return config.successorIterator();
+        }
+        return config.successorIterator(child -> {
+            debugPrint("\tInvalid successor", child);
+            visit(SearchListener.Kind.INVALID, depth + 1, child);
+        });
+    }
+
     /**
      * Try to find a solution, if one exists, for a given configuration.
+     * Successors are pulled one at a time from the configuration's
+     * successor iterator, so only the ones that are handed out are built
+     * and counted.
      *
      * @param config A valid configuration
      * @return A solution config, or null if no solution
      */
     public Optional<Configuration> solve(Configuration config) {
+        started(config);
+        return finished(solve(config, 0));
+    }
+
+    /**
+     * Search under a configuration, for solve().
+     *
+     * @param config A valid configuration
+     * @param depth Its depth in the search tree
+     * @return A solution config, or empty if no solution
+     */
+    private Optional<Configuration> solve(Configuration config, int depth) {
         debugPrint("Current config", config);
         if (config.isGoal()) {
+            visit(SearchListener.Kind.GOAL, depth, config);
             return Optional.of(config);
         } else {
-            Collection<Configuration> successors = config.getSuccessors();
-            configCount += successors.size();
-            for (Configuration child : successors) {
+            Object key = memoKey(config);
+            if (key != null && table.isFailure(key)) {
+                return Optional.empty();
+            }
+            Iterator<Configuration> successors = successors(config, depth);
+            while (successors.hasNext() && !isStopped()) {
+                Configuration child = successors.next();
+                configCount++;
                 if (child.isValid()) {
                     debugPrint("Valid successor", child);
-                    Optional<Configuration> sol = solve(child);
+                    visit(SearchListener.Kind.VALID, depth + 1, child);
+                    Optional<Configuration> sol = solve(child, depth + 1);
                     if (sol.isPresent()) {
                         return sol;
                     }
                 } else {
                     debugPrint("\tInvalid successor", child);
+                    visit(SearchListener.Kind.INVALID, depth + 1, child);
+                }
+            }
+            // implicit backtracking happens here, unless the search was stopped
+            if (stop == null) {
+                backtracked(depth);
+                if (key != null) {
+                    table.recordFailure(key);
                 }
             }
-            // implicit backtracking happens here
         }
         return Optional.empty();
     }
 
+    /**
+     * Try to find a solution, if one exists, by mutating the given
+     * configuration in place.  Each move is applied, checked and undone
+     * again when backtracking, so no successor configurations are built.
+     * If a solution is found, the configuration is left in its goal state.
+     *
+     * @param config A valid configuration
+     * @return The solved config, or empty if no solution
+     */
+    public Optional<Configuration> solveInPlace(MutableConfiguration config) {
+        started(config);
+        return finished(solveInPlace(config, 0));
+    }
+
+    /**
+     * Search under a configuration in place, for solveInPlace().
+     *
+     * @param config A valid configuration
+     * @param depth Its depth in the search tree
+     * @return The solved config, or empty if no solution
+     */
+    private Optional<Configuration> solveInPlace(MutableConfiguration config, int depth) {
+        debugPrint("Current config", config);
+        if (config.isGoal()) {
+            visit(SearchListener.Kind.GOAL, depth, config);
+            return Optional.of(config);
+        } else {
+            Object key = memoKey(config);
+            if (key != null && table.isFailure(key)) {
+                return Optional.empty();
+            }
+            int moves = config.getMoveCount();
+            configCount += moves;
+            for (int move = 0; move < moves && !isStopped(); move++) {
+                config.applyMove(move);
+                if (config.isValid()) {
+                    debugPrint("Valid successor", config);
+                    visit(SearchListener.Kind.VALID, depth + 1, config);
+                    Optional<Configuration> sol = solveInPlace(config, depth + 1);
+                    if (sol.isPresent()) {
+                        return sol;
+                    }
+                } else {
+                    debugPrint("\tInvalid successor", config);
+                    visit(SearchListener.Kind.INVALID, depth + 1, config);
+                }
+                config.undoMove();
+            }
+            if (stop == null) {
+                backtracked(depth);
+                if (key != null) {
+                    table.recordFailure(key);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Try to find a solution like solve(), stopping early if a limit is
+     * reached.  The result tells a solution, a proof there is none and a
+     * search that ran out of budget apart.
+     *
+     * @param config A valid configuration
+     * @param limits The limits to search under
+     * @return The outcome
+     */
+    public SolveResult solve(Configuration config, SearchLimits limits) {
+        begin(limits);
+        try {
+            return end(solve(config));
+        } finally {
+            this.limits = null;
+        }
+    }
+
+    /**
+     * Try to find a solution like solveInPlace(), stopping early if a
+     * limit is reached.  A search that stops early undoes its moves, so
+     * the configuration is left as it started.
+     *
+     * @param config A valid configuration
+     * @param limits The limits to search under
+     * @return The outcome
+     */
+    public SolveResult solveInPlace(MutableConfiguration config, SearchLimits limits) {
+        begin(limits);
+        try {
+            return end(solveInPlace(config));
+        } finally {
+            this.limits = null;
+        }
+    }
+
+    /**
+     * Run solve() with limits on an executor.  Cancelling the future
+     * cancels the search, which stops within CHECK_INTERVAL configurations.
+     * Progress is reported on the executor's thread, so a scheduler can
+     * watch slow searches and cancel or reprioritize them.
+     *
+     * @param config A valid configuration
+     * @param limits The limits to search under
+     * @param executor Where to run the search
+     * @return The outcome, once the search is done
+     */
+    public CompletableFuture<SolveResult> solveAsync(Configuration config, SearchLimits limits, Executor executor) {
+        CancellationToken token = limits.getCancellation() != null ? limits.getCancellation() : new CancellationToken();
+        SearchLimits cancellable = limits.withCancellation(token);
+        CompletableFuture<SolveResult> future = new CompletableFuture<>();
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                token.cancel();
+            }
+        });
+        executor.execute(() -> {
+            try {
+                future.complete(solve(config, cancellable));
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Try to find a solution, if one exists, without recursion.  The search
+     * keeps its own stack of successor iterators on the heap, so the depth
+     * of the search is not limited by the thread's stack size.  It finds
+     * the same solution as solve().
+     *
+     * @param config A valid configuration
+     * @return A solution config, or empty if no solution
+     */
+    public Optional<Configuration> solveIterative(Configuration config) {
+        Iterator<Configuration> solutions = new SolutionIterator(config);
+        return solutions.hasNext() ? Optional.of(solutions.next()) : Optional.empty();
+    }
+
+    /**
+     * Try to find a solution like solveIterative(), stopping early if a
+     * limit is reached.
+     *
+     * @param config A valid configuration
+     * @param limits The limits to search under
+     * @return The outcome
+     */
+    public SolveResult solveIterative(Configuration config, SearchLimits limits) {
+        begin(limits);
+        try {
+            return end(solveIterative(config));
+        } finally {
+            this.limits = null;
+        }
+    }
+
+    /**
+     * Try to find a solution, if one exists, without recursion, by mutating
+     * the given configuration in place.  The only stack is an int array
+     * holding the next move to try at each depth, so the search can be as
+     * deep as the heap allows.  It finds the same solution as
+     * solveInPlace(), and leaves the configuration in its goal state if
+     * there is one.
+     *
+     * @param config A valid configuration
+     * @return The solved config, or empty if no solution
+     */
+    public Optional<Configuration> solveIterativeInPlace(MutableConfiguration config) {
+        debugPrint("Current config", config);
+        started(config);
+        if (config.isGoal()) {
+            visit(SearchListener.Kind.GOAL, 0, config);
+            return finished(Optional.of(config));
+        }
+        int[] nextMove = new int[INITIAL_DEPTH];
+        int depth = 0;
+        configCount += config.getMoveCount();
+        while (depth >= 0) {
+            int move = nextMove[depth];
+            if (move > 0) {
+                config.undoMove();  // the previous move at this depth is done with
+            }
+            if (move == config.getMoveCount()) {
+                backtracked(depth);
+                depth--;  // backtracking happens here
+                continue;
+            }
+            if (isStopped()) {
+                // undo the moves that led here, as the recursion would on its way out
+                for (; depth > 0; depth--) {
+                    config.undoMove();
+                }
+                break;
+            }
+            nextMove[depth] = move + 1;
+            config.applyMove(move);
+            if (config.isValid()) {
+                debugPrint("Valid successor", config);
+                visit(SearchListener.Kind.VALID, depth + 1, config);
+                debugPrint("Current config", config);
+                if (config.isGoal()) {
+                    visit(SearchListener.Kind.GOAL, depth + 1, config);
+                    return finished(Optional.of(config));
+                }
+                depth++;
+                if (depth == nextMove.length) {
+                    nextMove = Arrays.copyOf(nextMove, nextMove.length * 2);
+                }
+                nextMove[depth] = 0;
+                configCount += config.getMoveCount();
+            } else {
+                debugPrint("\tInvalid successor", config);
+                visit(SearchListener.Kind.INVALID, depth + 1, config);
+            }
+        }
+        return finished(Optional.empty());
+    }
+
+    /**
+     * Try to find a solution like solveIterativeInPlace(), stopping early
+     * if a limit is reached.  A search that stops early undoes its moves,
+     * so the configuration is left as it started.
+     *
+     * @param config A valid configuration
+     * @param limits The limits to search under
+     * @return The outcome
+     */
+    public SolveResult solveIterativeInPlace(MutableConfiguration config, SearchLimits limits) {
+        begin(limits);
+        try {
+            return end(solveIterativeInPlace(config));
+        } finally {
+            this.limits = null;
+        }
+    }
+
+    /**
+     * Enumerate every solution for a given configuration.  The stream is
+     * lazy: the search only runs as far as is needed to produce the next
+     * solution, so stream.limit(n) stops the search after n solutions.
+     * Solutions come out in the order solve() would find them, so the first
+     * one is the solution solve() returns.  If a SymmetricConfiguration
+     * broke its symmetry, each solution is followed by its mirror image.
+     *
+     * @param config A valid configuration
+     * @return A stream of every solution config
+     */
+    public Stream<Configuration> solutions(Configuration config) {
+        Iterator<Configuration> solutions = new SolutionIterator(config);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+                solutions, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Count the solutions for a given configuration, stopping as soon as
+     * limit of them have been found.  A limit of 2 is enough to tell
+     * whether a puzzle has a unique solution.  Solutions are only counted,
+     * never kept.  A goal of a SymmetricConfiguration that broke its
+     * symmetry counts for its mirror image as well.
+     *
+     * @param config A valid configuration
+     * @param limit The most solutions to look for
+     * @return The number of solutions, at most limit
+     */
+    public long countSolutions(Configuration config, long limit) {
+        if (limit <= 0) {
+            return 0;
+        }
+        if (config.isGoal()) {
+            return Math.min(SymmetricConfiguration.solutionsOf(config), limit);
+        }
+        Object key = memoKey(config);
+        if (key != null && table.isFailure(key)) {
+            return 0;
+        }
+        long count = 0;
+        Iterator<Configuration> successors = config.successorIterator();
+        while (count < limit && successors.hasNext()) {
+            Configuration child = successors.next();
+            configCount++;
+            if (child.isValid()) {
+                count += countSolutions(child, limit - count);
+            }
+        }
+        if (count == 0 && key != null) {
+            table.recordFailure(key);
+        }
+        return count;
+    }
+
+    /**
+     * Count the solutions for a given configuration by mutating it in
+     * place, stopping as soon as limit of them have been found.  No
+     * configurations are built at all, and the configuration is restored
+     * to how it started once the count is done.
+     *
+     * @param config A valid configuration
+     * @param limit The most solutions to look for
+     * @return The number of solutions, at most limit
+     */
+    public long countSolutionsInPlace(MutableConfiguration config, long limit) {
+        if (limit <= 0) {
+            return 0;
+        }
+        if (config.isGoal()) {
+            return Math.min(SymmetricConfiguration.solutionsOf(config), limit);
+        }
+        Object key = memoKey(config);
+        if (key != null && table.isFailure(key)) {
+            return 0;
+        }
+        long count = 0;
+        int moves = config.getMoveCount();
+        configCount += moves;
+        for (int move = 0; count < limit && move < moves; move++) {
+            config.applyMove(move);
+            if (config.isValid()) {
+                count += countSolutionsInPlace(config, limit - count);
+            }
+            config.undoMove();
+        }
+        if (count == 0 && key != null) {
+            table.recordFailure(key);
+        }
+        return count;
+    }
+
     /**
      * Get the number of configurations processed during backtracking.
      *
      * @return config count
      */
-    public int getConfigCount() {
+    public long getConfigCount() {
         return this.configCount;
     }
+
+    /**
+     * A depth first walk of the search tree that stops at each solution.
+     * It keeps a stack of successor iterators, one per level, so the
+     * search can be picked up again where it left off.
+     */
+    private class SolutionIterator implements Iterator<Configuration> {
+        /** the successors still to visit at each level, deepest on top */
+        private final Deque<Iterator<Configuration>> stack;
+        /** the next solution, or null if it has not been searched for yet */
+        private Configuration next;
+        /** has a solution been found? */
+        private boolean solved;
+        /** the mirror image of the previous solution, or null */
+        private Configuration mirror;
+
+        /**
+         * Start a walk of the tree under a configuration.
+         *
+         * @param config A valid configuration
+         */
+        SolutionIterator(Configuration config) {
+            this.stack = new ArrayDeque<>();
+            debugPrint("Current config", config);
+            started(config);
+            if (config.isGoal()) {
+                visit(SearchListener.Kind.GOAL, 0, config);
+                this.next = config;
+                this.solved = true;
+                if (listener != null) {
+                    listener.finished(true);
+                }
+            } else {
+                stack.push(successors(config, 0));
+            }
+        }
+
+        /**
+         * Continue the walk until the next solution is reached.
+         *
+         * @return the next solution, or null if there are no more
+         */
+        private Configuration search() {
+            if (stack.isEmpty()) {
+                return null;
+            }
+            while (!stack.isEmpty() && !isStopped()) {
+                Iterator<Configuration> successors = stack.peek();
+                if (!successors.hasNext()) {
+                    backtracked(stack.size() - 1);
+                    stack.pop();  // backtracking happens here
+                    continue;
+                }
+                Configuration child = successors.next();
+                configCount++;
+                if (child.isValid()) {
+                    debugPrint("Valid successor", child);
+                    visit(SearchListener.Kind.VALID, stack.size(), child);
+                    debugPrint("Current config", child);
+                    if (child.isGoal()) {
+                        visit(SearchListener.Kind.GOAL, stack.size(), child);
+                        solved = true;
+                        return child;
+                    }
+                    stack.push(successors(child, stack.size()));
+                } else {
+                    debugPrint("\tInvalid successor", child);
+                    visit(SearchListener.Kind.INVALID, stack.size(), child);
+                }
+            }
+            if (listener != null) {
+                listener.finished(solved);
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = search();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Configuration next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Configuration solution = next;
+            // the mirror image is not in the tree, so it comes right after
+            next = solution == mirror ? null : SymmetricConfiguration.hiddenMirror(solution);
+            mirror = next;
+            return solution;
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package backtracking;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reads back the events of a trace file written by BinaryTraceWriter,
+ * one at a time.
+ *
+ * @author RIT CS
+ */
+public class BinaryTraceReader implements Closeable {
+    /** the kinds in the order of their codes */
+    private final static SearchListener.Kind[] KINDS = SearchListener.Kind.values();
+    /** the trace file */
+    private final DataInputStream in;
+    /** the current event */
+    private long event;
+
+    /**
+     * Open a trace file.
+     *
+     * @param file the trace file
+     * @throws IOException if it cannot be read, or is not a trace file
+     */
+    public BinaryTraceReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != BinaryTraceWriter.MAGIC) {
+                throw new IOException(file + " is not a trace file");
+            }
+            int version = in.readInt();
+            if (version != BinaryTraceWriter.VERSION) {
+                throw new IOException("Unsupported trace version " + version + " in " + file);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Move on to the next event.
+     *
+     * @return false at the end of the trace
+     * @throws IOException if the file cannot be read
+     */
+    public boolean next() throws IOException {
+        try {
+            event = in.readLong();
+            return true;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get what happened in the current event.
+     *
+     * @return the kind
+     */
+    public SearchListener.Kind getKind() {
+        return KINDS[(int) (event >>> 62)];
+    }
+
+    /**
+     * Get the depth of the current event.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return (int) (event >>> 40) & BinaryTraceWriter.MAX_DEPTH;
+    }
+
+    /**
+     * Get the position of the current event.
+     *
+     * @return the position, or -1 if there is none
+     */
+    public int getPosition() {
+        return (int) (event >>> 8) - 1;
+    }
+
+    /**
+     * Get the value of the current event.
+     *
+     * @return the value, from 0 to 255
+     */
+    public int getValue() {
+        return (int) event & 0xFF;
+    }
+
+    /**
+     * Close the trace file.
+     *
+     * @throws IOException if it cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
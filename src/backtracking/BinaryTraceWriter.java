@@ -0,0 +1,242 @@
+package backtracking;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A search trace that writes compact binary events to a file.  The
+ * search thread only packs each event into a long and puts it in a ring
+ * buffer; a background thread drains the buffer to the file, so the
+ * search never waits on I/O.  If the buffer fills up, events are either
+ * dropped and counted, or the search waits for room, as chosen when the
+ * trace is created.  While the buffer stays empty the background thread
+ * sleeps longer and longer, up to a few milliseconds, so an idle trace
+ * costs next to nothing; the search wakes it once the buffer is half
+ * full.
+ *
+ * Events can be filtered before they reach the buffer: only events up to
+ * a maximum depth are kept, and of those only every n-th (goals are
+ * always kept).
+ *
+ * The file starts with the magic "MTRC" and a version int, followed by
+ * one big-endian long per event, which BinaryTraceReader reads back:
+ * bits 62-63 hold the kind, 40-61 the depth, 8-39 the position plus one,
+ * and 0-7 the value.  Position and value come from a
+ * TraceableConfiguration, and are -1 and 0 for other configurations.
+ *
+ * The ring buffer has a single producer, so a trace may only be recorded
+ * to from one thread at a time.
+ *
+ * @author RIT CS
+ */
+public class BinaryTraceWriter implements SearchListener, Closeable {
+    /** the magic number at the start of a trace file */
+    final static int MAGIC = ('M' << 24) | ('T' << 16) | ('R' << 8) | 'C';
+    /** the version of the trace format */
+    final static int VERSION = 1;
+    /** the largest depth that fits in an event */
+    final static int MAX_DEPTH = (1 << 22) - 1;
+    /** how long either thread waits for the other, in nanoseconds */
+    private final static long WAIT_NANOS = 50_000;
+    /** the longest the writer thread sleeps while the buffer stays empty, in nanoseconds */
+    private final static long MAX_IDLE_NANOS = 4_000_000;
+    /** the events waiting to be written, indexed by sequence & mask */
+    private final long[] ring;
+    /** ring.length - 1 */
+    private final int mask;
+    /** the sequence number of the next event the search will put */
+    private final AtomicLong head;
+    /** the sequence number of the next event the writer will take */
+    private final AtomicLong tail;
+    /** the deepest events kept */
+    private final int maxDepth;
+    /** keep one event in this many */
+    private final int sampleEvery;
+    /** wait for room when the buffer is full, instead of dropping */
+    private final boolean blocking;
+    /** the events that passed the depth filter, for sampling */
+    private long filtered;
+    /** the events dropped because the buffer was full */
+    private long dropped;
+    /** the trace file */
+    private final DataOutputStream out;
+    /** the thread that drains the buffer to the file */
+    private final Thread writer;
+    /** has close() been called? */
+    private volatile boolean closed;
+    /** the error the writer thread met, if any */
+    private volatile IOException failure;
+
+    /**
+     * Create a trace that keeps every event and never drops any.
+     *
+     * @param file the trace file
+     * @throws IOException if the file cannot be written
+     */
+    public BinaryTraceWriter(Path file) throws IOException {
+        this(file, 1 << 16, Integer.MAX_VALUE, 1, true);
+    }
+
+    /**
+     * Create a trace.
+     *
+     * @param file the trace file
+     * @param capacity the number of events the buffer holds, rounded up
+     *  to a power of two
+     * @param maxDepth the deepest events kept
+     * @param sampleEvery keep one event in this many
+     * @param blocking wait for room when the buffer is full, instead of
+     *  dropping events
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if capacity or sampleEvery is not
+     *  positive
+     */
+    public BinaryTraceWriter(Path file, int capacity, int maxDepth, int sampleEvery, boolean blocking)
+            throws IOException {
+        if (capacity <= 0 || capacity > 1 << 30 || sampleEvery <= 0) {
+            throw new IllegalArgumentException("Bad capacity " + capacity + " or sampling " + sampleEvery);
+        }
+        int size = Integer.highestOneBit(capacity);
+        this.ring = new long[size < capacity ? size << 1 : size];
+        this.mask = ring.length - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.maxDepth = maxDepth;
+        this.sampleEvery = sampleEvery;
+        this.blocking = blocking;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        this.writer = new Thread(this::drain, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Pack an event into a long.
+     *
+     * @param kind what happened
+     * @param depth the depth, capped at MAX_DEPTH
+     * @param position the position, or -1
+     * @param value the value, from 0 to 255
+     * @return the event
+     */
+    static long pack(Kind kind, int depth, int position, int value) {
+        return (long) kind.ordinal() << 62
+                | (long) Math.min(depth, MAX_DEPTH) << 40
+                | ((position + 1) & 0xFFFFFFFFL) << 8
+                | (value & 0xFF);
+    }
+
+    @Override
+    public void record(Kind kind, int depth, Configuration config) {
+        if (depth > maxDepth) {
+            return;
+        }
+        if (sampleEvery > 1 && filtered++ % sampleEvery != 0 && kind != Kind.GOAL) {
+            return;
+        }
+        int position = -1;
+        int value = 0;
+        if (config instanceof TraceableConfiguration) {
+            position = ((TraceableConfiguration) config).getTracePosition();
+            value = ((TraceableConfiguration) config).getTraceValue();
+        }
+        long h = head.get();
+        long used = h - tail.get();
+        while (used > mask) {
+            if (!blocking || failure != null) {
+                dropped++;
+                return;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(WAIT_NANOS);
+            used = h - tail.get();
+        }
+        ring[(int) h & mask] = pack(kind, depth, position, value);
+        head.lazySet(h + 1);
+        if (used == ring.length >> 1) {
+            LockSupport.unpark(writer);  // wake an idle writer well before the buffer fills
+        }
+    }
+
+    /**
+     * Drain the buffer to the file until the trace is closed and empty.
+     * Each time the buffer is found empty, the thread sleeps twice as
+     * long as the time before, up to MAX_IDLE_NANOS.  Runs in the writer
+     * thread.
+     */
+    private void drain() {
+        try {
+            long idle = WAIT_NANOS;
+            while (true) {
+                long t = tail.get();
+                long h = head.get();
+                if (t == h) {
+                    if (closed && head.get() == t) {
+                        break;
+                    }
+                    LockSupport.parkNanos(idle);
+                    idle = Math.min(idle * 2, MAX_IDLE_NANOS);
+                    continue;
+                }
+                idle = WAIT_NANOS;
+                for (; t < h; t++) {
+                    out.writeLong(ring[(int) t & mask]);
+                }
+                tail.lazySet(h);
+            }
+            out.close();
+        } catch (IOException e) {
+            failure = e;  // a blocked search carries on, dropping events
+        }
+    }
+
+    /**
+     * Get the number of events dropped because the buffer was full.
+     *
+     * @return the dropped events
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Get the number of events put in the buffer.
+     *
+     * @return the recorded events
+     */
+    public long getRecorded() {
+        return head.get();
+    }
+
+    /**
+     * Write out every event still in the buffer and close the file.
+     *
+     * @throws IOException if the writer thread could not write the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the trace");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
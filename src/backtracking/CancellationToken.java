@@ -0,0 +1,28 @@
+package backtracking;
+
+/**
+ * A flag that asks a running search to stop.  It can be set from any
+ * thread, and the search notices it within a few thousand configurations.
+ *
+ * @author RIT CS
+ */
+public class CancellationToken {
+    /** has cancel() been called? */
+    private volatile boolean cancelled;
+
+    /**
+     * Ask every search holding this token to stop.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Has the search been asked to stop?
+     *
+     * @return true once cancel() has been called
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
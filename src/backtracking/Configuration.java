@@ -1,6 +1,8 @@
 package backtracking;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * The representation of a single configuration for a puzzle.
@@ -18,6 +20,37 @@ public interface Configuration {
      */
     List<Configuration> getSuccessors();
 
+    /**
+     * Get the successors from the current one lazily, one at a time.
+     * Puzzles can override this to skip successors that are known to be
+     * invalid before paying to build them.  By default every successor
+     * from getSuccessors() is returned.
+     *
+     * @return An iterator over the successors, possibly without some
+     *  of the invalid ones
+     */
+    default Iterator<Configuration> successorIterator() {
+        return getSuccessors().iterator();
+    }
+
+    /**
+     * Get the successors lazily like successorIterator(), handing every
+     * successor the iterator skips as invalid to a callback instead of
+     * dropping it, so a search that is being watched can still record it.
+     * A skipped successor is only built for the callback, and is handed
+     * over when the search asks for the next successor after it, in the
+     * order successors are tried.  Puzzles that override
+     * successorIterator() to skip successors should override this too; by
+     * default nothing is skipped, so the callback is never called.
+     *
+     * @param skipped Told about each invalid successor that is skipped
+     * @return An iterator over the successors, possibly without some
+     *  of the invalid ones
+     */
+    default Iterator<Configuration> successorIterator(Consumer<Configuration> skipped) {
+        return successorIterator();
+    }
+
     /**
      * Is the current configuration valid or not?
      *
@@ -0,0 +1,18 @@
+package backtracking;
+
+/**
+ * A configuration that can say why it failed isValid(), so a search can
+ * count which rules prune it the most.
+ *
+ * @author RIT CS
+ */
+public interface ExplainableConfiguration extends Configuration {
+    /**
+     * Get the rule that the most recent move broke.  It is only asked
+     * right after isValid() returned false.
+     *
+     * @return a short name for the rule, such as "pair", or null if no
+     *  rule is broken
+     */
+    String getPruneReason();
+}
@@ -0,0 +1,23 @@
+package backtracking;
+
+/**
+ * A configuration whose future can be summed up by a key.  Two
+ * configurations with equal keys must have exactly the same solutions
+ * below them, so once one of them has been searched without success the
+ * Backtracker can skip the other, using a TranspositionTable.  The key
+ * only needs to hold the part of the configuration that later moves
+ * depend on, which lets configurations that differ elsewhere share it.
+ *
+ * @author RIT CS
+ */
+public interface MemoizableConfiguration extends Configuration {
+    /**
+     * Get the key for the future of this configuration.  Keys are kept
+     * in a hash table, so they must implement equals() and hashCode(),
+     * and must not change afterwards.
+     *
+     * @return the key, or null if this configuration should not be
+     *  looked up or recorded
+     */
+    Object getMemoKey();
+}
@@ -0,0 +1,35 @@
+package backtracking;
+
+/**
+ * A configuration that can be searched in place.  Instead of building a
+ * new configuration for every successor, the Backtracker applies a move
+ * to this configuration, checks it, and undoes the move again when it
+ * backtracks.  A single instance is therefore mutated for the whole
+ * search, so heap use does not grow with the number of nodes visited.
+ *
+ * @author RIT CS
+ */
+public interface MutableConfiguration extends Configuration {
+    /**
+     * Get the number of moves that can be applied to the current
+     * configuration.  Move i corresponds to the i-th entry of
+     * getSuccessors().
+     *
+     * @return the number of moves, valid and invalid
+     */
+    int getMoveCount();
+
+    /**
+     * Apply a move to this configuration, turning it into its
+     * move-th successor.
+     *
+     * @param move the move to apply, from 0 to getMoveCount() - 1
+     */
+    void applyMove(int move);
+
+    /**
+     * Undo the most recently applied move, restoring the configuration
+     * to what it was before that move was applied.
+     */
+    void undoMove();
+}
@@ -0,0 +1,400 @@
+package backtracking;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A parallel version of the backtracking algorithm, built on fork/join.
+ * The top levels of the search tree are split into tasks, one per valid
+ * successor, so the pool's work stealing spreads unbalanced subtrees over
+ * all of its threads.  Deeper down, a task only splits off more work when
+ * its own queue is running low, and otherwise searches sequentially.
+ * As soon as any task reaches a goal, every other task stops at the next
+ * configuration it looks at.  Solutions can also be counted, in which case
+ * the tasks only stop once the requested number has been reached.
+ *
+ * A search or count can also run under SearchLimits.  Every task checks
+ * the clock, the token, the configurations generated and the interrupt
+ * flag of the calling thread when it starts and every CHECK_INTERVAL
+ * configurations, and once a limit is reached every task stops the same
+ * way it does when a goal is found.  Progress is not reported.
+ *
+ * Configurations are searched from several threads at once, so they must
+ * not be changed after they are built, and their successors must be
+ * safe to generate concurrently.
+ *
+ * @author RIT CS
+ */
+public class ParallelBacktracker {
+    /** the default number of levels that are always split into tasks */
+    private final static int DEFAULT_SPLIT_DEPTH = 4;
+    /** split below the split depth only while fewer tasks than this are queued */
+    private final static int SURPLUS_THRESHOLD = 2;
+    /** how many configurations a task generates between checks of the limits */
+    private final static int CHECK_INTERVAL = 1 << 10;
+    /** the pool the search tasks run in */
+    private final ForkJoinPool pool;
+    /** the number of levels that are always split into tasks */
+    private final int splitDepth;
+    /** counts number of configurations generated, from every thread */
+    private final LongAdder configCount;
+    /** the first goal found, shared by every task of the current search */
+    private final AtomicReference<Configuration> solution;
+    /** the goals counted so far, shared by every task of the current count */
+    private final AtomicLong solutionCount;
+    /** the limits of the running search, or null if it has none */
+    private SearchLimits limits;
+    /** the config count at which the running search stops */
+    private long nodeLimit;
+    /** the System.nanoTime() at which the running search stops */
+    private long deadline;
+    /** the thread that started the running search */
+    private Thread caller;
+    /** why the most recent search stopped early, or null if it did not */
+    private volatile SolveResult.Status stop;
+
+    /**
+     * Initialize a parallel backtracker that runs in the common pool.
+     */
+    public ParallelBacktracker() {
+        this(ForkJoinPool.commonPool(), DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * Initialize a parallel backtracker.
+     *
+     * @param pool the pool to run the search tasks in
+     * @param splitDepth the number of levels that are always split into tasks
+     */
+    public ParallelBacktracker(ForkJoinPool pool, int splitDepth) {
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+        this.configCount = new LongAdder();
+        this.solution = new AtomicReference<>();
+        this.solutionCount = new AtomicLong();
+    }
+
+    /**
+     * Try to find a solution, if one exists, for a given configuration.
+     * If there are several solutions, any one of them may be returned.
+     *
+     * @param config A valid configuration
+     * @return A solution config, or empty if no solution
+     */
+    public Optional<Configuration> solve(Configuration config) {
+        return solve(config, SearchLimits.NONE).getSolution();
+    }
+
+    /**
+     * Try to find a solution like solve(), stopping every task early if a
+     * limit is reached.
+     *
+     * @param config A valid configuration
+     * @param limits The limits to search under
+     * @return The outcome
+     */
+    public SolveResult solve(Configuration config, SearchLimits limits) {
+        long start = System.nanoTime();
+        configCount.reset();
+        configCount.increment();  // counts the initial config sent to solve()
+        solution.set(null);
+        begin(limits, start);
+        try {
+            if (stop == null) {
+                pool.invoke(new SearchTask(config, 0));
+            }
+        } finally {
+            this.limits = null;
+        }
+        Configuration sol = solution.get();
+        SolveResult.Status status = sol != null ? SolveResult.Status.SOLVED
+                : stop != null ? stop : SolveResult.Status.UNSOLVABLE;
+        return new SolveResult(status, Optional.ofNullable(sol), configCount.sum() - 1,
+                               System.nanoTime() - start);
+    }
+
+    /**
+     * Count the solutions for a given configuration over all threads,
+     * stopping once limit of them have been found.  Solutions are only
+     * counted, never kept, and a goal that hides its mirror image (see
+     * SymmetricConfiguration) counts twice.
+     *
+     * @param config A valid configuration
+     * @param limit The most solutions to look for
+     * @return The number of solutions, at most limit
+     */
+    public long countSolutions(Configuration config, long limit) {
+        return countSolutions(config, limit, SearchLimits.NONE);
+    }
+
+    /**
+     * Count the solutions like countSolutions(), stopping every task early
+     * if a limit is reached; getStopReason() then tells which one, and the
+     * count is only of the solutions found by then.
+     *
+     * @param config A valid configuration
+     * @param limit The most solutions to look for
+     * @param limits The limits to count under
+     * @return The number of solutions, at most limit
+     */
+    public long countSolutions(Configuration config, long limit, SearchLimits limits) {
+        configCount.reset();
+        configCount.increment();  // counts the initial config sent to countSolutions()
+        solutionCount.set(0);
+        begin(limits, System.nanoTime());
+        try {
+            if (limit > 0 && stop == null) {
+                pool.invoke(new CountTask(config, 0, limit));
+            }
+        } finally {
+            this.limits = null;
+        }
+        return Math.min(solutionCount.get(), limit);
+    }
+
+    /**
+     * Start a search under limits.  The fields are written before the
+     * tasks are submitted to the pool, so every task sees them.
+     *
+     * @param limits The limits
+     * @param start When the search started, from System.nanoTime()
+     */
+    private void begin(SearchLimits limits, long start) {
+        boolean unlimited = limits.getTimeout() == null && limits.getMaxNodes() == Long.MAX_VALUE
+                && limits.getCancellation() == null;
+        this.limits = unlimited ? null : limits;
+        this.stop = null;
+        this.caller = Thread.currentThread();
+        long maxNodes = limits.getMaxNodes();
+        this.nodeLimit = maxNodes == Long.MAX_VALUE ? Long.MAX_VALUE : 1 + maxNodes;
+        this.deadline = limits.getDeadline(start);
+        checkLimits();  // at once, in case it is already cancelled
+    }
+
+    /**
+     * Stop the running search if a limit has been reached.  Called by the
+     * tasks, so several of them may find a limit at once; the reason the
+     * last one sets is kept.
+     */
+    private void checkLimits() {
+        SearchLimits limits = this.limits;
+        if (limits == null || stop != null) {
+            return;
+        }
+        CancellationToken token = limits.getCancellation();
+        if ((token != null && token.isCancelled()) || caller.isInterrupted()) {
+            stop = SolveResult.Status.CANCELLED;
+        } else if (System.nanoTime() - deadline >= 0) {
+            stop = SolveResult.Status.TIMED_OUT;
+        } else if (configCount.sum() >= nodeLimit) {
+            stop = SolveResult.Status.NODE_LIMIT;
+        }
+    }
+
+    /**
+     * Get why the most recent search or count stopped before it was done.
+     *
+     * @return the limit that stopped it, or null if it ran to the end
+     */
+    public SolveResult.Status getStopReason() {
+        return stop;
+    }
+
+    /**
+     * Should the successors at a depth be split off into their own tasks?
+     *
+     * @param depth the depth of the successors' parent
+     * @return true to fork, false to search them in this task
+     */
+    private boolean shouldSplit(int depth) {
+        return depth < splitDepth || ForkJoinTask.getSurplusQueuedTaskCount() < SURPLUS_THRESHOLD;
+    }
+
+    /**
+     * Get the number of configurations generated during backtracking, over
+     * all threads.
+     *
+     * @return config count
+     */
+    public long getConfigCount() {
+        return configCount.sum();
+    }
+
+    /**
+     * A task that searches the subtree under one configuration.
+     */
+    private class SearchTask extends RecursiveTask<Configuration> {
+        /** tasks are never serialized, but ForkJoinTask is Serializable */
+        private final static long serialVersionUID = 1L;
+        /** the root of the subtree */
+        private final Configuration config;
+        /** the depth of config in the whole search tree */
+        private final int depth;
+        /** the configurations generated since the limits were last checked */
+        private int unchecked;
+
+        /**
+         * Create a task for a subtree.
+         *
+         * @param config the root of the subtree, already known to be valid
+         * @param depth its depth in the whole search tree
+         */
+        SearchTask(Configuration config, int depth) {
+            this.config = config;
+            this.depth = depth;
+        }
+
+        /**
+         * Search the subtree.
+         *
+         * @return the goal found, or null if none was found by this task
+         */
+        @Override
+        protected Configuration compute() {
+            checkLimits();
+            return search(config, depth);
+        }
+
+        /**
+         * Search under a configuration, forking tasks for its successors
+         * at the top of the tree or when this thread's queue is short.
+         *
+         * @param config A valid configuration
+         * @param depth its depth in the whole search tree
+         * @return the goal found, or null if none was found
+         */
+        private Configuration search(Configuration config, int depth) {
+            if (solution.get() != null || stop != null) {
+                return null;  // another task already won, or a limit was reached
+            }
+            if (config.isGoal()) {
+                return solution.compareAndSet(null, config) ? config : null;
+            }
+            List<SearchTask> forked = null;
+            Configuration found = null;
+            Iterator<Configuration> successors = config.successorIterator();
+            while (found == null && stop == null && successors.hasNext()) {
+                Configuration child = successors.next();
+                configCount.increment();
+                if (++unchecked == CHECK_INTERVAL) {
+                    unchecked = 0;
+                    checkLimits();
+                }
+                if (child.isValid()) {
+                    if (shouldSplit(depth)) {
+                        if (forked == null) {
+                            forked = new ArrayList<>();
+                        }
+                        SearchTask task = new SearchTask(child, depth + 1);
+                        task.fork();
+                        forked.add(task);
+                    } else {
+                        found = search(child, depth + 1);
+                    }
+                }
+            }
+            if (forked != null) {
+                for (int i = forked.size() - 1; i >= 0; i--) {
+                    Configuration sol = forked.get(i).join();
+                    if (found == null) {
+                        found = sol;
+                    }
+                }
+            }
+            return found;
+        }
+    }
+
+    /**
+     * A task that counts the solutions in the subtree under one
+     * configuration.
+     */
+    private class CountTask extends RecursiveAction {
+        /** tasks are never serialized, but ForkJoinTask is Serializable */
+        private final static long serialVersionUID = 1L;
+        /** the root of the subtree */
+        private final Configuration config;
+        /** the depth of config in the whole search tree */
+        private final int depth;
+        /** the configurations generated since the limits were last checked */
+        private int unchecked;
+        /** the most solutions to look for over the whole search */
+        private final long limit;
+
+        /**
+         * Create a task for a subtree.
+         *
+         * @param config the root of the subtree, already known to be valid
+         * @param depth its depth in the whole search tree
+         * @param limit the most solutions to look for over the whole search
+         */
+        CountTask(Configuration config, int depth, long limit) {
+            this.config = config;
+            this.depth = depth;
+            this.limit = limit;
+        }
+
+        /**
+         * Count the subtree.
+         */
+        @Override
+        protected void compute() {
+            checkLimits();
+            count(config, depth);
+        }
+
+        /**
+         * Count the solutions under a configuration, forking tasks for its
+         * successors at the top of the tree or when this thread's queue is
+         * short.
+         *
+         * @param config A valid configuration
+         * @param depth its depth in the whole search tree
+         */
+        private void count(Configuration config, int depth) {
+            if (solutionCount.get() >= limit || stop != null) {
+                return;  // enough solutions have been found, or a limit was reached
+            }
+            if (config.isGoal()) {
+                solutionCount.addAndGet(SymmetricConfiguration.solutionsOf(config));
+                return;
+            }
+            List<CountTask> forked = null;
+            Iterator<Configuration> successors = config.successorIterator();
+            while (successors.hasNext() && solutionCount.get() < limit && stop == null) {
+                Configuration child = successors.next();
+                configCount.increment();
+                if (++unchecked == CHECK_INTERVAL) {
+                    unchecked = 0;
+                    checkLimits();
+                }
+                if (child.isValid()) {
+                    if (shouldSplit(depth)) {
+                        if (forked == null) {
+                            forked = new ArrayList<>();
+                        }
+                        CountTask task = new CountTask(child, depth + 1, limit);
+                        task.fork();
+                        forked.add(task);
+                    } else {
+                        count(child, depth + 1);
+                    }
+                }
+            }
+            if (forked != null) {
+                for (int i = forked.size() - 1; i >= 0; i--) {
+                    forked.get(i).join();
+                }
+            }
+        }
+    }
+}
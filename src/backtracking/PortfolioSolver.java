@@ -0,0 +1,277 @@
+package backtracking;
+
+import sat.SatSolver;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Runs several differently ordered searches of one puzzle side by side,
+ * each on its own thread, and takes the answer of whichever finishes
+ * first; the others are then cancelled.  Searches that look alike can
+ * take wildly different times depending on a few early choices, so a mix
+ * of orderings cuts the long tail of solve times.
+ *
+ * A strategy can also restart: its search is given a node budget that
+ * follows the Luby sequence (1, 1, 2, 1, 1, 2, 4, 1, ...) times a unit,
+ * the same sequence SatSolver.luby() gives the SAT solver's restarts,
+ * and whenever the budget runs out it starts over from a configuration
+ * built with a new seed, so a randomized ordering gets another chance to
+ * avoid a bad early choice.  The sequence keeps doubling its longest run,
+ * so a restarting strategy is still complete.
+ *
+ * Seeds are drawn from the seed of the solver, so a portfolio that is
+ * run twice tries the same orderings, though which strategy wins may
+ * depend on the thread scheduling.
+ *
+ * @author RIT CS
+ */
+public class PortfolioSolver {
+    /** how often, in milliseconds, the waiting thread checks the caller's token */
+    private final static long POLL_MILLIS = 10;
+    /** the strategies, one thread each */
+    private final List<Strategy> strategies;
+    /** the seed the strategies' seeds are drawn from */
+    private final long seed;
+    /** the restarts of the most recent solve, over all strategies */
+    private final AtomicLong restarts;
+    /** the strategy that answered the most recent solve, or null */
+    private volatile Strategy winner;
+
+    /**
+     * One search of a portfolio.
+     */
+    public static final class Strategy {
+        /** the name, for statistics */
+        private final String name;
+        /** builds the initial configuration of a run from its seed */
+        private final LongFunction<Configuration> start;
+        /** the node budget of a Luby run of length 1, or 0 to never restart */
+        private final long restartUnit;
+
+        /**
+         * Create a strategy.
+         *
+         * @param name the name, for statistics
+         * @param start builds the initial configuration of each run, from
+         *  a seed that is different for every run
+         * @param restartUnit the configurations in the shortest run, or 0
+         *  to search once without restarts
+         * @throws IllegalArgumentException if restartUnit is negative
+         */
+        public Strategy(String name, LongFunction<Configuration> start, long restartUnit) {
+            if (restartUnit < 0) {
+                throw new IllegalArgumentException("Negative restart unit: " + restartUnit);
+            }
+            this.name = name;
+            this.start = start;
+            this.restartUnit = restartUnit;
+        }
+
+        /**
+         * Get the name of the strategy.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return restartUnit == 0 ? name : name + " (restarts every " + restartUnit + " x luby)";
+        }
+    }
+
+    /**
+     * Create a portfolio.
+     *
+     * @param strategies the searches to run side by side
+     * @param seed the seed their runs' seeds are drawn from
+     * @throws IllegalArgumentException if there are no strategies
+     */
+    public PortfolioSolver(List<Strategy> strategies, long seed) {
+        if (strategies.isEmpty()) {
+            throw new IllegalArgumentException("A portfolio needs a strategy");
+        }
+        this.strategies = new ArrayList<>(strategies);
+        this.seed = seed;
+        this.restarts = new AtomicLong();
+    }
+
+    /**
+     * Run every strategy until one of them finds a solution or proves
+     * there is none.  The timeout and the caller's token apply to the
+     * portfolio as a whole, and the node limit to each strategy over all
+     * of its runs.  Interrupting the calling thread cancels the search,
+     * as it does for a Backtracker.  Progress is not reported.
+     *
+     * @param limits the limits to search under
+     * @return the answer of the first strategy to finish, with the
+     *  configurations of every strategy; if none finished, the limit that
+     *  stopped them
+     */
+    public SolveResult solve(SearchLimits limits) {
+        long start = System.nanoTime();
+        restarts.set(0);
+        winner = null;
+        CancellationToken token = new CancellationToken();
+        CancellationToken caller = limits.getCancellation();
+        if (caller != null && caller.isCancelled()) {
+            token.cancel();
+        }
+        SplittableRandom seeds = new SplittableRandom(seed);
+        ExecutorService executor = Executors.newFixedThreadPool(strategies.size());
+        CompletionService<SolveResult> done = new ExecutorCompletionService<>(executor);
+        Map<Future<SolveResult>, Strategy> running = new HashMap<>();
+        try {
+            for (Strategy strategy : strategies) {
+                long strategySeed = seeds.nextLong();
+                running.put(done.submit(() -> run(strategy, strategySeed, limits, token, start)), strategy);
+            }
+            SolveResult answer = null;
+            long configCount = 0;
+            boolean timedOut = false;
+            boolean cancelled = false;
+            boolean interrupted = false;
+            for (int finished = 0; finished < strategies.size(); ) {
+                Future<SolveResult> future;
+                try {
+                    future = done.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // wait for the strategies to stop, then pass the interrupt on
+                    interrupted = true;
+                    cancelled = true;
+                    future = null;
+                }
+                if (caller != null && caller.isCancelled()) {
+                    cancelled = true;
+                }
+                if (cancelled) {
+                    token.cancel();
+                }
+                if (future == null) {
+                    continue;
+                }
+                finished++;
+                SolveResult result = getResult(future);
+                configCount += result.getConfigCount();
+                timedOut |= result.getStatus() == SolveResult.Status.TIMED_OUT;
+                if (winner == null && !result.getStatus().isBudgetExhausted()) {
+                    // the first answer wins, and the other strategies are stopped
+                    winner = running.get(future);
+                    answer = result;
+                    token.cancel();
+                } else if (answer == null) {
+                    answer = result;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            SolveResult.Status status = answer.getStatus();
+            if (status.isBudgetExhausted()) {
+                status = cancelled ? SolveResult.Status.CANCELLED
+                        : timedOut ? SolveResult.Status.TIMED_OUT : SolveResult.Status.NODE_LIMIT;
+            }
+            return new SolveResult(status, answer.getSolution(), configCount, System.nanoTime() - start);
+        } finally {
+            token.cancel();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Get the result of a strategy that has finished.
+     *
+     * @param future the strategy's future, which is done
+     * @return its result
+     * @throws RuntimeException or Error if the strategy threw one
+     */
+    private static SolveResult getResult(Future<SolveResult> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        } catch (InterruptedException e) {
+            // a finished future never waits
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Run one strategy, restarting it whenever a run uses up its budget.
+     *
+     * @param strategy the strategy
+     * @param strategySeed the seed its runs' seeds are drawn from
+     * @param limits the limits of the whole portfolio
+     * @param token cancels every strategy once one has finished
+     * @param start when the portfolio started, from System.nanoTime()
+     * @return the outcome of its last run, with the configurations of all
+     *  of its runs
+     */
+    private SolveResult run(Strategy strategy, long strategySeed, SearchLimits limits, CancellationToken token,
+                            long start) {
+        SplittableRandom seeds = new SplittableRandom(strategySeed);
+        long configCount = 0;
+        for (long run = 0; ; run++) {
+            long budget = limits.getMaxNodes() - configCount;
+            boolean restarting = strategy.restartUnit > 0
+                    && strategy.restartUnit <= budget / SatSolver.luby(run);
+            SearchLimits runLimits = SearchLimits.NONE.withCancellation(token)
+                    .withMaxNodes(restarting ? strategy.restartUnit * SatSolver.luby(run) : budget);
+            if (limits.getTimeout() != null) {
+                runLimits = runLimits.withTimeout(limits.getTimeout().minus(Duration.ofNanos(System.nanoTime() - start)));
+            }
+            SolveResult result = new Backtracker(false).solve(strategy.start.apply(seeds.nextLong()), runLimits);
+            configCount += result.getConfigCount();
+            if (!restarting || result.getStatus() != SolveResult.Status.NODE_LIMIT) {
+                return new SolveResult(result.getStatus(), result.getSolution(), configCount,
+                                       System.nanoTime() - start);
+            }
+            restarts.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the strategy that answered the most recent solve.
+     *
+     * @return the strategy, or null if none finished
+     */
+    public Strategy getWinner() {
+        return winner;
+    }
+
+    /**
+     * Get the number of restarts in the most recent solve, over every
+     * strategy.
+     *
+     * @return the restarts
+     */
+    public long getRestarts() {
+        return restarts.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Portfolio of " + strategies.size() + ": " + (winner == null ? "no winner" : "won by " + winner)
+                + ", " + restarts.get() + " restarts";
+    }
+}
@@ -0,0 +1,193 @@
+package backtracking;
+
+import java.time.Duration;
+
+/**
+ * The limits a search runs under: how long it may take, how many
+ * configurations it may generate, and a token that cancels it.  A search
+ * with limits also stops when its thread is interrupted, and can report
+ * its progress at a fixed interval.
+ *
+ * Limits are immutable; each with method returns a copy with one limit
+ * changed, starting from NONE:
+ *
+ *   SearchLimits.NONE.withTimeout(Duration.ofSeconds(5)).withMaxNodes(1_000_000)
+ *
+ * @author RIT CS
+ */
+public final class SearchLimits {
+    /** no limits at all */
+    public final static SearchLimits NONE = new SearchLimits(null, Long.MAX_VALUE, null, null, null);
+    /** the longest time System.nanoTime() can measure without overflowing */
+    private final static Duration MAX_NANOS = Duration.ofNanos(Long.MAX_VALUE / 2);
+    /** the longest the search may take, or null for no limit */
+    private final Duration timeout;
+    /** the most configurations the search may generate */
+    private final long maxNodes;
+    /** the token that cancels the search, or null for none */
+    private final CancellationToken token;
+    /** how often progress is reported, or null for never */
+    private final Duration progressInterval;
+    /** where progress is reported, or null for nowhere */
+    private final Progress progress;
+
+    /**
+     * Receives the progress of a search, on the thread running it.
+     */
+    @FunctionalInterface
+    public interface Progress {
+        /**
+         * The search is still running.
+         *
+         * @param configCount the configurations generated so far
+         * @param elapsedNanos the time taken so far, in nanoseconds
+         */
+        void progress(long configCount, long elapsedNanos);
+    }
+
+    /**
+     * Create limits.
+     *
+     * @param timeout the longest the search may take, or null
+     * @param maxNodes the most configurations the search may generate
+     * @param token the token that cancels the search, or null
+     * @param progressInterval how often progress is reported, or null
+     * @param progress where progress is reported, or null
+     */
+    private SearchLimits(Duration timeout, long maxNodes, CancellationToken token,
+                         Duration progressInterval, Progress progress) {
+        this.timeout = timeout;
+        this.maxNodes = maxNodes;
+        this.token = token;
+        this.progressInterval = progressInterval;
+        this.progress = progress;
+    }
+
+    /**
+     * Limit how long the search may take.
+     *
+     * @param timeout the time from the start of the search, or null for
+     *  no limit
+     * @return the new limits
+     */
+    public SearchLimits withTimeout(Duration timeout) {
+        return new SearchLimits(timeout, maxNodes, token, progressInterval, progress);
+    }
+
+    /**
+     * Limit how many configurations the search may generate.
+     *
+     * @param maxNodes the most configurations, or Long.MAX_VALUE for no
+     *  limit
+     * @return the new limits
+     * @throws IllegalArgumentException if maxNodes is negative
+     */
+    public SearchLimits withMaxNodes(long maxNodes) {
+        if (maxNodes < 0) {
+            throw new IllegalArgumentException("Negative node limit: " + maxNodes);
+        }
+        return new SearchLimits(timeout, maxNodes, token, progressInterval, progress);
+    }
+
+    /**
+     * Let the search be cancelled with a token.
+     *
+     * @param token the token, or null for none
+     * @return the new limits
+     */
+    public SearchLimits withCancellation(CancellationToken token) {
+        return new SearchLimits(timeout, maxNodes, token, progressInterval, progress);
+    }
+
+    /**
+     * Have the search report its progress.
+     *
+     * @param interval how often to report it
+     * @param progress where to report it
+     * @return the new limits
+     */
+    public SearchLimits withProgress(Duration interval, Progress progress) {
+        return new SearchLimits(timeout, maxNodes, token, interval, progress);
+    }
+
+    /**
+     * Get the longest the search may take.
+     *
+     * @return the timeout, or null for no limit
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Get when a search must stop.  A timeout past the range of
+     * System.nanoTime() is capped before it is converted, so it is as good
+     * as no deadline.
+     *
+     * @param start when the search started, from System.nanoTime()
+     * @return the System.nanoTime() at which it times out
+     */
+    public long getDeadline(long start) {
+        return start + toNanos(timeout);
+    }
+
+    /**
+     * Get how often progress is reported, in nanoseconds.
+     *
+     * @return the interval, capped like the timeout, and as good as never
+     *  if progress is not reported
+     */
+    public long getProgressNanos() {
+        return toNanos(progressInterval);
+    }
+
+    /**
+     * Convert a time to nanoseconds without overflowing.
+     *
+     * @param time the time, or null for no limit
+     * @return the nanoseconds, at most Long.MAX_VALUE / 2, and none if
+     *  the time is negative
+     */
+    private static long toNanos(Duration time) {
+        if (time == null || time.compareTo(MAX_NANOS) > 0) {
+            return MAX_NANOS.toNanos();
+        }
+        return time.isNegative() ? 0 : time.toNanos();
+    }
+
+    /**
+     * Get the most configurations the search may generate.
+     *
+     * @return the limit, Long.MAX_VALUE for none
+     */
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Get the token that cancels the search.
+     *
+     * @return the token, or null for none
+     */
+    public CancellationToken getCancellation() {
+        return token;
+    }
+
+    /**
+     * Get how often progress is reported.
+     *
+     * @return the interval, or null if it is not reported
+     */
+    public Duration getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * Get where progress is reported.
+     *
+     * @return the receiver, or null if it is not reported
+     */
+    public Progress getProgress() {
+        return progress;
+    }
+}
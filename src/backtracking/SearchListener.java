@@ -0,0 +1,108 @@
+package backtracking;
+
+/**
+ * Receives the configurations a Backtracker visits, at the same points
+ * it prints them when debugging is enabled, and hears when a search
+ * starts, backs out of a configuration, and finishes.  A listener must be
+ * cheap, since it is called for every configuration generated.
+ *
+ * @author RIT CS
+ */
+public interface SearchListener {
+    /**
+     * What happened to a configuration.
+     */
+    enum Kind {
+        /** the configuration a search was started from */
+        CURRENT,
+        /** a successor that passed isValid() */
+        VALID,
+        /** a successor that failed isValid() */
+        INVALID,
+        /** a goal was reached */
+        GOAL
+    }
+
+    /**
+     * A search is starting.
+     *
+     * @param config the configuration it starts from, which must not be
+     *  kept
+     */
+    default void started(Configuration config) {
+    }
+
+    /**
+     * Record a configuration.
+     *
+     * @param kind what happened to it
+     * @param depth its depth in the search tree, 0 for the initial config
+     * @param config the configuration, which may change after the call
+     *  returns, so it must not be kept
+     */
+    void record(Kind kind, int depth, Configuration config);
+
+    /**
+     * Every successor of a configuration has been searched without
+     * finding a solution.
+     *
+     * @param depth the depth of the configuration
+     */
+    default void backtracked(int depth) {
+    }
+
+    /**
+     * A search has finished.  A stream of solutions only finishes once it
+     * has been read to the end.
+     *
+     * @param solved was a solution found?
+     */
+    default void finished(boolean solved) {
+    }
+
+    /**
+     * Combine listeners into one that tells each of them in turn.
+     *
+     * @param listeners the listeners, any of which may be null
+     * @return the combined listener
+     */
+    static SearchListener of(SearchListener... listeners) {
+        return new SearchListener() {
+            @Override
+            public void started(Configuration config) {
+                for (SearchListener listener : listeners) {
+                    if (listener != null) {
+                        listener.started(config);
+                    }
+                }
+            }
+
+            @Override
+            public void record(Kind kind, int depth, Configuration config) {
+                for (SearchListener listener : listeners) {
+                    if (listener != null) {
+                        listener.record(kind, depth, config);
+                    }
+                }
+            }
+
+            @Override
+            public void backtracked(int depth) {
+                for (SearchListener listener : listeners) {
+                    if (listener != null) {
+                        listener.backtracked(depth);
+                    }
+                }
+            }
+
+            @Override
+            public void finished(boolean solved) {
+                for (SearchListener listener : listeners) {
+                    if (listener != null) {
+                        listener.finished(solved);
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,309 @@
+package backtracking;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A search listener that measures a search: the configurations reached
+ * at each depth, the valid and invalid successors, why the invalid ones
+ * were pruned (for an ExplainableConfiguration), the deepest point
+ * reached, the number of backtracks, the rate configurations were
+ * generated at, and the time to the first solution.  Every counter is a
+ * long, so long searches do not overflow.
+ *
+ * Each search is also committed as a JFR event, and the first solution as
+ * another, so a flight recording of the run lines the searches up with
+ * GC and CPU activity.  The events cost next to nothing when no recording
+ * is running, once JFR is loaded; the classes are registered when this
+ * class is loaded, so that cost is not part of the first search.
+ *
+ * The metrics of several searches add up, except for the times, which
+ * are those of the most recent search.
+ *
+ * @author RIT CS
+ */
+public class SearchMetrics implements SearchListener {
+    /** the configurations that passed isValid() at each depth */
+    private long[] nodes;
+    /** the deepest configuration reached */
+    private int maxDepth;
+    /** the successors that passed isValid() */
+    private long valid;
+    /** the successors that failed isValid() */
+    private long invalid;
+    /** the invalid successors pruned by each rule */
+    private final Map<String, long[]> pruned;
+    /** the configurations backed out of */
+    private long backtracks;
+    /** the goals reached */
+    private long solutions;
+    /** when the most recent search started, from System.nanoTime() */
+    private long start;
+    /** when it finished, or 0 if it has not */
+    private long end;
+    /** when it reached its first goal, or 0 if it has not */
+    private long firstSolution;
+    /** the JFR event of the running search */
+    private SearchEvent event;
+
+    static {
+        // loading JFR takes a good part of a second, so pay for it when the
+        // metrics are created, before any search starts its clock
+        FlightRecorder.register(SearchEvent.class);
+        FlightRecorder.register(SolutionEvent.class);
+    }
+
+    /**
+     * Create metrics with every counter at zero.
+     */
+    public SearchMetrics() {
+        this.nodes = new long[16];
+        this.pruned = new TreeMap<>();
+    }
+
+    @Override
+    public void started(Configuration config) {
+        event = new SearchEvent();
+        end = 0;
+        firstSolution = 0;
+        start = System.nanoTime();
+        event.begin();
+    }
+
+    @Override
+    public void record(Kind kind, int depth, Configuration config) {
+        switch (kind) {
+            case INVALID:
+                invalid++;
+                if (config instanceof ExplainableConfiguration) {
+                    String reason = ((ExplainableConfiguration) config).getPruneReason();
+                    if (reason != null) {
+                        pruned.computeIfAbsent(reason, r -> new long[1])[0]++;
+                    }
+                }
+                return;
+            case VALID:
+                valid++;
+                break;
+            case GOAL:
+                solutions++;
+                if (firstSolution == 0) {
+                    firstSolution = System.nanoTime();
+                    SolutionEvent found = new SolutionEvent();
+                    if (found.shouldCommit()) {
+                        found.depth = depth;
+                        found.elapsed = firstSolution - start;
+                        found.commit();
+                    }
+                }
+                return;
+            default:
+                break;
+        }
+        if (depth >= nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, depth + 1));
+        }
+        nodes[depth]++;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    @Override
+    public void backtracked(int depth) {
+        backtracks++;
+    }
+
+    @Override
+    public void finished(boolean solved) {
+        end = System.nanoTime();
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.solved = solved;
+                event.valid = valid;
+                event.invalid = invalid;
+                event.backtracks = backtracks;
+                event.maxDepth = maxDepth;
+                event.commit();
+            }
+            event = null;
+        }
+    }
+
+    /**
+     * Get the number of configurations reached at a depth, counting the
+     * initial configuration at depth 0 and every valid successor.
+     *
+     * @param depth the depth
+     * @return the configurations
+     */
+    public long getNodes(int depth) {
+        return depth < nodes.length ? nodes[depth] : 0;
+    }
+
+    /**
+     * Get the depth of the deepest configuration reached.
+     *
+     * @return the depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Get the number of successors that passed isValid().
+     *
+     * @return the valid successors
+     */
+    public long getValid() {
+        return valid;
+    }
+
+    /**
+     * Get the number of successors that failed isValid().
+     *
+     * @return the invalid successors
+     */
+    public long getInvalid() {
+        return invalid;
+    }
+
+    /**
+     * Get the number of invalid successors that broke a rule.
+     *
+     * @param reason the rule, as given by getPruneReason()
+     * @return the successors pruned by it
+     */
+    public long getPruned(String reason) {
+        long[] count = pruned.get(reason);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Get the number of invalid successors each rule pruned.
+     *
+     * @return the counts by rule, in order of the rule names
+     */
+    public Map<String, Long> getPruneReasons() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, long[]> entry : pruned.entrySet()) {
+            result.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of configurations backed out of, once every one of
+     * their successors had been searched.
+     *
+     * @return the backtracks
+     */
+    public long getBacktracks() {
+        return backtracks;
+    }
+
+    /**
+     * Get the number of goals reached.
+     *
+     * @return the solutions
+     */
+    public long getSolutions() {
+        return solutions;
+    }
+
+    /**
+     * Get how long the most recent search took, or has taken so far.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return (end == 0 ? System.nanoTime() : end) - start;
+    }
+
+    /**
+     * Get the time from the start of the most recent search to its first
+     * solution.
+     *
+     * @return the time in nanoseconds, or -1 if no solution was found
+     */
+    public long getTimeToFirstSolutionNanos() {
+        return firstSolution == 0 ? -1 : firstSolution - start;
+    }
+
+    /**
+     * Get the rate successors were generated at, valid or not.
+     *
+     * @return successors per second
+     */
+    public double getNodesPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed <= 0 ? 0 : (valid + invalid) * 1e9 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        String nl = System.lineSeparator();
+        StringBuilder out = new StringBuilder();
+        out.append("Search metrics: ").append(valid).append(" valid, ").append(invalid).append(" invalid, ")
+                .append(backtracks).append(" backtracks, max depth ").append(maxDepth).append(nl);
+        out.append(String.format("%.0f nodes/s, ", getNodesPerSecond()));
+        long first = getTimeToFirstSolutionNanos();
+        out.append(first < 0 ? "no solution" : String.format("first solution after %.3f ms", first / 1e6));
+        out.append(nl);
+        if (!pruned.isEmpty()) {
+            out.append("Pruned by:");
+            for (Map.Entry<String, long[]> entry : pruned.entrySet()) {
+                out.append(' ').append(entry.getKey()).append('=').append(entry.getValue()[0]);
+            }
+            out.append(nl);
+        }
+        out.append("Nodes per depth:");
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            out.append(' ').append(nodes[depth]);
+        }
+        return out.toString();
+    }
+
+    /**
+     * The JFR event of one search, from started() to finished().
+     */
+    @Name("backtracking.Search")
+    @Label("Backtracking Search")
+    @Category("Backtracking")
+    @Description("A search by a Backtracker, with its counters at the end")
+    static class SearchEvent extends Event {
+        @Label("Solved")
+        boolean solved;
+        @Label("Valid Successors")
+        long valid;
+        @Label("Invalid Successors")
+        long invalid;
+        @Label("Backtracks")
+        long backtracks;
+        @Label("Max Depth")
+        int maxDepth;
+    }
+
+    /**
+     * The JFR event of the first solution of a search.
+     */
+    @Name("backtracking.FirstSolution")
+    @Label("First Solution")
+    @Category("Backtracking")
+    @Description("The first goal a search reached")
+    static class SolutionEvent extends Event {
+        @Label("Depth")
+        int depth;
+        @Label("Time To Solution")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+}
@@ -0,0 +1,103 @@
+package backtracking;
+
+import java.util.Optional;
+
+/**
+ * The outcome of a search run under SearchLimits: whether it found a
+ * solution, proved there is none, or ran out of budget first, along with
+ * what it had done by then.
+ *
+ * @author RIT CS
+ */
+public final class SolveResult {
+    /**
+     * How a search ended.
+     */
+    public enum Status {
+        /** a solution was found */
+        SOLVED,
+        /** the whole tree was searched without finding a solution */
+        UNSOLVABLE,
+        /** the timeout passed first */
+        TIMED_OUT,
+        /** the configuration limit was reached first */
+        NODE_LIMIT,
+        /** the token was cancelled or the thread interrupted first */
+        CANCELLED;
+
+        /**
+         * Did the search stop before it had an answer?
+         *
+         * @return true unless the status is SOLVED or UNSOLVABLE
+         */
+        public boolean isBudgetExhausted() {
+            return this != SOLVED && this != UNSOLVABLE;
+        }
+    }
+
+    /** how the search ended */
+    private final Status status;
+    /** the solution, if it was found */
+    private final Optional<Configuration> solution;
+    /** the configurations generated */
+    private final long configCount;
+    /** the time taken, in nanoseconds */
+    private final long elapsedNanos;
+
+    /**
+     * Record the outcome of a search.
+     *
+     * @param status how the search ended
+     * @param solution the solution, if it was found
+     * @param configCount the configurations generated
+     * @param elapsedNanos the time taken, in nanoseconds
+     */
+    public SolveResult(Status status, Optional<Configuration> solution, long configCount, long elapsedNanos) {
+        this.status = status;
+        this.solution = solution;
+        this.configCount = configCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get how the search ended.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the solution.
+     *
+     * @return the solution, or empty unless the status is SOLVED
+     */
+    public Optional<Configuration> getSolution() {
+        return solution;
+    }
+
+    /**
+     * Get the number of configurations generated by this search.
+     *
+     * @return config count
+     */
+    public long getConfigCount() {
+        return configCount;
+    }
+
+    /**
+     * Get how long the search took.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return status + " after " + configCount + " configurations in "
+                + String.format("%.3f", elapsedNanos / 1e6) + " ms";
+    }
+}
@@ -0,0 +1,52 @@
+package backtracking;
+
+/**
+ * A configuration of a puzzle whose solutions come in mirror image pairs,
+ * such as a magnets puzzle whose counts stay the same when + and - are
+ * swapped.  A configuration can break the symmetry by only searching for
+ * one solution of each pair, which halves the tree.  Searches that count
+ * or enumerate solutions then add the mirror image of every goal they
+ * reach back in; searches for one solution need not care.
+ *
+ * @author RIT CS
+ */
+public interface SymmetricConfiguration extends Configuration {
+    /**
+     * Does this search only reach one solution of each mirror image pair?
+     *
+     * @return true if the symmetry is broken
+     */
+    boolean isSymmetryBroken();
+
+    /**
+     * Get the mirror image of a goal.
+     *
+     * @return the other solution of the pair, or null if the goal is its
+     *  own mirror image
+     */
+    Configuration getMirror();
+
+    /**
+     * Get the mirror image that a search which broke the symmetry did not
+     * reach.
+     *
+     * @param goal a goal reached by a search
+     * @return its mirror image, or null if the goal stands for itself only
+     */
+    static Configuration hiddenMirror(Configuration goal) {
+        if (goal instanceof SymmetricConfiguration && ((SymmetricConfiguration) goal).isSymmetryBroken()) {
+            return ((SymmetricConfiguration) goal).getMirror();
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of solutions a goal stands for.
+     *
+     * @param goal a goal reached by a search
+     * @return 2 if its mirror image was not searched, otherwise 1
+     */
+    static long solutionsOf(Configuration goal) {
+        return hiddenMirror(goal) == null ? 1 : 2;
+    }
+}
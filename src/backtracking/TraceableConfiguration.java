@@ -0,0 +1,24 @@
+package backtracking;
+
+/**
+ * A configuration that can sum up its most recent move for a compact
+ * trace: where it was made, and the value it placed there.
+ *
+ * @author RIT CS
+ */
+public interface TraceableConfiguration extends Configuration {
+    /**
+     * Get the position of the most recent move, such as the index of the
+     * cell it filled.
+     *
+     * @return the position, or -1 before the first move
+     */
+    int getTracePosition();
+
+    /**
+     * Get the value placed by the most recent move.
+     *
+     * @return the value, from 0 to 255
+     */
+    int getTraceValue();
+}
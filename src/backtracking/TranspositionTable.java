@@ -0,0 +1,142 @@
+package backtracking;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded table of the configurations that are known to have no
+ * solution below them, looked up by the key of a MemoizableConfiguration.
+ * Once the table is full, the failure that was looked up least recently
+ * is evicted to make room for a new one.  The table counts its hits,
+ * misses and evictions so its effect on a search can be measured.
+ *
+ * Keys only describe configurations of one puzzle, so a table must be
+ * cleared before it is used to search a different one.
+ *
+ * @author RIT CS
+ */
+public class TranspositionTable {
+    /** the most failures kept at once */
+    private final int capacity;
+    /** the failures, least recently used first */
+    private final Map<Object, Boolean> failures;
+    /** the number of lookups that found a failure */
+    private long hits;
+    /** the number of lookups that found nothing */
+    private long misses;
+    /** the number of failures dropped to make room for newer ones */
+    private long evictions;
+
+    /**
+     * Create an empty table.
+     *
+     * @param capacity the most failures kept at once
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public TranspositionTable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.failures = new LinkedHashMap<Object, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Boolean> eldest) {
+                if (size() > TranspositionTable.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Is a key known to have no solution below it?
+     *
+     * @param key the key of a configuration
+     * @return true if it was recorded as a failure and is still kept
+     */
+    public boolean isFailure(Object key) {
+        if (failures.get(key) != null) {
+            hits++;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    /**
+     * Record that a key has no solution below it.
+     *
+     * @param key the key of a configuration that was searched in full
+     */
+    public void recordFailure(Object key) {
+        failures.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * Forget every failure and reset the statistics.
+     */
+    public void clear() {
+        failures.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    /**
+     * Get the most failures kept at once.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of failures kept right now.
+     *
+     * @return the size
+     */
+    public int size() {
+        return failures.size();
+    }
+
+    /**
+     * Get the number of lookups that found a failure.
+     *
+     * @return the hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups that found nothing.
+     *
+     * @return the misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of failures dropped to make room for newer ones.
+     *
+     * @return the evictions
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the statistics of the table.
+     *
+     * @return the size, hits, misses and evictions
+     */
+    @Override
+    public String toString() {
+        return "Transposition table: " + size() + "/" + capacity + " entries, "
+                + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+    }
+}
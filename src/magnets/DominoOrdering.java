@@ -0,0 +1,20 @@
+package magnets;
+
+/**
+ * A strategy for choosing which domino a constraint-propagation search
+ * branches on next.  Standard strategies are in DominoOrderings.
+ *
+ * @author Jerry Chen
+ */
+public interface DominoOrdering {
+    /**
+     * Choose the domino to branch on.
+     *
+     * @param puzzle the puzzle being solved
+     * @param domains the orientations each domino can still take, as a
+     *  mask of up to 3 bits.  The array must not be changed.
+     * @return a domino with more than one orientation left, or -1 if
+     *  every domino is decided
+     */
+    int select(MagnetsPuzzle puzzle, byte[] domains);
+}
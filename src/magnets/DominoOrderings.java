@@ -0,0 +1,118 @@
+package magnets;
+
+/**
+ * The standard domino orderings for a constraint-propagation search.
+ *
+ * @author Jerry Chen
+ */
+public enum DominoOrderings implements DominoOrdering {
+    /** the first undecided domino in row-major order */
+    ROW_MAJOR {
+        @Override
+        public int select(MagnetsPuzzle puzzle, byte[] domains) {
+            for (int d = 0; d < domains.length; d++)
+                if (Integer.bitCount(domains[d]) > 1)
+                    return d;
+            return -1;
+        }
+    },
+
+    /**
+     * The undecided domino with the fewest orientations left (minimum
+     * remaining values), breaking ties in row-major order.
+     */
+    MOST_CONSTRAINED {
+        @Override
+        public int select(MagnetsPuzzle puzzle, byte[] domains) {
+            int best = -1;
+            int bestSize = Integer.MAX_VALUE;
+            for (int d = 0; d < domains.length; d++)
+            {
+                int size = Integer.bitCount(domains[d]);
+                if (size > 1 && size < bestSize)
+                {
+                    best = d;
+                    bestSize = size;
+                }
+            }
+            return best;
+        }
+    },
+
+    /**
+     * The undecided domino with the fewest orientations left, breaking
+     * ties by the most constraints it takes part in: undecided dominoes
+     * next to it, and rows and columns with a count that its cells lie in.
+     * It cuts the large puzzles down sharply, but can take a few times as
+     * many configurations as ROW_MAJOR on small ones.
+     */
+    MOST_CONSTRAINED_DEGREE {
+        @Override
+        public int select(MagnetsPuzzle puzzle, byte[] domains) {
+            int best = -1;
+            int bestSize = Integer.MAX_VALUE;
+            int bestDegree = -1;
+            for (int d = 0; d < domains.length; d++)
+            {
+                int size = Integer.bitCount(domains[d]);
+                if (size <= 1 || size > bestSize)
+                    continue;
+                int degree = degree(puzzle, domains, d);
+                if (size < bestSize || degree > bestDegree)
+                {
+                    best = d;
+                    bestSize = size;
+                    bestDegree = degree;
+                }
+            }
+            return best;
+        }
+    };
+
+    /**
+     * Count the constraints a domino takes part in.
+     *
+     * @param puzzle the puzzle being solved
+     * @param domains the orientations each domino can still take
+     * @param domino the domino
+     * @return the number of undecided neighbouring cells from other
+     *  dominoes, plus the number of counts on the lines of its cells
+     */
+    private static int degree(MagnetsPuzzle puzzle, byte[] domains, int domino) {
+        int rows = puzzle.getRows();
+        int cols = puzzle.getCols();
+        int degree = 0;
+        for (int cell : puzzle.getDominoCells(domino))
+        {
+            int row = cell / cols;
+            int col = cell % cols;
+            if (row > 0)
+                degree += isOpenNeighbour(puzzle, domains, domino, cell - cols);
+            if (row < rows - 1)
+                degree += isOpenNeighbour(puzzle, domains, domino, cell + cols);
+            if (col > 0)
+                degree += isOpenNeighbour(puzzle, domains, domino, cell - 1);
+            if (col < cols - 1)
+                degree += isOpenNeighbour(puzzle, domains, domino, cell + 1);
+            degree += puzzle.getPosRowCount(row) != MagnetsPuzzle.IGNORED ? 1 : 0;
+            degree += puzzle.getNegRowCount(row) != MagnetsPuzzle.IGNORED ? 1 : 0;
+            degree += puzzle.getPosColCount(col) != MagnetsPuzzle.IGNORED ? 1 : 0;
+            degree += puzzle.getNegColCount(col) != MagnetsPuzzle.IGNORED ? 1 : 0;
+        }
+        return degree;
+    }
+
+    /**
+     * Is a neighbouring cell part of another domino that is still undecided?
+     *
+     * @param puzzle the puzzle being solved
+     * @param domains the orientations each domino can still take
+     * @param domino the domino whose neighbour this is
+     * @param cell the neighbouring cell
+     * @return 1 if it is, 0 if not
+     */
+    private static int isOpenNeighbour(MagnetsPuzzle puzzle, byte[] domains, int domino, int cell) {
+        int other = puzzle.getDomino(cell);
+        return other != domino && Integer.bitCount(domains[other]) > 1 ? 1 : 0;
+    }
+}
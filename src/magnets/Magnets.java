@@ -1,55 +1,175 @@
 package magnets;
 
-import backtracking.Backtracker;
-import backtracking.Configuration;
+import backtracking.BinaryTraceWriter;
+import backtracking.SearchLimits;
+import backtracking.SearchListener;
+import backtracking.SearchMetrics;
 
 import java.io.IOException;
-import java.util.Optional;
+import java.nio.file.Paths;
 
 /**
  * The main program for the magnets puzzle solver.  The intention is to run
  * this on the command line with the name of the puzzle file, and whether
- * you want debug printing enabled or not.
+ * you want debug printing enabled or not.  An optional third argument
+ * selects the search engine:
+ * - recursive: the classic backtracker, copying the board per successor (default)
+ * - packed: like recursive, but with the board packed at 2 bits per cell
+ * - inplace: the backtracker mutates one board and undoes moves when backtracking
+ * - iterative: like inplace, but with an explicit stack instead of recursion
+ * - slack: like recursive, but trying the value that best fits the counts first
+ * - domino: the backtracker assigns a whole magnet at a time instead of a cell
+ * - domino-slack: like domino, but trying the orientation that best fits first
+ * - bitboard: like inplace, but the board is stored as bit masks
+ * - memo: like inplace, but skipping row frontiers that already failed
+ * - parallel: the packed search split into fork/join tasks over all cores
+ * - count: count every solution with the parallel packed search
+ * - propagate: propagate the constraints, branching on a domino only when stuck
+ * - mrv: like propagate, but branching on the most constrained domino first
+ * - portfolio: propagate, mrv and two randomized restarting searches racing on
+ *   their own threads, taking the first answer
+ * - sat: encode the puzzle as CNF for the built-in CDCL SAT solver
+ *
+ * Every engine runs after a presolve pass, which rejects a puzzle whose
+ * counts cannot be met and is then printed instead of the statistics.
+ *
+ * Running with -Dmagnets.trace=file records the search in a binary trace
+ * file, which MagnetsTraceTool can summarize and replay, and running with
+ * -Dmagnets.metrics=true prints the search metrics after the solution.
+ * Running with -Dmagnets.cache=dir answers the puzzle from a solution
+ * cache kept in dir when it, or a mirror image of it, was solved before.
  *
  * @author RIT CS
  */
 public class Magnets {
+    /** the most solutions a solution cache keeps in memory */
+    final static int CACHE_CAPACITY = 1 << 12;
+
+    /**
+     * Build what is displayed about a puzzle before it is solved:
+     * - the filename
+     * - the number of rows and columns
+     * - the grid of pairs
+     * - the initial config with all empty cells
+     *
+     * @param filename the name of the puzzle file
+     * @param puzzle the puzzle
+     * @return the text to display
+     */
+    static String display(String filename, MagnetsPuzzle puzzle) {
+        String nl = System.lineSeparator();
+        int rows = puzzle.getRows();
+        int cols = puzzle.getCols();
+        StringBuilder out = new StringBuilder();
+        out.append("File: ").append(filename).append(nl);
+        out.append("Rows: ").append(rows).append(", Columns: ").append(cols).append(nl);
+        out.append("Pairs:").append(nl);
+        for (int row = 0; row < rows; row++) {
+            if (row != 0) {
+                out.append(nl);
+            }
+            for (int col = 0; col < cols; col++) {
+                out.append(puzzle.getPair(row, col)).append(' ');
+            }
+        }
+        out.append(nl);
+
+        // the initial config
+        out.append("Initial config:").append(nl);
+        // top
+        out.append("+ ");
+        for (int col = 0; col < cols; col++) {
+            out.append(puzzle.getPosColCount(col) == -1 ? "  " : puzzle.getPosColCount(col) + " ");
+        }
+        out.append(nl).append("  ");
+        for (int i = 0; i < (cols * 2) - 1; i++) {
+            out.append('-');
+        }
+        out.append(nl);
+        // middle
+        for (int row = 0; row < rows; row++) {
+            out.append(puzzle.getPosRowCount(row) == -1 ? " |" : puzzle.getPosRowCount(row) + "|");
+            for (int col = 0; col < cols; col++) {
+                if (col < cols - 1) {
+                    out.append(". ");
+                } else {
+                    out.append(".|").append(puzzle.getNegRowCount(row) == -1 ? "" : puzzle.getNegRowCount(row));
+                    out.append('\n');
+                }
+            }
+        }
+        // bottom
+        out.append("  ");
+        for (int i = 0; i < (cols * 2) - 1; i++) {
+            out.append('-');
+        }
+        out.append(nl).append("  ");
+        for (int col = 0; col < cols; col++) {
+            out.append(puzzle.getNegColCount(col) == -1 ? "  " : puzzle.getNegColCount(col) + " ");
+        }
+        out.append(" -").append(nl).append(nl);
+        return out.toString();
+    }
+
     /**
      * Run the main program.
      *
      * @param args command line arguments
      */
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.out.println("Usage: java Magnets filename debug");
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("Usage: java Magnets filename debug [engine]");
         } else {
             try {
-                MagnetsConfig config = new MagnetsConfig(args[0]);
-
-                // create the backtracker with the debug flag
+                MagnetsPuzzle puzzle = MagnetsPuzzle.read(args[0]);
+                System.out.print(display(args[0], puzzle));
                 boolean debug = args[1].equals("true");
-                Backtracker bt = new Backtracker(debug);
+
+                SearchMetrics metrics = Boolean.getBoolean("magnets.metrics") ? new SearchMetrics() : null;
+                String cacheDir = System.getProperty("magnets.cache");
+                MagnetsSolutionCache cache = cacheDir == null ? null
+                        : new MagnetsSolutionCache(CACHE_CAPACITY, Paths.get(cacheDir));
 
                 // start the clock
-                double start = System.currentTimeMillis();
+                long start = System.nanoTime();
 
-                // attempt to solve the puzzle
-                Optional<Configuration> sol = bt.solve(config);
+                // attempt to solve the puzzle with the chosen engine
+                String engine = args.length == 3 ? args[2] : "recursive";
+                String traceFile = System.getProperty("magnets.trace");
+                MagnetsRun run;
+                if (traceFile == null) {
+                    run = MagnetsRun.run(puzzle, engine, debug, metrics, SearchLimits.NONE, cache);
+                } else {
+                    try (BinaryTraceWriter trace = new BinaryTraceWriter(Paths.get(traceFile))) {
+                        run = MagnetsRun.run(puzzle, engine, debug, SearchListener.of(trace, metrics),
+                                             SearchLimits.NONE, cache);
+                    }
+                }
 
                 // compute the elapsed time
-                double elapsed =  (System.currentTimeMillis() - start) / 1000.0;
+                double elapsed = (System.nanoTime() - start) / 1e9;
 
                 // display the solution, if one exists
-                if (sol.isPresent()) {
-                    System.out.println("Solution:\n" + sol.get());
+                if (run.getSolutions() >= 0) {
+                    System.out.println("Solutions found: " + run.getSolutions());
+                } else if (run.getSolution().isPresent()) {
+                    System.out.println("Solution:\n" + run.getSolution().get());
                 } else {
                     System.out.println("No solution exists!");
                 }
 
                 System.out.println("Elapsed time: " + elapsed + " seconds.") ;
-                System.out.println(bt.getConfigCount() + " configurations generated.");
+                System.out.println(run.getConfigCount() + " configurations generated.");
+                if (run.getStatistics() != null) {
+                    System.out.println(run.getStatistics());
+                }
+                if (metrics != null) {
+                    System.out.println(metrics);
+                }
             } catch (IOException ioe) {
                 System.out.println(ioe.getMessage());
+            } catch (IllegalArgumentException iae) {
+                System.out.println(iae.getMessage());
             }
         }
     }
@@ -0,0 +1,283 @@
+package magnets;
+
+import backtracking.SearchLimits;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves every puzzle in a directory, or every file matching a glob, in
+ * one JVM.  The puzzles are solved concurrently, on virtual threads when
+ * the JVM has them and on a fixed pool of platform threads otherwise.
+ * Only a bounded number of puzzles are read and in flight at a time, and
+ * each result is written to the report as soon as it is done, so memory
+ * does not grow with the number of files.  Run it as:
+ *
+ *   java magnets.MagnetsBatch directory|glob report.csv|report.json [engine] [threads] [timeout]
+ *
+ * A directory means every *.txt file in it.  A report ending in .json is
+ * written as a JSON array, anything else as CSV.  Results appear in the
+ * order the puzzles finish, each with its elapsed time, configuration
+ * count (0 for the sat engine, which generates no configurations) and
+ * status: solved, unsolvable or error, or timed_out if the
+ * puzzle took longer than the timeout in seconds.  Every engine checks
+ * the timeout as it searches, so one pathological puzzle cannot hold a
+ * thread for the whole batch.  Running with
+ * -Dmagnets.cache=dir shares a solution cache between the puzzles and
+ * keeps it in dir, so repeated and mirrored puzzles are not solved again.
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsBatch {
+    /**
+     * Run the batch.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 5) {
+            System.out.println("Usage: java magnets.MagnetsBatch directory|glob report.csv|report.json"
+                               + " [engine] [threads] [timeout]");
+            return;
+        }
+        String engine = args.length > 2 ? args[2] : "propagate";
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        SearchLimits limits = args.length > 4
+                ? SearchLimits.NONE.withTimeout(Duration.ofMillis((long) (Double.parseDouble(args[4]) * 1000)))
+                : SearchLimits.NONE;
+        String cacheDir = System.getProperty("magnets.cache");
+        try (Report report = new Report(Paths.get(args[1]), engine)) {
+            MagnetsSolutionCache cache = cacheDir == null ? null
+                    : new MagnetsSolutionCache(Magnets.CACHE_CAPACITY, Paths.get(cacheDir));
+            long start = System.nanoTime();
+            int count = solveAll(args[0], engine, threads, limits, cache, report);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.println(count + " puzzles processed in " + elapsed + " seconds.");
+        } catch (IOException | InterruptedException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Solve every puzzle that a directory or glob names.
+     *
+     * @param source a directory, or a glob for the file names in a directory
+     * @param engine the name of the engine, as given to Magnets
+     * @param threads the most puzzles solved at once
+     * @param limits the limits each puzzle is solved under
+     * @param cache the solution cache, or null for none
+     * @param report where to write the results
+     * @return the number of puzzles
+     * @throws IOException if the directory cannot be read
+     * @throws InterruptedException if the batch is interrupted
+     */
+    static int solveAll(String source, String engine, int threads, SearchLimits limits,
+                        MagnetsSolutionCache cache, Report report)
+            throws IOException, InterruptedException {
+        Path path = Paths.get(source);
+        Path dir = Files.isDirectory(path) ? path : path.toAbsolutePath().getParent();
+        String glob = Files.isDirectory(path) ? "*.txt" : path.getFileName().toString();
+        Semaphore inFlight = new Semaphore(threads);
+        ExecutorService executor = newExecutor(threads);
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, glob)) {
+            for (Path file : files) {
+                if (!Files.isRegularFile(file)) {
+                    continue;
+                }
+                // wait for a slot, so only threads puzzles are held at once
+                inFlight.acquire();
+                count++;
+                executor.execute(() -> {
+                    try {
+                        report.add(file, solve(file, engine, limits, cache));
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        return count;
+    }
+
+    /**
+     * Solve one puzzle file.
+     *
+     * @param file the puzzle file
+     * @param engine the name of the engine
+     * @param limits the limits to solve it under
+     * @param cache the solution cache, or null for none
+     * @return the result for the report
+     */
+    private static Result solve(Path file, String engine, SearchLimits limits, MagnetsSolutionCache cache) {
+        long start = System.nanoTime();
+        try {
+            MagnetsRun run = MagnetsRun.run(MagnetsPuzzle.read(file.toString()), engine, false, null, limits,
+                                            cache);
+            return new Result(run.getStatus().name().toLowerCase(), System.nanoTime() - start,
+                              run.getConfigCount());
+        } catch (IOException | RuntimeException | StackOverflowError e) {
+            return new Result("error", System.nanoTime() - start, -1);
+        }
+    }
+
+    /**
+     * Create the executor the puzzles run on: one virtual thread per
+     * puzzle if the JVM has them (Java 21 and later), looked up by
+     * reflection so the code still runs on older JVMs, and otherwise a
+     * fixed pool of platform threads.
+     *
+     * @param threads the number of platform threads in the fallback pool
+     * @return the executor
+     */
+    private static ExecutorService newExecutor(int threads) {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    /**
+     * The result of solving one puzzle.
+     */
+    static final class Result {
+        /** solved, unsolvable, timed_out or error */
+        final String status;
+        /** the time it took, in nanoseconds */
+        final long elapsed;
+        /** the configurations generated, or -1 on an error */
+        final long configCount;
+
+        /**
+         * Record a result.
+         *
+         * @param status solved, unsolvable, timed_out or error
+         * @param elapsed the time it took, in nanoseconds
+         * @param configCount the configurations generated, or -1
+         */
+        Result(String status, long elapsed, long configCount) {
+            this.status = status;
+            this.elapsed = elapsed;
+            this.configCount = configCount;
+        }
+    }
+
+    /**
+     * A CSV or JSON report that results are added to from many threads.
+     */
+    static final class Report implements Closeable {
+        /** the report file */
+        private final BufferedWriter out;
+        /** is the report JSON rather than CSV? */
+        private final boolean json;
+        /** the engine every puzzle is solved with */
+        private final String engine;
+        /** the number of results written */
+        private int rows;
+
+        /**
+         * Create a report, writing its header.
+         *
+         * @param file the report file, JSON if its name ends in .json
+         * @param engine the engine every puzzle is solved with
+         * @throws IOException if the file cannot be written
+         */
+        Report(Path file, String engine) throws IOException {
+            this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+            this.json = file.getFileName().toString().endsWith(".json");
+            this.engine = engine;
+            out.write(json ? "[" : "file,engine,status,elapsed_ms,configs");
+            out.newLine();
+        }
+
+        /**
+         * Write the result of one puzzle.
+         *
+         * @param file the puzzle file
+         * @param result its result
+         */
+        synchronized void add(Path file, Result result) {
+            String name = file.getFileName().toString();
+            double millis = result.elapsed / 1e6;
+            try {
+                if (json) {
+                    out.write((rows > 0 ? "," : "") + "{\"file\":\"" + escapeJson(name)
+                            + "\",\"engine\":\"" + escapeJson(engine) + "\",\"status\":\"" + result.status
+                            + "\",\"elapsed_ms\":" + millis + ",\"configs\":" + result.configCount + "}");
+                } else {
+                    out.write(escapeCsv(name) + "," + escapeCsv(engine) + "," + result.status + ","
+                            + millis + "," + result.configCount);
+                }
+                out.newLine();
+                rows++;
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot write the report", e);
+            }
+        }
+
+        /**
+         * Finish the report and close its file.
+         *
+         * @throws IOException if the file cannot be written
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (json) {
+                out.write("]");
+                out.newLine();
+            }
+            out.close();
+        }
+
+        /**
+         * Escape a string for a JSON string literal.
+         *
+         * @param s the string
+         * @return the string with quotes, backslashes and control
+         *  characters escaped
+         */
+        private static String escapeJson(String s) {
+            StringBuilder result = new StringBuilder();
+            for (char c : s.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    result.append('\\').append(c);
+                } else if (c < ' ') {
+                    result.append(String.format("\\u%04x", (int) c));
+                } else {
+                    result.append(c);
+                }
+            }
+            return result.toString();
+        }
+
+        /**
+         * Quote a CSV field if it holds a comma, quote or line break.
+         *
+         * @param s the field
+         * @return the field, quoted if needed
+         */
+        private static String escapeCsv(String s) {
+            if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0 && s.indexOf('\r') < 0) {
+                return s;
+            }
+            return "\"" + s.replace("\"", "\"\"") + "\"";
+        }
+    }
+}
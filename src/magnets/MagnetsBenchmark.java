@@ -0,0 +1,80 @@
+package magnets;
+
+import backtracking.Backtracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compares the configurations generated by each domino ordering of the
+ * constraint-propagation search, on every puzzle in a directory.  The
+ * cell-by-cell and domino-by-domino backtrackers are listed first as the
+ * baseline, with each value ordering.  Run it with the directory of
+ * puzzles, which defaults to data:
+ *
+ *   java magnets.MagnetsBenchmark [directory]
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsBenchmark {
+    /** the width of each column of the table */
+    private final static String COLUMN = "%24s";
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        File dir = new File(args.length > 0 ? args[0] : "data");
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".txt"));
+        if (files == null) {
+            System.out.println("Not a directory: " + dir);
+            return;
+        }
+        Arrays.sort(files);
+
+        System.out.printf("%-20s", "puzzle");
+        for (ValueOrdering values : ValueOrdering.values())
+            System.out.printf(COLUMN, "cells " + values.name().toLowerCase());
+        for (ValueOrdering values : ValueOrdering.values())
+            System.out.printf(COLUMN, "dominoes " + values.name().toLowerCase());
+        for (DominoOrderings ordering : DominoOrderings.values())
+            System.out.printf(COLUMN, ordering.name().toLowerCase());
+        System.out.println();
+
+        for (File file : files)
+        {
+            try
+            {
+                MagnetsPuzzle puzzle = MagnetsPuzzle.read(file.getPath());
+                System.out.printf("%-20s", file.getName());
+                Backtracker bt;
+                for (ValueOrdering values : ValueOrdering.values())
+                {
+                    bt = new Backtracker(false);
+                    bt.solve(new MagnetsConfig(puzzle, values));
+                    System.out.printf(COLUMN, bt.getConfigCount());
+                }
+                for (ValueOrdering values : ValueOrdering.values())
+                {
+                    bt = new Backtracker(false);
+                    bt.solve(new MagnetsDominoConfig(puzzle, values));
+                    System.out.printf(COLUMN, bt.getConfigCount());
+                }
+                for (DominoOrderings ordering : DominoOrderings.values())
+                {
+                    bt = new Backtracker(false);
+                    bt.solve(new MagnetsPropagationConfig(puzzle, ordering));
+                    System.out.printf(COLUMN, bt.getConfigCount());
+                }
+                System.out.println();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                System.out.println(file.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+}
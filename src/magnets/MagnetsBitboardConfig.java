@@ -0,0 +1,368 @@
+package magnets;
+
+import backtracking.Configuration;
+import backtracking.MutableConfiguration;
+import backtracking.TraceableConfiguration;
+import test.IMagnetTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A magnet configuration that stores the board as bitboards instead of a
+ * char[][].  Each row is held in one or more 64 bit words in three masks,
+ * one each for + cells, - cells and blank cells, so a cell takes 3 bits
+ * and a board wider than 64 columns simply uses more words per row.
+ *
+ * The search order and pruning are the same as MagnetsConfig: cells are
+ * populated in row-major order, each new cell has its pair and polarity
+ * checked with shifts and ANDs on the masks, and the row's pos/neg counts
+ * come from Long.bitCount while the column counts are kept running.
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsBitboardConfig implements MutableConfiguration, TraceableConfiguration, IMagnetTest {
+    /** a cell that has not been assigned a value yet */
+    private final static char EMPTY = '.';
+    /** a blank cell */
+    private final static char BLANK = 'X';
+    /** a positive cell */
+    private final static char POS = '+';
+    /** a negative cell */
+    private final static char NEG = '-';
+    /** the values tried at each cell, in successor order */
+    private final static char[] VALUES = {POS, NEG, BLANK};
+    /** the static puzzle definition shared by every config */
+    private final MagnetsPuzzle puzzle;
+    private final int amountOfRows;
+    private final int amountOfCols;
+    /** the number of 64 bit words in each row of a mask */
+    private final int words;
+    private int cursorRow;
+    private int cursorCol;
+    /** the + cells, words longs per row */
+    private final long[] pos;
+    /** the - cells, words longs per row */
+    private final long[] neg;
+    /** the blank cells, words longs per row */
+    private final long[] blank;
+    /** number of + cells placed so far in each column */
+    private final int[] colPosCount;
+    /** number of - cells placed so far in each column */
+    private final int[] colNegCount;
+    /** the values the presolve left to each cell, or null if there was none */
+    private final MagnetsPresolver presolved;
+
+    /**
+     * Create the initial config for a puzzle, with all cells empty and the
+     * cursor at (0, -1).
+     *
+     * @param puzzle the puzzle to solve
+     */
+    public MagnetsBitboardConfig(MagnetsPuzzle puzzle) {
+        this(puzzle, null);
+    }
+
+    /**
+     * Create the initial config for a puzzle that has been presolved, with
+     * all cells empty and the cursor at (0, -1).
+     *
+     * @param puzzle the puzzle to solve
+     * @param presolved the presolve of the puzzle, or null to search
+     *  without one
+     */
+    public MagnetsBitboardConfig(MagnetsPuzzle puzzle, MagnetsPresolver presolved) {
+        this.puzzle = puzzle;
+        this.presolved = presolved;
+        this.amountOfRows = puzzle.getRows();
+        this.amountOfCols = puzzle.getCols();
+        this.words = (amountOfCols + 63) >>> 6;
+        this.cursorRow = 0;
+        this.cursorCol = -1;
+        this.pos = new long[amountOfRows * words];
+        this.neg = new long[amountOfRows * words];
+        this.blank = new long[amountOfRows * words];
+        this.colPosCount = new int[amountOfCols];
+        this.colNegCount = new int[amountOfCols];
+    }
+
+    /**
+     * The copy constructor which copies the masks and applies a move to
+     * the copy.
+     *
+     * @param other the config to copy
+     * @param move the index into VALUES of the value to place
+     */
+    private MagnetsBitboardConfig(MagnetsBitboardConfig other, int move) {
+        this.puzzle = other.puzzle;
+        this.amountOfRows = other.amountOfRows;
+        this.amountOfCols = other.amountOfCols;
+        this.words = other.words;
+        this.cursorRow = other.cursorRow;
+        this.cursorCol = other.cursorCol;
+        this.pos = other.pos.clone();
+        this.neg = other.neg.clone();
+        this.blank = other.blank.clone();
+        this.colPosCount = other.colPosCount.clone();
+        this.colNegCount = other.colNegCount.clone();
+        this.presolved = other.presolved;
+        applyMove(move);
+    }
+
+    /**
+     * Get the index of the word holding (row, col) in a mask.
+     *
+     * @param row the row
+     * @param col the column
+     * @return the index into pos, neg or blank
+     */
+    private int word(int row, int col) {
+        return row * words + (col >>> 6);
+    }
+
+    /**
+     * Is the bit for (row, col) set in a mask?  Shifts use only the low
+     * 6 bits of the column, which is its position inside its word.
+     *
+     * @param mask pos, neg or blank
+     * @param row the row
+     * @param col the column
+     * @return true if the bit is set
+     */
+    private boolean isSet(long[] mask, int row, int col) {
+        return ((mask[word(row, col)] >>> col) & 1L) != 0;
+    }
+
+    /**
+     * Get the mask that a value is stored in.
+     *
+     * @param val +, - or X
+     * @return pos, neg or blank
+     */
+    private long[] maskOf(char val) {
+        return val == POS ? pos : val == NEG ? neg : blank;
+    }
+
+    /**
+     * Generate the successor configs.  For minimal pruning, this should be
+     * done in the order: +, - and X.
+     *
+     * @return the collection of successors
+     */
+    @Override
+    public List<Configuration> getSuccessors() {
+        List<Configuration> successors = new ArrayList<>();
+        for (int move = 0; move < VALUES.length; move++)
+            successors.add(new MagnetsBitboardConfig(this, move));
+        return successors;
+    }
+
+    // MutableConfiguration
+
+    /**
+     * Every cell can take one of three values: +, - and X.
+     *
+     * @return the number of moves from this config
+     */
+    @Override
+    public int getMoveCount() {
+        return VALUES.length;
+    }
+
+    /**
+     * Advance the cursor and set the bit for the move-th value (+, - or X)
+     * there.
+     *
+     * @param move the index of the value to place
+     */
+    @Override
+    public void applyMove(int move) {
+        this.cursorCol++;
+        if (this.cursorCol == amountOfCols)
+        {
+            this.cursorRow++;
+            this.cursorCol = 0;
+        }
+        char val = VALUES[move];
+        maskOf(val)[word(cursorRow, cursorCol)] |= 1L << cursorCol;
+        if (val == POS)
+            colPosCount[cursorCol]++;
+        else if (val == NEG)
+            colNegCount[cursorCol]++;
+    }
+
+    /**
+     * Clear the bit at the cursor and move the cursor back.
+     */
+    @Override
+    public void undoMove() {
+        int w = word(cursorRow, cursorCol);
+        long bit = 1L << cursorCol;
+        if ((pos[w] & bit) != 0)
+            colPosCount[cursorCol]--;
+        else if ((neg[w] & bit) != 0)
+            colNegCount[cursorCol]--;
+        pos[w] &= ~bit;
+        neg[w] &= ~bit;
+        blank[w] &= ~bit;
+        this.cursorCol--;
+        if (this.cursorCol < 0 && this.cursorRow > 0)
+        {
+            this.cursorRow--;
+            this.cursorCol = amountOfCols - 1;
+        }
+    }
+
+    /**
+     * Checks the newly placed cell at the cursor: its pair, its polarity
+     * against the cells above and to the left, the values the presolve
+     * left to it, and the pos/neg counts of its row and column.
+     *
+     * @return whether this config is valid or not
+     */
+    @Override
+    public boolean isValid() {
+        if (cursorCol < 0)
+            return true;
+        int row = cursorRow;
+        int col = cursorCol;
+        char val = getVal(row, col);
+        char pair = puzzle.getPair(row, col);
+        if (pair == MagnetsPuzzle.RIGHT && !isSet(opposite(val), row, col - 1))
+            return false; //if the left cell of the pair does not hold the opposite value
+        if (pair == MagnetsPuzzle.BOTTOM && !isSet(opposite(val), row - 1, col))
+            return false; //if the top cell of the pair does not hold the opposite value
+        if (val != BLANK)
+        {
+            long[] same = maskOf(val);
+            if ((col > 0 && isSet(same, row, col - 1)) || (row > 0 && isSet(same, row - 1, col)))
+                return false; //if the cell is next to one of the same polarity
+        }
+        if (presolved != null && !presolved.isAllowed(row, col, val))
+            return false; //if the presolve ruled the value out
+        // count the row so far; bits past the cursor are all still clear
+        int rowPos = 0;
+        int rowNeg = 0;
+        for (int w = row * words; w <= word(row, col); w++)
+        {
+            rowPos += Long.bitCount(pos[w]);
+            rowNeg += Long.bitCount(neg[w]);
+        }
+        return MagnetsConfig.isCountValid(puzzle.getPosRowCount(row), puzzle.getNegRowCount(row),
+                                          rowPos, rowNeg, amountOfCols - 1 - col)
+                && MagnetsConfig.isCountValid(puzzle.getPosColCount(col), puzzle.getNegColCount(col),
+                                              colPosCount[col], colNegCount[col], amountOfRows - 1 - row);
+    }
+
+    /**
+     * Get the mask that the other cell of a pair must be set in.
+     *
+     * @param val the value of one cell of the pair
+     * @return neg for +, pos for -, and blank for X
+     */
+    private long[] opposite(char val) {
+        return val == POS ? neg : val == NEG ? pos : blank;
+    }
+
+    /**
+     * This method checks to see if the cursor is in the last row and the
+     * last column.
+     *
+     * @return true if goal is reached, false otherwise
+     */
+    @Override
+    public boolean isGoal() {
+        return this.cursorRow == amountOfRows - 1 && this.cursorCol == amountOfCols - 1;
+    }
+
+    /**
+     * Returns a string representation of the puzzle including all necessary info.
+     *
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        return MagnetsConfig.render(this);
+    }
+
+    // TraceableConfiguration
+
+    /**
+     * The position of the most recent move is the cell at the cursor,
+     * as row * cols + col.
+     *
+     * @return the cell, or -1 before the first move
+     */
+    @Override
+    public int getTracePosition() {
+        return getCursorCol() < 0 ? -1 : getCursorRow() * getCols() + getCursorCol();
+    }
+
+    /**
+     * The value of the most recent move is the character at the cursor.
+     *
+     * @return the value, or 0 before the first move
+     */
+    @Override
+    public int getTraceValue() {
+        return getCursorCol() < 0 ? 0 : getVal(getCursorRow(), getCursorCol());
+    }
+
+    // IMagnetTest
+
+    @Override
+    public int getRows() {
+        return this.amountOfRows;
+    }
+
+    @Override
+    public int getCols() {
+        return this.amountOfCols;
+    }
+
+    @Override
+    public int getPosRowCount(int row) {
+        return puzzle.getPosRowCount(row);
+    }
+
+    @Override
+    public int getPosColCount(int col) {
+        return puzzle.getPosColCount(col);
+    }
+
+    @Override
+    public int getNegRowCount(int row) {
+        return puzzle.getNegRowCount(row);
+    }
+
+    @Override
+    public int getNegColCount(int col) {
+        return puzzle.getNegColCount(col);
+    }
+
+    @Override
+    public char getPair(int row, int col) {
+        return puzzle.getPair(row, col);
+    }
+
+    @Override
+    public char getVal(int row, int col) {
+        if (isSet(pos, row, col))
+            return POS;
+        if (isSet(neg, row, col))
+            return NEG;
+        if (isSet(blank, row, col))
+            return BLANK;
+        return EMPTY;
+    }
+
+    @Override
+    public int getCursorRow() {
+        return this.cursorRow;
+    }
+
+    @Override
+    public int getCursorCol() {
+        return this.cursorCol;
+    }
+}
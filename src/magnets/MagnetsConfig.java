@@ -1,14 +1,20 @@
 package magnets;
 
 import backtracking.Configuration;
+import backtracking.ExplainableConfiguration;
+import backtracking.MemoizableConfiguration;
+import backtracking.MutableConfiguration;
+import backtracking.SymmetricConfiguration;
+import backtracking.TraceableConfiguration;
 import test.IMagnetTest;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 /**
  * The representation of a magnet configuration, including the ability
@@ -17,11 +23,26 @@ import java.util.List;
  * This implements a more optimal pruning strategy in isValid():
  * - Pair checked each time a new cell is populated
  * - Polarity checked each time a new cell is populated
- * - When last column or row is populated, the pos/neg counts are checked
+ * - Running pos/neg counts of the cursor row and every column are kept,
+ *   and checked each time a new cell is populated: a count may not be
+ *   exceeded, and must still be reachable with the cells left in its line
+ *
+ * Once a row is full, the rest of the search only depends on the cursor
+ * row, the values in that row (for polarity and vertical pairs), and the
+ * running column counts, so that frontier is its memo key.
+ *
+ * When the puzzle's counts stay the same with + and - swapped, every
+ * solution has a mirror image with + and - swapped.  The first magnet in
+ * row-major order then only tries +, so the search covers one solution of
+ * each pair, and counting or enumerating adds the mirror images back in.
+ *
+ * A config can also be given what a MagnetsPresolver worked out about the
+ * puzzle, and then never tries a value the presolve ruled out for a cell.
  *
  * @author Jerry Chen
  */
-public class MagnetsConfig implements Configuration, IMagnetTest {
+public class MagnetsConfig implements MutableConfiguration, MemoizableConfiguration, TraceableConfiguration,
+        ExplainableConfiguration, SymmetricConfiguration, IMagnetTest {
     /** a cell that has not been assigned a value yet */
     private final static char EMPTY = '.';
     /** a blank cell */
@@ -40,6 +61,22 @@ public class MagnetsConfig implements Configuration, IMagnetTest {
     private final static char BOTTOM = 'B';
     /** and ignored count for pos/neg row/col */
     private final static int IGNORED = -1;
+    /** the prune reason of a cell that does not match its pair */
+    final static String PAIR = "pair";
+    /** the prune reason of a cell next to one of the same polarity */
+    final static String POLARITY = "polarity";
+    /** the prune reason of a row whose counts can no longer be met */
+    final static String ROW_COUNT = "row count";
+    /** the prune reason of a column whose counts can no longer be met */
+    final static String COLUMN_COUNT = "column count";
+    /** the prune reason of a - first magnet, whose mirror image is searched instead */
+    final static String SYMMETRY = "symmetry";
+    /** the prune reason of a value the presolve ruled out for its cell */
+    final static String PRESOLVE = "presolve";
+    /** the values tried at each cell, in successor order */
+    private final static char[] VALUES = {POS, NEG, BLANK};
+    /** the static puzzle definition shared by every config */
+    private MagnetsPuzzle puzzle;
     private int amountOfRows;
     private int amountOfCols;
     private int cursorRow;
@@ -51,136 +88,130 @@ public class MagnetsConfig implements Configuration, IMagnetTest {
     private int[] posCol;
     private int[] negRow;
     private int[] negCol;
+    /** number of + cells placed so far in the cursor row */
+    private int rowPosCount;
+    /** number of - cells placed so far in the cursor row */
+    private int rowNegCount;
+    /** number of + cells placed so far in each column */
+    private int[] colPosCount;
+    /** number of - cells placed so far in each column */
+    private int[] colNegCount;
+    /** does the search only try + for the first magnet, as the puzzle is symmetric? */
+    private boolean symmetric;
+    /** the first + or - cell in row-major order, as row * cols + col, or -1 */
+    private int firstMagnet;
+    /** the order the values of a cell are tried in */
+    private ValueOrdering ordering;
+    /** the values the presolve left to each cell, or null if there was none */
+    private MagnetsPresolver presolved;
+    /** the values applyMove() tries at each cell, ranked by a SLACK ordering, or null until it first ranks them */
+    private char[][] moveValues;
+    /** scratch for the fit of each value while ranking moves */
+    private double[] moveFit;
+    /** scratch for the order of the values while ranking moves */
+    private int[] moveOrder;
+    /** are the moveValues of each cell ranked for the cells before it as they are? */
+    private boolean[] moveRanked;
 
     /**
-     * Read in the magnet puzzle from the filename.  After reading in, it should display:
-     * - the filename
-     * - the number of rows and columns
-     * - the grid of pairs
-     * - the initial config with all empty cells
+     * Read in the magnet puzzle from the filename, with all cells empty
+     * and the cursor at (0, -1).  Nothing is displayed.
      *
      * @param filename the name of the file
      * @throws IOException thrown if there is a problem opening or reading the file
      */
     public MagnetsConfig(String filename) throws IOException {
-        System.out.println("File: " + filename);
-        try (BufferedReader in = new BufferedReader(new FileReader(filename)))
+        this(MagnetsPuzzle.read(filename));
+    }
+
+    /**
+     * Create the initial config for a puzzle, with all cells empty and the
+     * cursor at (0, -1).  Nothing is displayed.  Values are tried in the
+     * order +, - and X.
+     *
+     * @param puzzle the puzzle to solve
+     */
+    public MagnetsConfig(MagnetsPuzzle puzzle) {
+        this(puzzle, ValueOrdering.FIXED);
+    }
+
+    /**
+     * Create the initial config for a puzzle, with all cells empty and the
+     * cursor at (0, -1).  Nothing is displayed.
+     *
+     * @param puzzle the puzzle to solve
+     * @param ordering the order the values of a cell are tried in
+     */
+    public MagnetsConfig(MagnetsPuzzle puzzle, ValueOrdering ordering) {
+        this(puzzle, ordering, null);
+    }
+
+    /**
+     * Create the initial config for a puzzle that has been presolved, with
+     * all cells empty and the cursor at (0, -1).  Nothing is displayed.
+     *
+     * @param puzzle the puzzle to solve
+     * @param ordering the order the values of a cell are tried in
+     * @param presolved the presolve of the puzzle, or null to search
+     *  without one
+     */
+    public MagnetsConfig(MagnetsPuzzle puzzle, ValueOrdering ordering, MagnetsPresolver presolved) {
+        this.puzzle = puzzle;
+        this.ordering = ordering;
+        this.presolved = presolved;
+        this.amountOfRows = puzzle.getRows();
+        this.amountOfCols = puzzle.getCols();
+        this.board = new char[amountOfRows][amountOfCols];
+        this.grid = new char[amountOfRows][amountOfCols];
+        this.posRow = new int[amountOfRows];
+        this.negRow = new int[amountOfRows];
+        for (int row = 0; row < amountOfRows; row++)
         {
-            // read first line: rows cols
-            String[] fields = in.readLine().split("\\s+");
-            this.amountOfRows = Integer.parseInt(fields[0]);
-            this.amountOfCols = Integer.parseInt(fields[1]);
-            this.board = new char[amountOfRows][amountOfCols];
-            this.grid = new char[amountOfRows][amountOfCols];
-            System.out.println("Rows: " + amountOfRows + ", Columns: " + amountOfCols);
-            fields = in.readLine().split("\\s+");
-            //populate positive row counts with integers
-            this.posRow = new int[amountOfRows];
-            for (int i = 0; i < amountOfRows; i++)
-            {
-                this.posRow[i] = Integer.parseInt(fields[i]);
-            }
+            this.posRow[row] = puzzle.getPosRowCount(row);
+            this.negRow[row] = puzzle.getNegRowCount(row);
+        }
+        this.posCol = new int[amountOfCols];
+        this.negCol = new int[amountOfCols];
+        for (int col = 0; col < amountOfCols; col++)
+        {
+            this.posCol[col] = puzzle.getPosColCount(col);
+            this.negCol[col] = puzzle.getNegColCount(col);
+        }
 
-            fields = in.readLine().split("\\s+");
-            //populate positive column counts with integers
-            this.posCol = new int[amountOfCols];
-            for (int i = 0; i < amountOfCols; i++)
-            {
-                this.posCol[i] = Integer.parseInt(fields[i]);
-            }
-            //populate negative row counts with integers
-            fields = in.readLine().split("\\s+");
-            this.negRow = new int[amountOfRows];
-            for (int i = 0; i < amountOfRows; i++)
+        //initialize grid with pairs and board to be empty
+        for (int row = 0; row < amountOfRows; row++)
+            for (int col = 0; col < amountOfCols; col++)
             {
-                this.negRow[i] = Integer.parseInt(fields[i]);
-            }
-            //populate negative column counts with integers
-            fields = in.readLine().split("\\s+");
-            this.negCol = new int[amountOfCols];
-            for (int i = 0; i < amountOfCols; i++) {
-                this.negCol[i] = Integer.parseInt(fields[i]);
+                grid[row][col] = puzzle.getPair(row, col);
+                board[row][col] = EMPTY;
             }
 
-            //populate grid with pairs
-            for (int row = 0; row < amountOfRows; row++) {
-                fields = in.readLine().split("\\s+");
-                char[] c = new char[amountOfCols];
-                for (int i = 0; i < amountOfCols; i++)
-                    c[i] = fields[i].charAt(0);
-                for (int col = 0; col < amountOfCols; col++)
-                    grid[row][col] = c[col];
-            }
-            System.out.println("Pairs:");
-            for (int row = 0; row < grid.length; row++)
-            {
-                if (row != 0)
-                    System.out.println();
-                for (int col = 0; col < grid[row].length; col++)
-                    System.out.print(grid[row][col] + " ");
-            }
-            System.out.println();
-
-            //initialize board to be empty
-            for (int row = 0; row < amountOfRows; row++)
-                for (int col = 0; col < amountOfCols; col++)
-                    board[row][col] = EMPTY;
-
-            //printing out initial config
-            System.out.println("Initial config:");
-            //top
-            System.out.print("+ ");
-            for (int i = 0; i < posCol.length; i++)
-            {
-                if (posCol[i] == -1)
-                    System.out.print("  ");
-                else
-                    System.out.print(posCol[i] + " ");
-            }
-            System.out.println();
-            System.out.print("  ");
-            for (int i = 0; i < (posCol.length * 2) - 1; i++)
-                System.out.print("-");
-            System.out.println();
-            //middle
-            for (int row = 0; row < amountOfRows; row++)
-            {
-                if (posRow[row] == -1)
-                    System.out.print(" |");
-                else
-                    System.out.print(posRow[row] + "|");
-                for (int col = 0; col < amountOfCols; col++)
-                {
-                    if (col == amountOfCols - 1 && negRow[row] != -1)
-                        System.out.print(".|" + negRow[row] + "\n");
-                    else if (col == amountOfCols - 1 && negRow[row] == -1)
-                        System.out.print(".|\n");
-                    else
-                        System.out.print(". ");
-                }
-            }
-            //bottom
-            System.out.print("  ");
-            for (int i = 0; i < (posCol.length * 2) - 1; i++)
-                System.out.print("-");
-            System.out.println();
-            System.out.print("  ");
-            for (int i = 0; i < negCol.length; i++)
+        //initialize cursor to be at (0, -1) with nothing counted yet
+        this.cursorRow = 0;
+        this.cursorCol = -1;
+        this.colPosCount = new int[amountOfCols];
+        this.colNegCount = new int[amountOfCols];
+        this.symmetric = puzzle.isPolaritySymmetric();
+        this.firstMagnet = -1;
+    }
+
+    /**
+     * Create a config with every cell already filled in, such as a board
+     * decoded from another solver.  The cursor is left on the last cell,
+     * so the config is a goal.
+     *
+     * @param puzzle the puzzle that was solved
+     * @param values the value (+, - or X) of every cell
+     */
+    MagnetsConfig(MagnetsPuzzle puzzle, char[][] values) {
+        this(puzzle);
+        for (int row = 0; row < amountOfRows; row++)
+            for (int col = 0; col < amountOfCols; col++)
             {
-                if (negCol[i] == -1)
-                    System.out.print("  ");
-                else
-                    System.out.print(negCol[i] + " ");
+                advanceCursor();
+                this.board[row][col] = values[row][col];
+                count(values[row][col], 1);
             }
-            System.out.print(" ");
-            System.out.println("-");
-            System.out.println();
-
-            //initialize cursor to be at (0, -1)
-            this.cursorRow = 0;
-            this.cursorCol = -1;
-
-        } // <3 Jim
     }
 
     /**
@@ -192,6 +223,7 @@ public class MagnetsConfig implements Configuration, IMagnetTest {
     private MagnetsConfig(MagnetsConfig other, char val) {
        this.amountOfRows = other.amountOfRows;
        this.amountOfCols = other.amountOfCols;
+       this.puzzle = other.puzzle;
        this.cursorRow = other.cursorRow;
        this.cursorCol = other.cursorCol;
        this.grid = other.grid;
@@ -200,12 +232,16 @@ public class MagnetsConfig implements Configuration, IMagnetTest {
        this.negRow = other.negRow;
        this.negCol = other.negCol;
 
-       this.cursorCol++;
-       if (this.cursorCol == amountOfCols)
-       {
-           this.cursorRow += 1;
-           this.cursorCol = 0;
-       }
+       this.rowPosCount = other.rowPosCount;
+       this.rowNegCount = other.rowNegCount;
+       this.colPosCount = other.colPosCount.clone();
+       this.colNegCount = other.colNegCount.clone();
+       this.symmetric = other.symmetric;
+       this.firstMagnet = other.firstMagnet;
+       this.ordering = other.ordering;
+       this.presolved = other.presolved;
+
+       advanceCursor();
        this.board = new char[amountOfRows][amountOfCols];
        for (int row = 0; row < amountOfRows; row++)
            System.arraycopy(other.board[row], 0, this.board[row], 0, amountOfCols);
@@ -222,104 +258,498 @@ public class MagnetsConfig implements Configuration, IMagnetTest {
        {
            this.board[cursorRow][cursorCol] = BLANK;
        }
+       count(val, 1);
     }
 
 
+    /**
+     * Move the cursor forward to the next cell in row-major order.
+     */
+    private void advanceCursor() {
+        this.cursorCol++;
+        if (this.cursorCol == amountOfCols)
+        {
+            this.cursorRow += 1;
+            this.cursorCol = 0;
+        }
+        if (this.cursorCol == 0)
+        {
+            this.rowPosCount = 0;
+            this.rowNegCount = 0;
+        }
+    }
+
+    /**
+     * Move the cursor back to the previous cell in row-major order.  The
+     * cell before (0, 0) is the initial cursor location (0, -1).
+     */
+    private void retreatCursor() {
+        this.cursorCol--;
+        if (this.cursorCol < 0 && this.cursorRow > 0)
+        {
+            this.cursorRow -= 1;
+            this.cursorCol = amountOfCols - 1;
+            // back on a full row, so its counts are needed again
+            for (int col = 0; col < amountOfCols; col++)
+            {
+                if (board[cursorRow][col] == POS)
+                    this.rowPosCount++;
+                if (board[cursorRow][col] == NEG)
+                    this.rowNegCount++;
+            }
+        }
+    }
+
+    /**
+     * Add a value at the cursor to, or take it away from, the running
+     * row and column counts, and keep track of the first magnet.
+     *
+     * @param val the value at the cursor
+     * @param amount 1 when the value is placed, -1 when it is removed
+     */
+    private void count(char val, int amount) {
+        int cell = cursorRow * amountOfCols + cursorCol;
+        if (amount > 0 && firstMagnet < 0 && (val == POS || val == NEG))
+            this.firstMagnet = cell;
+        else if (amount < 0 && firstMagnet == cell)
+            this.firstMagnet = -1;
+        if (val == POS)
+        {
+            this.rowPosCount += amount;
+            this.colPosCount[cursorCol] += amount;
+        }
+        else if (val == NEG)
+        {
+            this.rowNegCount += amount;
+            this.colNegCount[cursorCol] += amount;
+        }
+    }
+
     /**
      * Generate the successor configs.  For minimal pruning, this should be
-     * done in the order: +, - and X.
+     * done in the order: +, - and X, unless the value ordering says
+     * otherwise.
      *
      * @return the collection of successors
      */
     @Override
     public List<Configuration> getSuccessors() {
         List<Configuration> successors = new ArrayList<>();
-        MagnetsConfig child = new MagnetsConfig(this, '+');
-        MagnetsConfig child2 = new MagnetsConfig(this, '-');
-        MagnetsConfig child3 = new MagnetsConfig(this, 'X');
-        successors.add(child);
-        successors.add(child2);
-        successors.add(child3);
+        for (char val : valuesAt(getNextRow(), getNextCol()))
+            successors.add(new MagnetsConfig(this, val));
         return successors;
     }
 
 
+    /**
+     * Generate the successor configs lazily, in the order +, - and X, or
+     * the order of the value ordering.  Each value is checked against the
+     * board before its successor is built, so values that break a pair,
+     * polarity or count rule never cost a board copy.
+     *
+     * @return an iterator over the valid successors
+     */
+    @Override
+    public Iterator<Configuration> successorIterator() {
+        return successorIterator(null);
+    }
+
+    /**
+     * Generate the successor configs lazily like successorIterator(), but
+     * build the successor of every value that is skipped and hand it to a
+     * callback, so its prune reason can be recorded.
+     *
+     * @param skipped told about each invalid successor, or null to skip
+     *  them without building them
+     * @return an iterator over the valid successors
+     */
+    @Override
+    public Iterator<Configuration> successorIterator(Consumer<Configuration> skipped) {
+        final int row = getNextRow();
+        final int col = getNextCol();
+        final char[] values = valuesAt(row, col);
+        return new Iterator<Configuration>() {
+            /** index into values of the next value to check */
+            private int next = 0;
+
+            /**
+             * Skip the values, starting at next, that cannot be placed at
+             * the next cell, telling the callback about each of them.
+             *
+             * @return true if a valid value is left
+             */
+            @Override
+            public boolean hasNext() {
+                while (next < values.length && !isValid(row, col, values[next]))
+                {
+                    if (skipped != null)
+                        skipped.accept(new MagnetsConfig(MagnetsConfig.this, values[next]));
+                    next++;
+                }
+                return next < values.length;
+            }
+
+            @Override
+            public Configuration next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return new MagnetsConfig(MagnetsConfig.this, values[next++]);
+            }
+        };
+    }
+
+    /**
+     * Get the row of the cell after the cursor.
+     *
+     * @return the row
+     */
+    private int getNextRow() {
+        return cursorCol + 1 == amountOfCols ? cursorRow + 1 : cursorRow;
+    }
+
+    /**
+     * Get the column of the cell after the cursor.
+     *
+     * @return the column
+     */
+    private int getNextCol() {
+        return cursorCol + 1 == amountOfCols ? 0 : cursorCol + 1;
+    }
+
+    /**
+     * Get the values to try at the next cell, in the order of the value
+     * ordering.  A SLACK ordering ranks the orientations of the whole
+     * pair the cell starts; the second cell of a pair can only take one
+     * value, so it keeps the FIXED order.
+     *
+     * @param row the row of the next cell
+     * @param col the column of the next cell
+     * @return the values; the array must not be changed
+     */
+    private char[] valuesAt(int row, int col) {
+        if (ordering == ValueOrdering.FIXED || grid[row][col] == RIGHT || grid[row][col] == BOTTOM)
+            return VALUES;
+        return rank(row, col, new double[VALUES.length], new int[VALUES.length], new char[VALUES.length]);
+    }
+
+    /**
+     * Get the values applyMove() tries at the next cell, like valuesAt(),
+     * without allocating anything once the search is under way.  The
+     * ranking is kept per cell, so the moves of a node are ranked once,
+     * when its first move is applied, and the ranking is still there
+     * when the search backs up to the node to apply its next move; it
+     * only goes stale once a move is applied to the cell before.
+     *
+     * @param row the row of the next cell
+     * @param col the column of the next cell
+     * @return the values; the array must not be changed
+     */
+    private char[] movesAt(int row, int col) {
+        if (ordering == ValueOrdering.FIXED || grid[row][col] == RIGHT || grid[row][col] == BOTTOM)
+            return VALUES;
+        if (moveValues == null)
+        {
+            this.moveValues = new char[amountOfRows * amountOfCols][VALUES.length];
+            this.moveFit = new double[VALUES.length];
+            this.moveOrder = new int[VALUES.length];
+            this.moveRanked = new boolean[amountOfRows * amountOfCols];
+        }
+        int cell = row * amountOfCols + col;
+        if (!moveRanked[cell])
+        {
+            rank(row, col, moveFit, moveOrder, moveValues[cell]);
+            this.moveRanked[cell] = true;
+        }
+        return moveValues[cell];
+    }
+
+    /**
+     * Rank the values of the next cell by the SLACK ordering, which ranks
+     * the orientations of the whole pair the cell starts.
+     *
+     * @param row the row of the next cell
+     * @param col the column of the next cell
+     * @param fit scratch for the fit of each value
+     * @param order scratch for the order of the values
+     * @param values where to put the values, best first
+     * @return values
+     */
+    private char[] rank(int row, int col, double[] fit, int[] order, char[] values) {
+        for (int move = 0; move < VALUES.length; move++)
+        {
+            fit[move] = fit(row, col, move);
+            if (grid[row][col] == LEFT)
+                fit[move] += fit(row, col + 1, ValueOrdering.opposite(move));
+            else if (grid[row][col] == TOP)
+                fit[move] += fit(row + 1, col, ValueOrdering.opposite(move));
+        }
+        ValueOrdering.order(fit, order);
+        for (int i = 0; i < values.length; i++)
+            values[i] = VALUES[order[i]];
+        return values;
+    }
+
+    /**
+     * Get how well a value fits the row and column of an empty cell at or
+     * after the next cell.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @param move the index into VALUES of the value
+     * @return the fit of its row plus the fit of its column
+     */
+    private double fit(int row, int col, int move) {
+        boolean started = row == cursorRow && cursorCol >= 0;
+        return ValueOrdering.fit(posRow[row], negRow[row], started ? rowPosCount : 0, started ? rowNegCount : 0,
+                                  amountOfCols - col, move)
+                + ValueOrdering.fit(posCol[col], negCol[col], colPosCount[col], colNegCount[col],
+                                     amountOfRows - row, move);
+    }
+
+    // MutableConfiguration
+
+    /**
+     * Every cell can take one of three values: +, - and X.
+     *
+     * @return the number of moves from this config
+     */
+    @Override
+    public int getMoveCount() {
+        return VALUES.length;
+    }
+
+    /**
+     * Advance the cursor and store the move-th value (+, - or X, or the
+     * order of the value ordering) there, without copying the board.
+     *
+     * @param move the index of the value to place
+     */
+    @Override
+    public void applyMove(int move) {
+        char val = movesAt(getNextRow(), getNextCol())[move];
+        advanceCursor();
+        this.board[cursorRow][cursorCol] = val;
+        count(val, 1);
+        int next = cursorRow * amountOfCols + cursorCol + 1;
+        if (moveRanked != null && next < moveRanked.length)
+            this.moveRanked[next] = false;  // ranked for a different value in this cell
+    }
+
+    /**
+     * Clear the cell at the cursor and move the cursor back.  The cells
+     * before it are as they were when its values were ranked, so the
+     * ranking is kept for the next move at it.
+     */
+    @Override
+    public void undoMove() {
+        count(this.board[cursorRow][cursorCol], -1);
+        this.board[cursorRow][cursorCol] = EMPTY;
+        retreatCursor();
+    }
+
     /**
      * Checks to make sure a successor is valid or not.  For minimal pruning,
      * each newly placed cell at the cursor needs to make sure its pair
-     * is valid, and there is no polarity violation.  When the last cell is
-     * populated, all row/col pos/negative counts are checked.
+     * is valid, and there is no polarity violation.  The running pos/neg
+     * counts of its row and column are then checked against the puzzle.
      *
      * @return whether this config is valid or not
      */
     @Override
     public boolean isValid() {
-        int posCount = 0;
-        int negCount = 0;
-        if (grid[cursorRow][cursorCol] == RIGHT) {
-            if (board[cursorRow][cursorCol] == POS && board[cursorRow][cursorCol - 1] != NEG)
+        char val = board[cursorRow][cursorCol];
+        return isPlacementValid(cursorRow, cursorCol, val)
+                && areCountsValid(cursorRow, cursorCol, rowPosCount, rowNegCount,
+                                  colPosCount[cursorCol], colNegCount[cursorCol])
+                && isSymmetryValid(val, firstMagnet == cursorRow * amountOfCols + cursorCol)
+                && isPresolveValid(cursorRow, cursorCol, val);
+    }
+
+    /**
+     * Checks whether placing val at the next cell (row, col) would be
+     * valid, given the rest of the board, so it can be asked before a
+     * successor is built for it.
+     *
+     * @param row the row of the next cell
+     * @param col the column of the next cell
+     * @param val the value placed in the cell
+     * @return whether the cell can hold val
+     */
+    private boolean isValid(int row, int col, char val) {
+        int pos = val == POS ? 1 : 0;
+        int neg = val == NEG ? 1 : 0;
+        int rowPos = (row == cursorRow ? rowPosCount : 0) + pos;
+        int rowNeg = (row == cursorRow ? rowNegCount : 0) + neg;
+        return isPlacementValid(row, col, val)
+                && areCountsValid(row, col, rowPos, rowNeg, colPosCount[col] + pos, colNegCount[col] + neg)
+                && isSymmetryValid(val, firstMagnet < 0)
+                && isPresolveValid(row, col, val);
+    }
+
+    /**
+     * Checks that the presolve left val to the cell (row, col).
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @param val the value placed in the cell
+     * @return whether the cell can hold val
+     */
+    private boolean isPresolveValid(int row, int col, char val) {
+        return presolved == null || presolved.isAllowed(row, col, val);
+    }
+
+    /**
+     * Checks that a value does not start the mirror image half of the
+     * search: in a symmetric puzzle, the first magnet must be +.
+     *
+     * @param val the value placed in a cell
+     * @param first is the cell the first magnet on the board?
+     * @return whether the cell can hold val
+     */
+    private boolean isSymmetryValid(char val, boolean first) {
+        return !symmetric || !first || val != NEG;
+    }
+
+    /**
+     * Checks that val at (row, col) agrees with its pair and does not
+     * sit next to a cell of the same polarity.  The cell itself is not read.
+     *
+     * @param row the row of the cell being populated
+     * @param col the column of the cell being populated
+     * @param val the value placed in the cell
+     * @return whether the cell can hold val
+     */
+    private boolean isPlacementValid(int row, int col, char val) {
+        if (grid[row][col] == RIGHT) {
+            if (val == POS && board[row][col - 1] != NEG)
             {
                 return false; //if NEG is not next to POS in the pair
             }
-            else if (board[cursorRow][cursorCol] == NEG && board[cursorRow][cursorCol - 1] != POS)
+            else if (val == NEG && board[row][col - 1] != POS)
             {
                 return false; //if POS is not next to NEG in the pair
             }
-            else if (board[cursorRow][cursorCol] == BLANK && board[cursorRow][cursorCol - 1] != BLANK)
+            else if (val == BLANK && board[row][col - 1] != BLANK)
             {
                 return false; //if BLANK is not next to BLANK in the pair
             }
         }
-        if (grid[cursorRow][cursorCol] == BOTTOM) {
-            if (board[cursorRow][cursorCol] == POS && board[cursorRow - 1][cursorCol] != NEG)
+        if (grid[row][col] == BOTTOM) {
+            if (val == POS && board[row - 1][col] != NEG)
             {
                 return false; //if NEG is not on top of POS in the pair
             }
-            else if (board[cursorRow][cursorCol] == NEG && board[cursorRow - 1][cursorCol] != POS)
+            else if (val == NEG && board[row - 1][col] != POS)
             {
                 return false; //if POS is not on top of NEG in the pair
             }
-            else if (board[cursorRow][cursorCol] == BLANK && board[cursorRow - 1][cursorCol] != BLANK)
+            else if (val == BLANK && board[row - 1][col] != BLANK)
             {
                 return false; //if BLANK is not on top of BLANK in the pair
             }
         }
-        if (cursorRow > 0 && cursorCol > 0)
+        if (val == POS && ((row > 0 && board[row - 1][col] == POS) || (col > 0 && board[row][col - 1] == POS)))
+            return false; //if POS is next to a POS
+        if (val == NEG && ((row > 0 && board[row - 1][col] == NEG) || (col > 0 && board[row][col - 1] == NEG)))
+            return false; //if NEG is next to a NEG
+        return true;
+    }
+
+    /**
+     * Checks the running counts of the row and column of (row, col), once
+     * that cell has been populated.  Cells after (row, col) in its row and
+     * below it in its column are still empty, so the counts must not be
+     * over the puzzle's counts and must still be able to reach them.
+     *
+     * @param row the row of the newly populated cell
+     * @param col the column of the newly populated cell
+     * @param rowPos the number of + cells in the row so far
+     * @param rowNeg the number of - cells in the row so far
+     * @param colPos the number of + cells in the column so far
+     * @param colNeg the number of - cells in the column so far
+     * @return whether the counts can still be met
+     */
+    private boolean areCountsValid(int row, int col, int rowPos, int rowNeg, int colPos, int colNeg) {
+        int rowLeft = amountOfCols - 1 - col;
+        int colLeft = amountOfRows - 1 - row;
+        return isCountValid(posRow[row], negRow[row], rowPos, rowNeg, rowLeft)
+                && isCountValid(posCol[col], negCol[col], colPos, colNeg, colLeft);
+    }
+
+    /**
+     * Can a row or column still end up with its expected pos/neg counts?
+     *
+     * @param posExpected the + count from the puzzle, or IGNORED
+     * @param negExpected the - count from the puzzle, or IGNORED
+     * @param posCount the number of + cells so far
+     * @param negCount the number of - cells so far
+     * @param left the number of cells still empty in the line
+     * @return true if the expected counts can still be met
+     */
+    static boolean isCountValid(int posExpected, int negExpected, int posCount, int negCount, int left) {
+        int posNeeded = posExpected == IGNORED ? 0 : posExpected - posCount;
+        int negNeeded = negExpected == IGNORED ? 0 : negExpected - negCount;
+        return posNeeded >= 0 && negNeeded >= 0 && posNeeded + negNeeded <= left;
+    }
+
+    // MemoizableConfiguration
+
+    /**
+     * Get the frontier of the search at a row boundary: the cursor row
+     * and whether a magnet has been placed (which decides if the symmetry
+     * still has to be broken), and for every column the value in the
+     * cursor row with the running pos/neg counts.  A count the puzzle
+     * ignores is left out, so boards that only differ in it share a key.
+     *
+     * @return the frontier, or null when the cursor is not at the end of
+     *  a row, or the board is full
+     */
+    @Override
+    public Object getMemoKey() {
+        if (cursorCol != amountOfCols - 1 || isGoal())
+            return null;
+        int[] state = new int[amountOfCols + 1];
+        state[0] = cursorRow << 1 | (firstMagnet < 0 ? 0 : 1);
+        for (int col = 0; col < amountOfCols; col++)
         {
-            if (board[cursorRow][cursorCol] == POS && (board[cursorRow - 1][cursorCol] == POS || board[cursorRow][cursorCol - 1] == POS))
-                return false; //if POS is next to a POS
-            else if (board[cursorRow][cursorCol] == NEG && (board[cursorRow - 1][cursorCol] == NEG || board[cursorRow][cursorCol - 1] == NEG))
-                return false; //if NEG is next to a NEG
+            char val = board[cursorRow][col];
+            int code = val == POS ? 1 : val == NEG ? 2 : 3;
+            int pos = posCol[col] == IGNORED ? 0 : colPosCount[col];
+            int neg = negCol[col] == IGNORED ? 0 : colNegCount[col];
+            state[col + 1] = code | pos << 2 | neg << 17;
         }
-        //check to see if there are valid number of POS and NEG in each row
-        if (cursorCol == amountOfCols - 1)
-        {
-            for (int col = 0; col < amountOfCols; col++)
-            {
-                if (board[cursorRow][col] == POS)
-                    posCount++;
-                if (board[cursorRow][col] == NEG)
-                    negCount++;
-            }
-            if ((posRow[cursorRow] != -1 && posRow[cursorRow] != posCount) || (negRow[cursorRow] != -1 && negRow[cursorRow] != negCount))
-                return false;
+        return new Frontier(state);
+    }
+
+    /**
+     * The memo key of a config at a row boundary, packed into one int per
+     * column: 2 bits for the value, then 15 bits each for the + and - counts.
+     */
+    private static final class Frontier {
+        /** the cursor row and magnet flag, then the packed columns */
+        private final int[] state;
+        /** the hash of state, computed once */
+        private final int hash;
+
+        /**
+         * Create a key.
+         *
+         * @param state the cursor row and magnet flag, then the packed columns
+         */
+        Frontier(int[] state) {
+            this.state = state;
+            this.hash = Arrays.hashCode(state);
         }
-        //check to see if there are valid number of POS and NEG in each column
-        if (cursorRow == amountOfRows - 1)
-        {
-            posCount = 0;
-            negCount = 0;
-            for (int row = 0; row < amountOfRows; row++)
-            {
-                if (board[row][cursorCol] == POS)
-                    posCount++;
-                if (board[row][cursorCol] == NEG)
-                    negCount++;
-            }
-            if ((posCol[cursorCol] != -1 && posCol[cursorCol] != posCount) || (negCol[cursorCol] != -1 && negCol[cursorCol] != negCount))
-                return false;
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Frontier && Arrays.equals(state, ((Frontier) other).state);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
-        return true;
     }
 
     /**
@@ -332,6 +762,15 @@ public class MagnetsConfig implements Configuration, IMagnetTest {
         return this.cursorRow == amountOfRows - 1 && this.cursorCol == amountOfCols - 1;
     }
 
+    /**
+     * Get the static puzzle definition this config is a solution attempt for.
+     *
+     * @return the puzzle
+     */
+    public MagnetsPuzzle getPuzzle() {
+        return this.puzzle;
+    }
+
     /**
      * Returns a string representation of the puzzle including all necessary info.
      *
@@ -339,19 +778,30 @@ public class MagnetsConfig implements Configuration, IMagnetTest {
      */
     @Override
     public String toString() {
+        return render(this);
+    }
+
+    /**
+     * Build the string representation of any magnets board: the counts
+     * around the edges and the current value of every cell.
+     *
+     * @param config the board to display
+     * @return the string
+     */
+    static String render(IMagnetTest config) {
         StringBuilder result = new StringBuilder();
         // top row
         result.append("+ ");
-        for (int col = 0; col < getCols(); ++col) {
-            result.append(getPosColCount(col) != IGNORED ? getPosColCount(col) : " ");
-            if (col < getCols() - 1) {
+        for (int col = 0; col < config.getCols(); ++col) {
+            result.append(config.getPosColCount(col) != IGNORED ? config.getPosColCount(col) : " ");
+            if (col < config.getCols() - 1) {
                 result.append(" ");
             }
         }
         result.append(System.lineSeparator());
         result.append("  ");
-        for (int col = 0; col < getCols(); ++col) {
-            if (col != getCols() - 1) {
+        for (int col = 0; col < config.getCols(); ++col) {
+            if (col != config.getCols() - 1) {
                 result.append("--");
             } else {
                 result.append("-");
@@ -360,22 +810,22 @@ public class MagnetsConfig implements Configuration, IMagnetTest {
         result.append(System.lineSeparator());
 
         // middle rows
-        for (int row = 0; row < getRows(); ++row) {
-            result.append(getPosRowCount(row) != IGNORED ? getPosRowCount(row) : " ").append("|");
-            for (int col = 0; col < getCols(); ++col) {
-                result.append(getVal(row, col));
-                if (col < getCols() - 1) {
+        for (int row = 0; row < config.getRows(); ++row) {
+            result.append(config.getPosRowCount(row) != IGNORED ? config.getPosRowCount(row) : " ").append("|");
+            for (int col = 0; col < config.getCols(); ++col) {
+                result.append(config.getVal(row, col));
+                if (col < config.getCols() - 1) {
                     result.append(" ");
                 }
             }
-            result.append("|").append(getNegRowCount(row) != IGNORED ? getNegRowCount(row) : " ");
+            result.append("|").append(config.getNegRowCount(row) != IGNORED ? config.getNegRowCount(row) : " ");
             result.append(System.lineSeparator());
         }
 
         // bottom row
         result.append("  ");
-        for (int col = 0; col < getCols(); ++col) {
-            if (col != getCols() - 1) {
+        for (int col = 0; col < config.getCols(); ++col) {
+            if (col != config.getCols() - 1) {
                 result.append("--");
             } else {
                 result.append("-");
@@ -384,13 +834,99 @@ public class MagnetsConfig implements Configuration, IMagnetTest {
         result.append(System.lineSeparator());
 
         result.append("  ");
-        for (int col = 0; col < getCols(); ++col) {
-            result.append(getNegColCount(col) != IGNORED ? getNegColCount(col) : " ").append(" ");
+        for (int col = 0; col < config.getCols(); ++col) {
+            result.append(config.getNegColCount(col) != IGNORED ? config.getNegColCount(col) : " ").append(" ");
         }
         result.append(" -").append(System.lineSeparator());
         return result.toString();
     }
 
+    // ExplainableConfiguration
+
+    /**
+     * Find the rule the cell at the cursor breaks, checking them in the
+     * order isValid() does: its pair, its polarity, the counts of its row
+     * and of its column, the symmetry, then the presolve.
+     *
+     * @return PAIR, POLARITY, ROW_COUNT, COLUMN_COUNT, SYMMETRY, PRESOLVE, or null
+     *  if the config is valid
+     */
+    @Override
+    public String getPruneReason() {
+        char val = board[cursorRow][cursorCol];
+        char partner = EMPTY;
+        if (grid[cursorRow][cursorCol] == RIGHT)
+            partner = board[cursorRow][cursorCol - 1];
+        else if (grid[cursorRow][cursorCol] == BOTTOM)
+            partner = board[cursorRow - 1][cursorCol];
+        if (partner != EMPTY && partner != (val == POS ? NEG : val == NEG ? POS : BLANK))
+            return PAIR;
+        if (!isPlacementValid(cursorRow, cursorCol, val))
+            return POLARITY;  // the pair matches, so only polarity is left
+        if (!isCountValid(posRow[cursorRow], negRow[cursorRow], rowPosCount, rowNegCount, amountOfCols - 1 - cursorCol))
+            return ROW_COUNT;
+        if (!isCountValid(posCol[cursorCol], negCol[cursorCol], colPosCount[cursorCol], colNegCount[cursorCol],
+                          amountOfRows - 1 - cursorRow))
+            return COLUMN_COUNT;
+        if (!isSymmetryValid(val, firstMagnet == cursorRow * amountOfCols + cursorCol))
+            return SYMMETRY;
+        if (!isPresolveValid(cursorRow, cursorCol, val))
+            return PRESOLVE;
+        return null;
+    }
+
+    // SymmetricConfiguration
+
+    /**
+     * The symmetry is broken when the puzzle is symmetric, since the first
+     * magnet is never -.
+     *
+     * @return true if the puzzle's counts stay the same with + and - swapped
+     */
+    @Override
+    public boolean isSymmetryBroken() {
+        return symmetric;
+    }
+
+    /**
+     * Swap + and - on the whole board.
+     *
+     * @return the swapped board, or null if there are no magnets to swap
+     */
+    @Override
+    public Configuration getMirror() {
+        if (firstMagnet < 0)
+            return null;
+        char[][] values = new char[amountOfRows][amountOfCols];
+        for (int row = 0; row < amountOfRows; row++)
+            for (int col = 0; col < amountOfCols; col++)
+                values[row][col] = board[row][col] == POS ? NEG : board[row][col] == NEG ? POS : board[row][col];
+        return new MagnetsConfig(puzzle, values);
+    }
+
+    // TraceableConfiguration
+
+    /**
+     * The position of the most recent move is the cell at the cursor,
+     * as row * cols + col.
+     *
+     * @return the cell, or -1 before the first move
+     */
+    @Override
+    public int getTracePosition() {
+        return getCursorCol() < 0 ? -1 : getCursorRow() * getCols() + getCursorCol();
+    }
+
+    /**
+     * The value of the most recent move is the character at the cursor.
+     *
+     * @return the value, or 0 before the first move
+     */
+    @Override
+    public int getTraceValue() {
+        return getCursorCol() < 0 ? 0 : getVal(getCursorRow(), getCursorCol());
+    }
+
     // IMagnetTest
 
     @Override
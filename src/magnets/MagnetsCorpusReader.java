@@ -0,0 +1,360 @@
+package magnets;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the puzzles of a corpus file one at a time.  A corpus is either
+ * text or binary, and the reader tells them apart by the binary magic
+ * number at the start of the file.
+ *
+ * The text format is the one of a single puzzle file, repeated: the rows
+ * and columns, the four lines of counts, and the grid of pairs, with any
+ * whitespace between tokens and between puzzles.  A single puzzle file is
+ * therefore a corpus of one.
+ *
+ * The binary format starts with the magic "MAGC" and a version byte.
+ * Each puzzle is then the rows and columns, then every count plus one
+ * (so IGNORED is 0), all as unsigned LEB128 varints, then the pairs at
+ * 2 bits per cell in row-major order, 4 cells to a byte starting at the
+ * low bits, with L=0, R=1, T=2 and B=3.
+ *
+ * Both formats are parsed straight from a byte buffer, without regular
+ * expressions or a String per line or token.  The buffer is either a
+ * heap buffer refilled from the file, or a memory-mapped window of it
+ * that is moved along as it is used up.
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsCorpusReader implements Closeable {
+    /** the magic number at the start of a binary corpus */
+    final static byte[] MAGIC = {'M', 'A', 'G', 'C'};
+    /** the version of the binary format */
+    final static int VERSION = 1;
+    /** the pair values in the order of their 2 bit codes */
+    final static char[] PAIRS = {MagnetsPuzzle.LEFT, MagnetsPuzzle.RIGHT, MagnetsPuzzle.TOP, MagnetsPuzzle.BOTTOM};
+    /** the size of the heap buffer */
+    private final static int BUFFER_SIZE = 1 << 16;
+    /** the most bytes mapped at once */
+    private final static long MAP_WINDOW = 1L << 30;
+    /** the corpus file */
+    private final FileChannel channel;
+    /** is the buffer a memory-mapped window of the file? */
+    private final boolean mapped;
+    /** the bytes being parsed */
+    private ByteBuffer buffer;
+    /** the position in the file just after the buffer */
+    private long position;
+    /** is the corpus binary? */
+    private final boolean binary;
+    /** the line of a text corpus being parsed, for error messages */
+    private int line;
+
+    /**
+     * Open a corpus file.
+     *
+     * @param file the corpus file
+     * @param mmap map the file into memory instead of reading it into a
+     *  heap buffer
+     * @throws IOException if the file cannot be opened, or is a binary
+     *  corpus of another version
+     */
+    public MagnetsCorpusReader(Path file, boolean mmap) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.mapped = mmap;
+        this.line = 1;
+        try {
+            this.buffer = ByteBuffer.allocate(mapped ? 0 : BUFFER_SIZE);
+            buffer.flip();
+            refill();
+            this.binary = startsWithMagic();
+            if (binary)
+            {
+                buffer.position(buffer.position() + MAGIC.length);
+                int version = next();
+                if (version != VERSION)
+                    throw new IOException("Unsupported corpus version " + version + " in " + file);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Does the buffer start with the binary magic number and a version?
+     * The first refill always holds at least that much of a file that
+     * long.
+     *
+     * @return true if the corpus is binary
+     */
+    private boolean startsWithMagic() {
+        if (buffer.remaining() <= MAGIC.length)
+            return false;
+        for (int i = 0; i < MAGIC.length; i++)
+            if (buffer.get(buffer.position() + i) != MAGIC[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Replace the used up buffer with the next part of the file.
+     *
+     * @return false if the whole file has been read
+     * @throws IOException if the file cannot be read
+     */
+    private boolean refill() throws IOException {
+        long size = channel.size();
+        if (position >= size)
+            return false;
+        if (mapped)
+        {
+            long length = Math.min(MAP_WINDOW, size - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+        }
+        else
+        {
+            buffer.clear();
+            while (buffer.hasRemaining())
+            {
+                int read = channel.read(buffer, position);
+                if (read < 0)
+                    break;
+                position += read;
+            }
+            buffer.flip();
+        }
+        return buffer.hasRemaining();
+    }
+
+    /**
+     * Get the next byte of the file.
+     *
+     * @return the byte, from 0 to 255, or -1 at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private int next() throws IOException {
+        if (!buffer.hasRemaining() && !refill())
+            return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Is a byte whitespace in a text corpus?  Newlines are counted on the
+     * way.
+     *
+     * @param c the byte
+     * @return true for a space, tab, carriage return or newline
+     */
+    private boolean isSpace(int c) {
+        if (c == '\n')
+            line++;
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * Skip whitespace in a text corpus.
+     *
+     * @return the first byte that is not whitespace, or -1 at the end
+     * @throws IOException if the file cannot be read
+     */
+    private int skipSpace() throws IOException {
+        int c = next();
+        while (isSpace(c))
+            c = next();
+        return c;
+    }
+
+    /**
+     * Make sure a token of a text corpus ends at whitespace or the end of
+     * the file, consuming that byte.
+     *
+     * @throws IOException if the token goes on, or the file cannot be read
+     */
+    private void endToken() throws IOException {
+        int c = next();
+        if (c >= 0 && !isSpace(c))
+            throw new IOException("Unexpected '" + (char) c + "' on line " + line);
+    }
+
+    /**
+     * Parse an integer of a text corpus, given its first byte.
+     *
+     * @param c the first byte, a digit or a minus sign
+     * @return the integer
+     * @throws IOException if it is not an integer, or the file cannot be read
+     */
+    private int parseInt(int c) throws IOException {
+        if (c < 0)
+            throw new EOFException("Unexpected end of corpus on line " + line);
+        boolean negative = c == '-';
+        if (negative)
+            c = next();
+        if (c < '0' || c > '9')
+            throw new IOException("Expected a number on line " + line);
+        int value = 0;
+        while (c >= '0' && c <= '9')
+        {
+            value = value * 10 + (c - '0');
+            c = next();
+        }
+        if (c >= 0 && !isSpace(c))
+            throw new IOException("Unexpected '" + (char) c + "' on line " + line);
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parse a line of counts of a text corpus.
+     *
+     * @param amount the number of counts
+     * @return the counts
+     * @throws IOException if a count is not an integer, or the file
+     *  cannot be read
+     */
+    private int[] parseCounts(int amount) throws IOException {
+        int[] counts = new int[amount];
+        for (int i = 0; i < amount; i++)
+            counts[i] = parseInt(skipSpace());
+        return counts;
+    }
+
+    /**
+     * Read an unsigned LEB128 varint of a binary corpus.
+     *
+     * @return the value
+     * @throws IOException if the corpus ends, or the file cannot be read
+     */
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = next();
+            if (b < 0)
+                throw new EOFException("Unexpected end of corpus");
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Varint too long");
+    }
+
+    /**
+     * Read a line of counts of a binary corpus.
+     *
+     * @param amount the number of counts
+     * @return the counts
+     * @throws IOException if the corpus ends, or the file cannot be read
+     */
+    private int[] readCounts(int amount) throws IOException {
+        int[] counts = new int[amount];
+        for (int i = 0; i < amount; i++)
+            counts[i] = readVarint() - 1;
+        return counts;
+    }
+
+    /**
+     * Read the next puzzle.
+     *
+     * @return the puzzle, or null at the end of the corpus
+     * @throws IOException if the corpus is malformed, or the file cannot
+     *  be read
+     */
+    public MagnetsPuzzle read() throws IOException {
+        int rows;
+        int cols;
+        int[] posRow, posCol, negRow, negCol;
+        char[][] grid;
+        if (binary)
+        {
+            if (!buffer.hasRemaining() && !refill())
+                return null;
+            rows = readVarint();
+            cols = readVarint();
+            checkSize(rows, cols);
+            posRow = readCounts(rows);
+            posCol = readCounts(cols);
+            negRow = readCounts(rows);
+            negCol = readCounts(cols);
+            grid = new char[rows][cols];
+            int b = 0;
+            for (int cell = 0; cell < rows * cols; cell++)
+            {
+                if ((cell & 3) == 0)
+                {
+                    b = next();
+                    if (b < 0)
+                        throw new EOFException("Unexpected end of corpus");
+                }
+                grid[cell / cols][cell % cols] = PAIRS[(b >>> ((cell & 3) << 1)) & 3];
+            }
+        }
+        else
+        {
+            int c = skipSpace();
+            if (c < 0)
+                return null;
+            rows = parseInt(c);
+            cols = parseInt(skipSpace());
+            checkSize(rows, cols);
+            posRow = parseCounts(rows);
+            posCol = parseCounts(cols);
+            negRow = parseCounts(rows);
+            negCol = parseCounts(cols);
+            grid = new char[rows][cols];
+            for (int row = 0; row < rows; row++)
+                for (int col = 0; col < cols; col++)
+                {
+                    c = skipSpace();
+                    if (c != MagnetsPuzzle.LEFT && c != MagnetsPuzzle.RIGHT
+                            && c != MagnetsPuzzle.TOP && c != MagnetsPuzzle.BOTTOM)
+                        throw new IOException("Expected L, R, T or B on line " + line);
+                    grid[row][col] = (char) c;
+                    endToken();
+                }
+        }
+        try {
+            return new MagnetsPuzzle(posRow, posCol, negRow, negCol, grid);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Make sure the size of a puzzle makes sense before anything is
+     * allocated for it.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @throws IOException if either is negative, or there are more cells
+     *  than an array can hold
+     */
+    private void checkSize(int rows, int cols) throws IOException {
+        if (rows < 0 || cols < 0 || (long) rows * cols > Integer.MAX_VALUE)
+            throw new IOException("Bad puzzle size " + rows + "x" + cols + (binary ? "" : " on line " + line));
+    }
+
+    /**
+     * Is the corpus binary?
+     *
+     * @return true if it is binary, false if it is text
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Close the corpus file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
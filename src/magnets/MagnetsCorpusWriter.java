@@ -0,0 +1,164 @@
+package magnets;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes puzzles to a corpus file, in the text or binary format that
+ * MagnetsCorpusReader reads.  Text puzzles are laid out like a single
+ * puzzle file, with a blank line after each one.  It can also be run to
+ * build a corpus from puzzle files:
+ *
+ *   java magnets.MagnetsCorpusWriter corpus [binary] puzzle...
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsCorpusWriter implements Closeable {
+    /** the corpus file */
+    private final OutputStream out;
+    /** is the corpus binary? */
+    private final boolean binary;
+
+    /**
+     * Create a corpus file, replacing any file that is already there.
+     *
+     * @param file the corpus file
+     * @param binary write the binary format instead of text
+     * @throws IOException if the file cannot be written
+     */
+    public MagnetsCorpusWriter(Path file, boolean binary) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(file));
+        this.binary = binary;
+        if (binary)
+        {
+            out.write(MagnetsCorpusReader.MAGIC);
+            out.write(MagnetsCorpusReader.VERSION);
+        }
+    }
+
+    /**
+     * Add a puzzle to the corpus.
+     *
+     * @param puzzle the puzzle
+     * @throws IOException if the file cannot be written
+     */
+    public void write(MagnetsPuzzle puzzle) throws IOException {
+        int rows = puzzle.getRows();
+        int cols = puzzle.getCols();
+        if (binary)
+        {
+            writeVarint(rows);
+            writeVarint(cols);
+            for (int row = 0; row < rows; row++)
+                writeVarint(puzzle.getPosRowCount(row) + 1);
+            for (int col = 0; col < cols; col++)
+                writeVarint(puzzle.getPosColCount(col) + 1);
+            for (int row = 0; row < rows; row++)
+                writeVarint(puzzle.getNegRowCount(row) + 1);
+            for (int col = 0; col < cols; col++)
+                writeVarint(puzzle.getNegColCount(col) + 1);
+            int b = 0;
+            for (int cell = 0; cell < rows * cols; cell++)
+            {
+                b |= code(puzzle.getPair(cell / cols, cell % cols)) << ((cell & 3) << 1);
+                if ((cell & 3) == 3 || cell == rows * cols - 1)
+                {
+                    out.write(b);
+                    b = 0;
+                }
+            }
+        }
+        else
+        {
+            StringBuilder text = new StringBuilder();
+            text.append(rows).append(' ').append(cols).append('\n');
+            for (int row = 0; row < rows; row++)
+                text.append(row == 0 ? "" : " ").append(puzzle.getPosRowCount(row));
+            text.append('\n');
+            for (int col = 0; col < cols; col++)
+                text.append(col == 0 ? "" : " ").append(puzzle.getPosColCount(col));
+            text.append('\n');
+            for (int row = 0; row < rows; row++)
+                text.append(row == 0 ? "" : " ").append(puzzle.getNegRowCount(row));
+            text.append('\n');
+            for (int col = 0; col < cols; col++)
+                text.append(col == 0 ? "" : " ").append(puzzle.getNegColCount(col));
+            text.append('\n');
+            for (int row = 0; row < rows; row++)
+            {
+                for (int col = 0; col < cols; col++)
+                    text.append(col == 0 ? "" : " ").append(puzzle.getPair(row, col));
+                text.append('\n');
+            }
+            text.append('\n');
+            for (int i = 0; i < text.length(); i++)
+                out.write(text.charAt(i));
+        }
+    }
+
+    /**
+     * Get the 2 bit code of a pair value.
+     *
+     * @param pair L, R, T or B
+     * @return its code
+     */
+    private static int code(char pair) {
+        for (int code = 0; code < MagnetsCorpusReader.PAIRS.length; code++)
+            if (MagnetsCorpusReader.PAIRS[code] == pair)
+                return code;
+        throw new IllegalArgumentException("Not a pair: " + pair);
+    }
+
+    /**
+     * Write an unsigned LEB128 varint.
+     *
+     * @param value the value, at least 0
+     * @throws IOException if the file cannot be written
+     */
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Finish the corpus and close its file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Build a corpus from puzzle files.
+     *
+     * @param args the corpus file, optionally "binary", then the puzzle files
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java magnets.MagnetsCorpusWriter corpus [binary] puzzle...");
+            return;
+        }
+        boolean binary = args[1].equals("binary");
+        int count = 0;
+        try (MagnetsCorpusWriter writer = new MagnetsCorpusWriter(Paths.get(args[0]), binary)) {
+            for (int i = binary ? 2 : 1; i < args.length; i++) {
+                writer.write(MagnetsPuzzle.read(args[i]));
+                count++;
+            }
+            System.out.println(count + " puzzles written to " + args[0]);
+        } catch (IOException ioe) {
+            System.out.println(ioe.getMessage());
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package magnets;
+
+import backtracking.Configuration;
+import backtracking.SymmetricConfiguration;
+import backtracking.TraceableConfiguration;
+import test.IMagnetTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A magnet configuration that branches on whole dominoes instead of single
+ * cells.  Each step assigns one magnet from the pairs grid as +/-, -/+ or
+ * blank, visiting the dominoes in row-major order of their first cell.
+ * The second cell of a pair is never branched on, since its partner
+ * already decides it, so the search is half as deep as MagnetsConfig.
+ *
+ * Pruning in isValid():
+ * - Polarity checked around every cell of the new domino
+ * - Running pos/neg and empty counts of every row and column are kept, and
+ *   the lines of the new domino are checked as MagnetsConfig checks them:
+ *   a count may not be exceeded, and the + and - cells still needed must
+ *   fit in the empty cells left
+ * - In a puzzle whose counts stay the same with + and - swapped, the first
+ *   magnet must be +/-, since its -/+ mirror image has the same solutions
+ *   with + and - swapped
+ * - Given a MagnetsPresolver, every cell of the new domino must hold a
+ *   value the presolve left to it
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsDominoConfig implements TraceableConfiguration, SymmetricConfiguration, IMagnetTest {
+    /** a cell that has not been assigned a value yet */
+    private final static char EMPTY = '.';
+    /** a blank cell */
+    private final static char BLANK = 'X';
+    /** a positive cell */
+    private final static char POS = '+';
+    /** a negative cell */
+    private final static char NEG = '-';
+    /** the value of the first cell of a domino, in successor order */
+    private final static char[] FIRST = {POS, NEG, BLANK};
+    /** the value of a flipped cell of a domino, in successor order */
+    private final static char[] FLIPPED = {NEG, POS, BLANK};
+    /** the static puzzle definition shared by every config */
+    private final MagnetsPuzzle puzzle;
+    private final int amountOfRows;
+    private final int amountOfCols;
+    /** the most recently assigned domino, -1 before the first */
+    private final int domino;
+    private final char[][] board;
+    /** does the search only try +/- for the first magnet, as the puzzle is symmetric? */
+    private final boolean symmetric;
+    /** the first domino that is not blank, or -1 */
+    private final int firstMagnet;
+    /** the order the orientations of a domino are tried in */
+    private final ValueOrdering ordering;
+    /** number of + cells placed so far in each row */
+    private final int[] rowPosCount;
+    /** number of - cells placed so far in each row */
+    private final int[] rowNegCount;
+    /** number of cells still empty in each row */
+    private final int[] rowEmptyCount;
+    /** number of + cells placed so far in each column */
+    private final int[] colPosCount;
+    /** number of - cells placed so far in each column */
+    private final int[] colNegCount;
+    /** number of cells still empty in each column */
+    private final int[] colEmptyCount;
+    /** the values the presolve left to each cell, or null if there was none */
+    private final MagnetsPresolver presolved;
+
+    /**
+     * Create the initial config for a puzzle, with all cells empty.
+     * Orientations are tried in the order +/-, -/+ and blank.
+     *
+     * @param puzzle the puzzle to solve
+     */
+    public MagnetsDominoConfig(MagnetsPuzzle puzzle) {
+        this(puzzle, ValueOrdering.FIXED);
+    }
+
+    /**
+     * Create the initial config for a puzzle, with all cells empty.
+     *
+     * @param puzzle the puzzle to solve
+     * @param ordering the order the orientations of a domino are tried in
+     */
+    public MagnetsDominoConfig(MagnetsPuzzle puzzle, ValueOrdering ordering) {
+        this(puzzle, ordering, null);
+    }
+
+    /**
+     * Create the initial config for a puzzle that has been presolved, with
+     * all cells empty.
+     *
+     * @param puzzle the puzzle to solve
+     * @param ordering the order the orientations of a domino are tried in
+     * @param presolved the presolve of the puzzle, or null to search
+     *  without one
+     */
+    public MagnetsDominoConfig(MagnetsPuzzle puzzle, ValueOrdering ordering, MagnetsPresolver presolved) {
+        this.puzzle = puzzle;
+        this.ordering = ordering;
+        this.presolved = presolved;
+        this.amountOfRows = puzzle.getRows();
+        this.amountOfCols = puzzle.getCols();
+        this.domino = -1;
+        this.symmetric = puzzle.isPolaritySymmetric();
+        this.firstMagnet = -1;
+        this.board = new char[amountOfRows][amountOfCols];
+        for (int row = 0; row < amountOfRows; row++)
+            for (int col = 0; col < amountOfCols; col++)
+                board[row][col] = EMPTY;
+        this.rowPosCount = new int[amountOfRows];
+        this.rowNegCount = new int[amountOfRows];
+        this.rowEmptyCount = new int[amountOfRows];
+        Arrays.fill(rowEmptyCount, amountOfCols);
+        this.colPosCount = new int[amountOfCols];
+        this.colNegCount = new int[amountOfCols];
+        this.colEmptyCount = new int[amountOfCols];
+        Arrays.fill(colEmptyCount, amountOfRows);
+    }
+
+    /**
+     * The copy constructor which moves on to the next domino, copies the
+     * board, and places the magnet in the given orientation.
+     *
+     * @param other the config to copy
+     * @param move the index into FIRST/FLIPPED of the values to place
+     */
+    private MagnetsDominoConfig(MagnetsDominoConfig other, int move) {
+        this.puzzle = other.puzzle;
+        this.amountOfRows = other.amountOfRows;
+        this.amountOfCols = other.amountOfCols;
+        this.domino = other.domino + 1;
+        this.symmetric = other.symmetric;
+        this.ordering = other.ordering;
+        this.presolved = other.presolved;
+        this.firstMagnet = other.firstMagnet < 0 && FIRST[move] != BLANK ? domino : other.firstMagnet;
+        this.board = new char[amountOfRows][amountOfCols];
+        for (int row = 0; row < amountOfRows; row++)
+            System.arraycopy(other.board[row], 0, this.board[row], 0, amountOfCols);
+        this.rowPosCount = other.rowPosCount.clone();
+        this.rowNegCount = other.rowNegCount.clone();
+        this.rowEmptyCount = other.rowEmptyCount.clone();
+        this.colPosCount = other.colPosCount.clone();
+        this.colNegCount = other.colNegCount.clone();
+        this.colEmptyCount = other.colEmptyCount.clone();
+
+        for (int cell : puzzle.getDominoCells(domino))
+        {
+            int row = cell / amountOfCols;
+            int col = cell % amountOfCols;
+            char val = puzzle.isFlipped(row, col) ? FLIPPED[move] : FIRST[move];
+            board[row][col] = val;
+            rowEmptyCount[row]--;
+            colEmptyCount[col]--;
+            if (val == POS)
+            {
+                rowPosCount[row]++;
+                colPosCount[col]++;
+            }
+            else if (val == NEG)
+            {
+                rowNegCount[row]++;
+                colNegCount[col]++;
+            }
+        }
+    }
+
+    /**
+     * Generate the successor configs for the next domino, in the order
+     * +/-, -/+ and blank, or the order of the value ordering.
+     *
+     * @return the collection of successors
+     */
+    @Override
+    public List<Configuration> getSuccessors() {
+        List<Configuration> successors = new ArrayList<>();
+        for (int move : orderMoves(domino + 1))
+            successors.add(new MagnetsDominoConfig(this, move));
+        return successors;
+    }
+
+    /**
+     * Order the orientations of a domino by how well they fit the rows
+     * and columns of its cells.
+     *
+     * @param next the domino
+     * @return the indices into FIRST/FLIPPED, in the order to try them
+     */
+    private int[] orderMoves(int next) {
+        if (ordering == ValueOrdering.FIXED)
+            return ValueOrdering.fixedOrder();
+        double[] fit = new double[FIRST.length];
+        for (int cell : puzzle.getDominoCells(next))
+        {
+            int row = cell / amountOfCols;
+            int col = cell % amountOfCols;
+            for (int move = 0; move < FIRST.length; move++)
+            {
+                int value = puzzle.isFlipped(row, col) ? ValueOrdering.opposite(move) : move;
+                fit[move] += rowFit(row, value) + colFit(col, value);
+            }
+        }
+        return ValueOrdering.order(fit);
+    }
+
+    /**
+     * Get how well a value fits an empty cell of a row.
+     *
+     * @param row the row
+     * @param value the index into FIRST of the value
+     * @return the fit, as for ValueOrdering.SLACK
+     */
+    private double rowFit(int row, int value) {
+        return ValueOrdering.fit(puzzle.getPosRowCount(row), puzzle.getNegRowCount(row), rowPosCount[row],
+                                  rowNegCount[row], rowEmptyCount[row], value);
+    }
+
+    /**
+     * Get how well a value fits an empty cell of a column.
+     *
+     * @param col the column
+     * @param value the index into FIRST of the value
+     * @return the fit, as for ValueOrdering.SLACK
+     */
+    private double colFit(int col, int value) {
+        return ValueOrdering.fit(puzzle.getPosColCount(col), puzzle.getNegColCount(col), colPosCount[col],
+                                  colNegCount[col], colEmptyCount[col], value);
+    }
+
+    /**
+     * Checks the most recently placed domino against the symmetry, the
+     * presolve, its neighbours, and the counts of every row and column it
+     * lies in.
+     *
+     * @return whether this config is valid or not
+     */
+    @Override
+    public boolean isValid() {
+        if (domino < 0)
+            return true;
+        if (symmetric && firstMagnet == domino && getVal(getCursorRow(), getCursorCol()) == NEG)
+            return false;
+        for (int cell : puzzle.getDominoCells(domino))
+        {
+            int row = cell / amountOfCols;
+            int col = cell % amountOfCols;
+            if (presolved != null && !presolved.isAllowed(row, col, board[row][col]))
+                return false;
+            if (!isPolarityValid(row, col) || !isRowValid(row) || !isColValid(col))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Make sure a cell does not touch another cell of the same polarity.
+     * Neighbours from the same domino always hold opposite values, so they
+     * never need to be told apart.
+     *
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @return false if a neighbour has the same polarity
+     */
+    private boolean isPolarityValid(int row, int col) {
+        char val = board[row][col];
+        if (val == BLANK)
+            return true;
+        if (row > 0 && board[row - 1][col] == val)
+            return false;
+        if (row < amountOfRows - 1 && board[row + 1][col] == val)
+            return false;
+        if (col > 0 && board[row][col - 1] == val)
+            return false;
+        return col >= amountOfCols - 1 || board[row][col + 1] != val;
+    }
+
+    /**
+     * Check the pos/neg counts of a row.
+     *
+     * @param row the row
+     * @return false if a count is exceeded or can no longer be met
+     */
+    private boolean isRowValid(int row) {
+        return MagnetsConfig.isCountValid(puzzle.getPosRowCount(row), puzzle.getNegRowCount(row),
+                                          rowPosCount[row], rowNegCount[row], rowEmptyCount[row]);
+    }
+
+    /**
+     * Check the pos/neg counts of a column.
+     *
+     * @param col the column
+     * @return false if a count is exceeded or can no longer be met
+     */
+    private boolean isColValid(int col) {
+        return MagnetsConfig.isCountValid(puzzle.getPosColCount(col), puzzle.getNegColCount(col),
+                                          colPosCount[col], colNegCount[col], colEmptyCount[col]);
+    }
+
+    /**
+     * The goal is reached once the last domino has been placed.
+     *
+     * @return true if goal is reached, false otherwise
+     */
+    @Override
+    public boolean isGoal() {
+        return domino == puzzle.getDominoCount() - 1;
+    }
+
+    /**
+     * Returns a string representation of the puzzle including all necessary info.
+     *
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        return MagnetsConfig.render(this);
+    }
+
+    // SymmetricConfiguration
+
+    /**
+     * The symmetry is broken when the puzzle is symmetric, since the first
+     * magnet is never -/+.
+     *
+     * @return true if the puzzle's counts stay the same with + and - swapped
+     */
+    @Override
+    public boolean isSymmetryBroken() {
+        return symmetric;
+    }
+
+    /**
+     * Swap + and - on the whole board.
+     *
+     * @return the swapped board, or null if there are no magnets to swap
+     */
+    @Override
+    public Configuration getMirror() {
+        if (firstMagnet < 0)
+            return null;
+        MagnetsDominoConfig mirror = new MagnetsDominoConfig(puzzle);
+        for (int d = 0; d <= domino; d++)
+        {
+            int first = puzzle.getDominoCells(d)[0];
+            char val = board[first / amountOfCols][first % amountOfCols];
+            mirror = new MagnetsDominoConfig(mirror, val == POS ? 1 : val == NEG ? 0 : 2);
+        }
+        return mirror;
+    }
+
+    // TraceableConfiguration
+
+    /**
+     * The position of the most recent move is the cell at the cursor,
+     * as row * cols + col.
+     *
+     * @return the cell, or -1 before the first move
+     */
+    @Override
+    public int getTracePosition() {
+        return getCursorCol() < 0 ? -1 : getCursorRow() * getCols() + getCursorCol();
+    }
+
+    /**
+     * The value of the most recent move is the character it put in the first
+     * cell of its domino.
+     *
+     * @return the value, or 0 before the first move
+     */
+    @Override
+    public int getTraceValue() {
+        return getCursorCol() < 0 ? 0 : getVal(getCursorRow(), getCursorCol());
+    }
+
+    // IMagnetTest
+
+    @Override
+    public int getRows() {
+        return this.amountOfRows;
+    }
+
+    @Override
+    public int getCols() {
+        return this.amountOfCols;
+    }
+
+    @Override
+    public int getPosRowCount(int row) {
+        return puzzle.getPosRowCount(row);
+    }
+
+    @Override
+    public int getPosColCount(int col) {
+        return puzzle.getPosColCount(col);
+    }
+
+    @Override
+    public int getNegRowCount(int row) {
+        return puzzle.getNegRowCount(row);
+    }
+
+    @Override
+    public int getNegColCount(int col) {
+        return puzzle.getNegColCount(col);
+    }
+
+    @Override
+    public char getPair(int row, int col) {
+        return puzzle.getPair(row, col);
+    }
+
+    @Override
+    public char getVal(int row, int col) {
+        return this.board[row][col];
+    }
+
+    /**
+     * The cursor is the first cell of the most recently placed domino.
+     *
+     * @return cursor row
+     */
+    @Override
+    public int getCursorRow() {
+        return domino < 0 ? 0 : puzzle.getDominoRow(domino);
+    }
+
+    /**
+     * The cursor is the first cell of the most recently placed domino.
+     *
+     * @return cursor column, -1 before the first domino
+     */
+    @Override
+    public int getCursorCol() {
+        return domino < 0 ? -1 : puzzle.getDominoCol(domino);
+    }
+}
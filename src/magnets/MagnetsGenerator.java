@@ -0,0 +1,303 @@
+package magnets;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random puzzles that are known to have a solution.  A puzzle
+ * is built in three steps:
+ * - a random domino tiling: the board starts out tiled with L/R (or T/B)
+ *   dominoes, and random 2x2 blocks of two parallel dominoes are turned a
+ *   quarter turn, which mixes the two orientations across the board
+ * - a random solution: each domino in turn is made blank, or given a
+ *   random polarity that none of its assigned neighbours already has
+ * - the counts of every row and column of that solution, each of which is
+ *   hidden (-1) with a given chance
+ * Everything is drawn from one seeded Random, so a seed always produces
+ * the same puzzles.  Building a puzzle is linear in its cells, so boards
+ * of 1000x1000 are no problem.
+ *
+ * A puzzle can also be made to have exactly one solution.  The SAT engine
+ * looks for a solution other than the intended one; while there is one,
+ * a hidden count that tells the two apart is revealed, and if every count
+ * is already shown the puzzle is thrown away for a new one.  This needs a
+ * SAT search per step, so it is meant for boards up to a few hundred
+ * cells.  Run it as:
+ *
+ *   java magnets.MagnetsGenerator output rows cols [count] [hidden] [seed] [unique]
+ *
+ * One puzzle is written in the puzzle file format, and more than one as a
+ * text corpus, or a binary corpus if the output ends in .magc.
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsGenerator {
+    /** the chance that a domino of the solution is blank */
+    private final static double BLANK_CHANCE = 1.0 / 3;
+    /** the most boards thrown away while making one puzzle unique */
+    private final static int MAX_ATTEMPTS = 1000;
+    /** the source of every random choice */
+    private final Random random;
+
+    /**
+     * Create a generator.
+     *
+     * @param seed the seed of its random choices
+     */
+    public MagnetsGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generate a puzzle.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @param hidden the chance that each count is hidden, from 0 to 1
+     * @param unique make sure the puzzle has only one solution
+     * @return the puzzle
+     * @throws IllegalArgumentException if the board has an odd number of
+     *  cells, or hidden is not a chance
+     * @throws IllegalStateException if no unique puzzle was found
+     */
+    public MagnetsPuzzle generate(int rows, int cols, double hidden, boolean unique) {
+        if (rows <= 0 || cols <= 0 || (rows * cols) % 2 != 0)
+            throw new IllegalArgumentException("A " + rows + "x" + cols + " board cannot be tiled with dominoes");
+        if (hidden < 0 || hidden > 1)
+            throw new IllegalArgumentException("Not a chance: " + hidden);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++)
+        {
+            char[][] grid = tile(rows, cols);
+            char[][] solution = assign(grid);
+            int[][] counts = count(solution);
+            for (int[] line : counts)
+                for (int i = 0; i < line.length; i++)
+                    if (random.nextDouble() < hidden)
+                        line[i] = -line[i] - 1;  // hidden, but kept for revealing
+            MagnetsPuzzle puzzle = unique ? makeUnique(grid, solution, counts) : puzzle(grid, counts);
+            if (puzzle != null)
+                return puzzle;
+        }
+        throw new IllegalStateException("No unique " + rows + "x" + cols + " puzzle in " + MAX_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * Build a random domino tiling.
+     *
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return the L/R/T/B grid
+     */
+    private char[][] tile(int rows, int cols) {
+        char[][] grid = new char[rows][cols];
+        for (int row = 0; row < rows; row++)
+            for (int col = 0; col < cols; col++)
+                if (cols % 2 == 0)
+                    grid[row][col] = col % 2 == 0 ? MagnetsPuzzle.LEFT : MagnetsPuzzle.RIGHT;
+                else
+                    grid[row][col] = row % 2 == 0 ? MagnetsPuzzle.TOP : MagnetsPuzzle.BOTTOM;
+        if (rows < 2 || cols < 2)
+            return grid;
+        for (int flip = 0; flip < rows * cols; flip++)
+        {
+            int row = random.nextInt(rows - 1);
+            int col = random.nextInt(cols - 1);
+            if (grid[row][col] == MagnetsPuzzle.LEFT && grid[row + 1][col] == MagnetsPuzzle.LEFT)
+            {
+                grid[row][col] = grid[row][col + 1] = MagnetsPuzzle.TOP;
+                grid[row + 1][col] = grid[row + 1][col + 1] = MagnetsPuzzle.BOTTOM;
+            }
+            else if (grid[row][col] == MagnetsPuzzle.TOP && grid[row][col + 1] == MagnetsPuzzle.TOP)
+            {
+                grid[row][col] = grid[row + 1][col] = MagnetsPuzzle.LEFT;
+                grid[row][col + 1] = grid[row + 1][col + 1] = MagnetsPuzzle.RIGHT;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Give every domino of a tiling a random value that its neighbours
+     * allow.  Blank is always allowed, so this never gets stuck.
+     *
+     * @param grid the tiling
+     * @return the board of +, - and X
+     */
+    private char[][] assign(char[][] grid) {
+        int rows = grid.length;
+        int cols = grid[0].length;
+        char[][] board = new char[rows][cols];
+        for (int row = 0; row < rows; row++)
+            for (int col = 0; col < cols; col++)
+            {
+                char pair = grid[row][col];
+                if (pair != MagnetsPuzzle.LEFT && pair != MagnetsPuzzle.TOP)
+                    continue;
+                int otherRow = pair == MagnetsPuzzle.TOP ? row + 1 : row;
+                int otherCol = pair == MagnetsPuzzle.LEFT ? col + 1 : col;
+                char first = 'X';
+                if (random.nextDouble() >= BLANK_CHANCE)
+                {
+                    // try a random polarity first, then the other one
+                    first = random.nextBoolean() ? '+' : '-';
+                    if (!fits(board, row, col, first) || !fits(board, otherRow, otherCol, opposite(first)))
+                        first = opposite(first);
+                    if (!fits(board, row, col, first) || !fits(board, otherRow, otherCol, opposite(first)))
+                        first = 'X';
+                }
+                board[row][col] = first;
+                board[otherRow][otherCol] = opposite(first);
+            }
+        return board;
+    }
+
+    /**
+     * Get the value the other cell of a pair holds.
+     *
+     * @param val +, - or X
+     * @return -, + or X
+     */
+    private static char opposite(char val) {
+        return val == '+' ? '-' : val == '-' ? '+' : 'X';
+    }
+
+    /**
+     * Can a cell hold a polarity, given the values assigned so far?
+     *
+     * @param board the values so far, 0 where there is none yet
+     * @param row the row of the cell
+     * @param col the column of the cell
+     * @param val + or -
+     * @return true if no neighbour already holds val
+     */
+    private static boolean fits(char[][] board, int row, int col, char val) {
+        return (row == 0 || board[row - 1][col] != val)
+                && (row == board.length - 1 || board[row + 1][col] != val)
+                && (col == 0 || board[row][col - 1] != val)
+                && (col == board[row].length - 1 || board[row][col + 1] != val);
+    }
+
+    /**
+     * Count the + and - cells of every row and column of a board.
+     *
+     * @param board the board
+     * @return the pos row, pos col, neg row and neg col counts
+     */
+    private static int[][] count(char[][] board) {
+        int rows = board.length;
+        int cols = board[0].length;
+        int[][] counts = {new int[rows], new int[cols], new int[rows], new int[cols]};
+        for (int row = 0; row < rows; row++)
+            for (int col = 0; col < cols; col++)
+                if (board[row][col] == '+')
+                {
+                    counts[0][row]++;
+                    counts[1][col]++;
+                }
+                else if (board[row][col] == '-')
+                {
+                    counts[2][row]++;
+                    counts[3][col]++;
+                }
+        return counts;
+    }
+
+    /**
+     * Build the puzzle of a tiling and its counts.
+     *
+     * @param grid the tiling
+     * @param counts the counts, with a hidden count c stored as -c - 1
+     * @return the puzzle, with hidden counts IGNORED
+     */
+    private static MagnetsPuzzle puzzle(char[][] grid, int[][] counts) {
+        int[][] shown = new int[4][];
+        for (int i = 0; i < 4; i++)
+        {
+            shown[i] = counts[i].clone();
+            for (int j = 0; j < shown[i].length; j++)
+                if (shown[i][j] < 0)
+                    shown[i][j] = MagnetsPuzzle.IGNORED;
+        }
+        return new MagnetsPuzzle(shown[0], shown[1], shown[2], shown[3], grid);
+    }
+
+    /**
+     * Reveal hidden counts until the intended solution is the only one.
+     *
+     * @param grid the tiling
+     * @param solution the intended solution
+     * @param counts the counts, with a hidden count c stored as -c - 1,
+     *  which are revealed in place
+     * @return the unique puzzle, or null if showing every count is not
+     *  enough
+     */
+    private MagnetsPuzzle makeUnique(char[][] grid, char[][] solution, int[][] counts) {
+        while (true)
+        {
+            MagnetsPuzzle puzzle = puzzle(grid, counts);
+            MagnetsSatEncoder encoder = new MagnetsSatEncoder(puzzle);
+            if (!encoder.exclude(solution))
+                return puzzle;
+            MagnetsConfig other = (MagnetsConfig) encoder.solve().orElse(null);
+            if (other == null)
+                return puzzle;
+            // the hidden counts the other solution gets wrong
+            int[][] otherCounts = count(toBoard(other));
+            List<int[]> wrong = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+                for (int j = 0; j < counts[i].length; j++)
+                    if (counts[i][j] < 0 && -counts[i][j] - 1 != otherCounts[i][j])
+                        wrong.add(new int[] {i, j});
+            if (wrong.isEmpty())
+                return null;
+            int[] reveal = wrong.get(random.nextInt(wrong.size()));
+            counts[reveal[0]][reveal[1]] = -counts[reveal[0]][reveal[1]] - 1;
+        }
+    }
+
+    /**
+     * Get the values of a full configuration.
+     *
+     * @param config the configuration
+     * @return its board of +, - and X
+     */
+    private static char[][] toBoard(MagnetsConfig config) {
+        char[][] board = new char[config.getRows()][config.getCols()];
+        for (int row = 0; row < board.length; row++)
+            for (int col = 0; col < board[row].length; col++)
+                board[row][col] = config.getVal(row, col);
+        return board;
+    }
+
+    /**
+     * Generate puzzles into a puzzle file or corpus.
+     *
+     * @param args the output file, the rows and columns, and optionally
+     *  the number of puzzles (1), the chance a count is hidden (0), the
+     *  seed (0) and "unique"
+     */
+    public static void main(String[] args) {
+        if (args.length < 3 || args.length > 7) {
+            System.out.println("Usage: java magnets.MagnetsGenerator output rows cols [count] [hidden] [seed] [unique]");
+            return;
+        }
+        int rows = Integer.parseInt(args[1]);
+        int cols = Integer.parseInt(args[2]);
+        int count = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        double hidden = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+        boolean unique = args.length > 6 && args[6].equals("unique");
+        MagnetsGenerator generator = new MagnetsGenerator(seed);
+        try (MagnetsCorpusWriter writer = new MagnetsCorpusWriter(Paths.get(args[0]), args[0].endsWith(".magc"))) {
+            for (int i = 0; i < count; i++) {
+                writer.write(generator.generate(rows, cols, hidden, unique));
+            }
+            System.out.println(count + (count == 1 ? " puzzle" : " puzzles") + " written to " + args[0]);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+}
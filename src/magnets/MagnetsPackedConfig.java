@@ -0,0 +1,510 @@
+package magnets;
+
+import backtracking.Configuration;
+import backtracking.SymmetricConfiguration;
+import backtracking.TraceableConfiguration;
+import test.IMagnetTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * A compact, immutable magnet configuration for searches that keep many
+ * configurations alive at once, such as work queues.  It searches cell by
+ * cell exactly like MagnetsConfig, trying +, - and X with the same
+ * pruning, so both find the same solutions with the same number of
+ * configurations.
+ *
+ * Every cell takes 2 bits of a long, 32 cells to a word.  The first two
+ * words are fields of the config itself, and any further ones go in a
+ * long[].  The cells are filled in row-major order, so every cell after
+ * the cursor is empty and the words past the cursor are not stored at
+ * all; a board of up to 64 cells never needs the array.  Everything that
+ * never changes (the puzzle, its dimensions and pairs) lives in one Spec
+ * shared by every config of a search, so a config is only a reference to
+ * the Spec, the words, the cursor and the first magnet.  Row and column
+ * counts are not kept but counted from the words when a cell is checked.
+ * The successor iterator checks each value before it builds its
+ * successor, as MagnetsConfig does, and marks the successors it hands
+ * out as checked, so their isValid() does not count the cells again.
+ *
+ * Nothing is changed after construction, so configs can be handed between
+ * threads freely.
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsPackedConfig implements TraceableConfiguration, SymmetricConfiguration, IMagnetTest {
+    /** the bits of a cell that has not been assigned a value yet */
+    private final static int EMPTY = 0;
+    /** the bits of a positive cell */
+    private final static int POS = 1;
+    /** the bits of a negative cell */
+    private final static int NEG = 2;
+    /** the bits of a blank cell */
+    private final static int BLANK = 3;
+    /** the character of each value, by its bits */
+    private final static char[] SYMBOLS = {'.', '+', '-', 'X'};
+    /** the values tried at each cell, in successor order */
+    private final static int[] VALUES = {POS, NEG, BLANK};
+    /** log2 of the cells in a word */
+    private final static int WORD_SHIFT = 5;
+    /** the cells in a word */
+    private final static int WORD_CELLS = 1 << WORD_SHIFT;
+    /** the words kept in fields instead of the array */
+    private final static int INLINE_WORDS = 2;
+    /** the low bit of every cell in a word */
+    private final static long LOW_BITS = 0x5555555555555555L;
+    /** the static puzzle definition shared by every config */
+    private final Spec spec;
+    /** cells 0 to 31, 2 bits each */
+    private final long first;
+    /** cells 32 to 63, 2 bits each */
+    private final long second;
+    /** the words after the first two, up to the cursor, or null if the cursor is not past them */
+    private final long[] rest;
+    /** the most recently assigned cell, as row * cols + col, or -1 */
+    private final int cursor;
+    /** the first + or - cell in row-major order, as row * cols + col, or -1 */
+    private final int firstMagnet;
+    /** was the cell at the cursor checked before this config was built? */
+    private final boolean checked;
+
+    /**
+     * What every config of a search shares: the puzzle and what is looked
+     * up about it for every cell.
+     */
+    private static final class Spec {
+        /** the puzzle */
+        private final MagnetsPuzzle puzzle;
+        private final int rows;
+        private final int cols;
+        /** the pair value of every cell, in row-major order */
+        private final char[] pairs;
+        /** does the search only try + for the first magnet, as the puzzle is symmetric? */
+        private final boolean symmetric;
+        /** the values the presolve left to each cell, or null if there was none */
+        private final MagnetsPresolver presolved;
+
+        /**
+         * Create the spec of a puzzle.
+         *
+         * @param puzzle the puzzle
+         * @param presolved the presolve of the puzzle, or null
+         */
+        private Spec(MagnetsPuzzle puzzle, MagnetsPresolver presolved) {
+            this.puzzle = puzzle;
+            this.presolved = presolved;
+            this.rows = puzzle.getRows();
+            this.cols = puzzle.getCols();
+            this.pairs = new char[rows * cols];
+            for (int row = 0; row < rows; row++)
+                for (int col = 0; col < cols; col++)
+                    pairs[row * cols + col] = puzzle.getPair(row, col);
+            this.symmetric = puzzle.isPolaritySymmetric();
+        }
+    }
+
+    /**
+     * Create the initial config for a puzzle, with all cells empty and the
+     * cursor before the first cell.
+     *
+     * @param puzzle the puzzle to solve
+     */
+    public MagnetsPackedConfig(MagnetsPuzzle puzzle) {
+        this(puzzle, null);
+    }
+
+    /**
+     * Create the initial config for a puzzle that has been presolved, with
+     * all cells empty and the cursor before the first cell.
+     *
+     * @param puzzle the puzzle to solve
+     * @param presolved the presolve of the puzzle, or null to search
+     *  without one
+     */
+    public MagnetsPackedConfig(MagnetsPuzzle puzzle, MagnetsPresolver presolved) {
+        this(new Spec(puzzle, presolved), 0, 0, null, -1, -1, false);
+    }
+
+    /**
+     * Create a config from its parts, which are used as is.
+     *
+     * @param spec the shared puzzle definition
+     * @param first the first word of cells
+     * @param second the second word of cells
+     * @param rest the words after them up to the cursor, or null
+     * @param cursor the most recently assigned cell, or -1
+     * @param firstMagnet the first + or - cell, or -1
+     * @param checked was the cell at the cursor already checked?
+     */
+    private MagnetsPackedConfig(Spec spec, long first, long second, long[] rest, int cursor, int firstMagnet,
+                                boolean checked) {
+        this.spec = spec;
+        this.first = first;
+        this.second = second;
+        this.rest = rest;
+        this.cursor = cursor;
+        this.firstMagnet = firstMagnet;
+        this.checked = checked;
+    }
+
+    /**
+     * Build the successor that stores a value in the cell after the cursor.
+     *
+     * @param val the bits of the value
+     * @param checked has the value already been checked?
+     * @return the successor
+     */
+    private MagnetsPackedConfig child(int val, boolean checked) {
+        int next = cursor + 1;
+        int index = next >>> WORD_SHIFT;
+        long bits = (long) val << shift(next);
+        int magnet = firstMagnet < 0 && (val == POS || val == NEG) ? next : firstMagnet;
+        if (index == 0)
+            return new MagnetsPackedConfig(spec, first | bits, second, null, next, magnet, checked);
+        if (index == 1)
+            return new MagnetsPackedConfig(spec, first, second | bits, null, next, magnet, checked);
+        long[] words = rest == null ? new long[1] : Arrays.copyOf(rest, index - INLINE_WORDS + 1);
+        words[index - INLINE_WORDS] |= bits;
+        return new MagnetsPackedConfig(spec, first, second, words, next, magnet, checked);
+    }
+
+    /**
+     * Get a word of cells.
+     *
+     * @param index the index of the word, at most cursor / 32
+     * @return the word
+     */
+    private long word(int index) {
+        return index == 0 ? first : index == 1 ? second : rest[index - INLINE_WORDS];
+    }
+
+    /**
+     * Get the position of a cell within its word.
+     *
+     * @param cell the cell
+     * @return the shift of its low bit
+     */
+    private static int shift(int cell) {
+        return (cell & (WORD_CELLS - 1)) << 1;
+    }
+
+    /**
+     * Get the value of a cell.
+     *
+     * @param cell the cell, as row * cols + col
+     * @return its bits: EMPTY, POS, NEG or BLANK
+     */
+    private int get(int cell) {
+        if (cell > cursor)
+            return EMPTY;
+        return (int) (word(cell >>> WORD_SHIFT) >>> shift(cell)) & 3;
+    }
+
+    /**
+     * Count the cells of a range that hold a magnet value.
+     *
+     * @param from the first cell
+     * @param to the cell after the last, at most cursor + 1
+     * @param val POS or NEG
+     * @return the number of cells in the range holding val
+     */
+    private int count(int from, int to, int val) {
+        int total = 0;
+        for (int word = from >>> WORD_SHIFT; from < to && word <= (to - 1) >>> WORD_SHIFT; word++)
+        {
+            long bits = word(word);
+            // a + cell has only its low bit set, a - cell only its high bit
+            long matches = val == POS ? bits & ~(bits >>> 1) & LOW_BITS : (bits >>> 1) & ~bits & LOW_BITS;
+            if (word == from >>> WORD_SHIFT)
+                matches &= -1L << shift(from);
+            if (word == (to - 1) >>> WORD_SHIFT && shift(to) != 0)
+                matches &= (1L << shift(to)) - 1;
+            total += Long.bitCount(matches);
+        }
+        return total;
+    }
+
+    /**
+     * Generate the successor configs, in the order +, - and X.
+     *
+     * @return the collection of successors
+     */
+    @Override
+    public List<Configuration> getSuccessors() {
+        List<Configuration> successors = new ArrayList<>(VALUES.length);
+        for (int val : VALUES)
+            successors.add(child(val, false));
+        return successors;
+    }
+
+    /**
+     * Generate the valid successor configs lazily, in the order +, - and
+     * X, as MagnetsConfig does.  Each value is checked before its
+     * successor is built, so the invalid ones are never built or counted.
+     *
+     * @return an iterator over the valid successors
+     */
+    @Override
+    public Iterator<Configuration> successorIterator() {
+        return successorIterator(null);
+    }
+
+    /**
+     * Generate the valid successor configs lazily like successorIterator(),
+     * but build the successor of every value that is skipped and hand it
+     * to a callback.
+     *
+     * @param skipped told about each invalid successor, or null to skip
+     *  them without building them
+     * @return an iterator over the valid successors
+     */
+    @Override
+    public Iterator<Configuration> successorIterator(Consumer<Configuration> skipped) {
+        return new Iterator<Configuration>() {
+            /** index into VALUES of the next value to try */
+            private int move = 0;
+            /** the next valid successor, or null if it has not been found yet */
+            private MagnetsPackedConfig next;
+
+            /**
+             * Find the next valid successor, telling the callback about
+             * the invalid ones on the way.
+             *
+             * @return true if there is one
+             */
+            @Override
+            public boolean hasNext() {
+                while (next == null && move < VALUES.length)
+                {
+                    int val = VALUES[move++];
+                    if (isValid(cursor + 1, val, firstMagnet < 0))
+                        next = child(val, true);
+                    else if (skipped != null)
+                        skipped.accept(child(val, false));
+                }
+                return next != null;
+            }
+
+            @Override
+            public Configuration next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                MagnetsPackedConfig child = next;
+                next = null;
+                return child;
+            }
+        };
+    }
+
+    /**
+     * Checks the cell at the cursor as MagnetsConfig does: against its
+     * pair, its neighbours above and to the left, the counts of its row
+     * and column, the symmetry, and the presolve.  A config handed out by
+     * the successor iterator was checked before it was built.
+     *
+     * @return whether this config is valid or not
+     */
+    @Override
+    public boolean isValid() {
+        if (checked || cursor < 0)
+            return true;
+        return isValid(cursor, get(cursor), firstMagnet == cursor);
+    }
+
+    /**
+     * Checks whether a cell can hold a value, given the cells before it,
+     * so it can be asked before a successor is built for it.  The cell
+     * itself is not read.
+     *
+     * @param cell the cell, at most cursor + 1
+     * @param val the bits of the value
+     * @param first would the cell be the first magnet on the board?
+     * @return whether the cell can hold val
+     */
+    private boolean isValid(int cell, int val, boolean first) {
+        int cols = spec.cols;
+        int row = cell / cols;
+        int col = cell % cols;
+        char pair = spec.pairs[cell];
+        int opposite = val == BLANK ? BLANK : POS + NEG - val;
+        if (pair == MagnetsPuzzle.RIGHT && get(cell - 1) != opposite)
+            return false;
+        if (pair == MagnetsPuzzle.BOTTOM && get(cell - cols) != opposite)
+            return false;
+        if (val != BLANK && ((row > 0 && get(cell - cols) == val) || (col > 0 && get(cell - 1) == val)))
+            return false;
+
+        int pos = val == POS ? 1 : 0;
+        int neg = val == NEG ? 1 : 0;
+        MagnetsPuzzle puzzle = spec.puzzle;
+        if (!MagnetsConfig.isCountValid(puzzle.getPosRowCount(row), puzzle.getNegRowCount(row),
+                                        count(row * cols, cell, POS) + pos, count(row * cols, cell, NEG) + neg,
+                                        cols - 1 - col))
+            return false;
+        int posCount = pos;
+        int negCount = neg;
+        for (int above = col; above < cell; above += cols)
+        {
+            int bits = get(above);
+            if (bits == POS)
+                posCount++;
+            else if (bits == NEG)
+                negCount++;
+        }
+        if (!MagnetsConfig.isCountValid(puzzle.getPosColCount(col), puzzle.getNegColCount(col), posCount, negCount,
+                                        spec.rows - 1 - row))
+            return false;
+        if (spec.symmetric && val == NEG && first)
+            return false;
+        return spec.presolved == null || spec.presolved.isAllowed(row, col, SYMBOLS[val]);
+    }
+
+    /**
+     * The goal is reached once the last cell has been assigned.
+     *
+     * @return true if goal is reached, false otherwise
+     */
+    @Override
+    public boolean isGoal() {
+        return cursor == spec.rows * spec.cols - 1;
+    }
+
+    /**
+     * Returns a string representation of the puzzle including all necessary info.
+     *
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        return MagnetsConfig.render(this);
+    }
+
+    // SymmetricConfiguration
+
+    /**
+     * The symmetry is broken when the puzzle is symmetric, since the first
+     * magnet is never -.
+     *
+     * @return true if the puzzle's counts stay the same with + and - swapped
+     */
+    @Override
+    public boolean isSymmetryBroken() {
+        return spec.symmetric;
+    }
+
+    /**
+     * Swap + and - on the whole board, by swapping the two bits of every
+     * cell; blank and empty cells have both or neither set.
+     *
+     * @return the swapped board, or null if there are no magnets to swap
+     */
+    @Override
+    public Configuration getMirror() {
+        if (firstMagnet < 0)
+            return null;
+        long[] words = rest == null ? null : new long[rest.length];
+        for (int word = 0; words != null && word < words.length; word++)
+            words[word] = swap(rest[word]);
+        return new MagnetsPackedConfig(spec, swap(first), swap(second), words, cursor, firstMagnet, false);
+    }
+
+    /**
+     * Swap + and - in a word, by swapping the two bits of every cell.
+     *
+     * @param word the word
+     * @return the word with + and - swapped
+     */
+    private static long swap(long word) {
+        return ((word & LOW_BITS) << 1) | ((word >>> 1) & LOW_BITS);
+    }
+
+    // TraceableConfiguration
+
+    /**
+     * The position of the most recent move is the cell at the cursor,
+     * as row * cols + col.
+     *
+     * @return the cell, or -1 before the first move
+     */
+    @Override
+    public int getTracePosition() {
+        return cursor;
+    }
+
+    /**
+     * The value of the most recent move is the character at the cursor.
+     *
+     * @return the value, or 0 before the first move
+     */
+    @Override
+    public int getTraceValue() {
+        return cursor < 0 ? 0 : SYMBOLS[get(cursor)];
+    }
+
+    // IMagnetTest
+
+    @Override
+    public int getRows() {
+        return spec.rows;
+    }
+
+    @Override
+    public int getCols() {
+        return spec.cols;
+    }
+
+    @Override
+    public int getPosRowCount(int row) {
+        return spec.puzzle.getPosRowCount(row);
+    }
+
+    @Override
+    public int getPosColCount(int col) {
+        return spec.puzzle.getPosColCount(col);
+    }
+
+    @Override
+    public int getNegRowCount(int row) {
+        return spec.puzzle.getNegRowCount(row);
+    }
+
+    @Override
+    public int getNegColCount(int col) {
+        return spec.puzzle.getNegColCount(col);
+    }
+
+    @Override
+    public char getPair(int row, int col) {
+        return spec.pairs[row * spec.cols + col];
+    }
+
+    @Override
+    public char getVal(int row, int col) {
+        return SYMBOLS[get(row * spec.cols + col)];
+    }
+
+    /**
+     * The cursor starts before the first cell, at (0, -1).
+     *
+     * @return cursor row
+     */
+    @Override
+    public int getCursorRow() {
+        return cursor < 0 ? 0 : cursor / spec.cols;
+    }
+
+    /**
+     * The cursor starts before the first cell, at (0, -1).
+     *
+     * @return cursor column
+     */
+    @Override
+    public int getCursorCol() {
+        return cursor < 0 ? -1 : cursor % spec.cols;
+    }
+}
@@ -0,0 +1,448 @@
+package magnets;
+
+import java.util.Arrays;
+
+/**
+ * Checks the counts of a puzzle with simple arithmetic before it is
+ * searched, in a few passes over the cells.  Many puzzles without a
+ * solution are caught here, and the values some cells must take are
+ * worked out for the search.
+ *
+ * A puzzle has no solution if a line (a row or a column):
+ * - needs more + and - cells than it has cells
+ * - needs more + (or -) cells than fit without two of them touching
+ * - needs more + (or -) cells than the dominoes reaching it can supply:
+ *   a domino lying along the line gives it at most one of each, and one
+ *   crossing it at most one cell of either
+ * - needs more + than - cells, or the other way around, than the
+ *   crossing dominoes can make up, since the dominoes lying along the
+ *   line give it as many + as - cells
+ * The + counts of the rows and of the columns add up to the same total
+ * when they are all known, and so do the - counts; in a grid of two cell
+ * dominoes every magnet has one of each, so the totals of + and - agree
+ * too.
+ *
+ * The cells of a line that needs no + cells cannot be +, and likewise
+ * for -, while a line that needs a + or - in every cell has no blanks,
+ * and a line whose + count fills every other cell has a + in every other
+ * cell.  What is left for each cell is then narrowed to what the other
+ * cells of its domino allow, and the lines are checked again against it.
+ *
+ * @author Jerry Chen
+ */
+public final class MagnetsPresolver {
+    /** a cell that can be + */
+    private final static int POS_BIT = 1;
+    /** a cell that can be - */
+    private final static int NEG_BIT = 2;
+    /** a cell that can be blank */
+    private final static int BLANK_BIT = 4;
+    /** every value a cell can take */
+    private final static int ALL = POS_BIT | NEG_BIT | BLANK_BIT;
+    /** the puzzle */
+    private final MagnetsPuzzle puzzle;
+    private final int amountOfRows;
+    private final int amountOfCols;
+    /** the values each cell can still take, as a mask */
+    private final byte[] allowed;
+    /** the index along the line being checked of each domino's first cell there, or -1 */
+    private final int[] firstInLine;
+    /** why the puzzle has no solution, or null if none was found */
+    private String reason;
+
+    /**
+     * Presolve a puzzle.
+     *
+     * @param puzzle the puzzle to check
+     */
+    public MagnetsPresolver(MagnetsPuzzle puzzle) {
+        this.puzzle = puzzle;
+        this.amountOfRows = puzzle.getRows();
+        this.amountOfCols = puzzle.getCols();
+        this.allowed = new byte[amountOfRows * amountOfCols];
+        Arrays.fill(allowed, (byte) ALL);
+        this.firstInLine = new int[puzzle.getDominoCount()];
+        Arrays.fill(firstInLine, -1);
+        this.reason = checkTotals();
+        for (int line = 0; reason == null && line < amountOfRows + amountOfCols; line++)
+            reason = checkSupply(line);
+        for (int line = 0; reason == null && line < amountOfRows + amountOfCols; line++)
+            restrictLine(line);
+        if (reason == null)
+            reason = restrictDominoes();
+        for (int line = 0; reason == null && line < amountOfRows + amountOfCols; line++)
+            reason = checkAllowed(line);
+    }
+
+    // the lines are the rows, then the columns
+
+    /**
+     * Get the number of cells in a line.
+     *
+     * @param line the line
+     * @return its length
+     */
+    private int length(int line) {
+        return line < amountOfRows ? amountOfCols : amountOfRows;
+    }
+
+    /**
+     * Get a cell of a line.
+     *
+     * @param line the line
+     * @param i the index of the cell along the line
+     * @return the cell, as row * cols + col
+     */
+    private int cell(int line, int i) {
+        return line < amountOfRows ? line * amountOfCols + i : i * amountOfCols + line - amountOfRows;
+    }
+
+    /**
+     * Get the + count of a line.
+     *
+     * @param line the line
+     * @return the count, or IGNORED
+     */
+    private int posCount(int line) {
+        return line < amountOfRows ? puzzle.getPosRowCount(line) : puzzle.getPosColCount(line - amountOfRows);
+    }
+
+    /**
+     * Get the - count of a line.
+     *
+     * @param line the line
+     * @return the count, or IGNORED
+     */
+    private int negCount(int line) {
+        return line < amountOfRows ? puzzle.getNegRowCount(line) : puzzle.getNegColCount(line - amountOfRows);
+    }
+
+    /**
+     * Name a line for a reason.
+     *
+     * @param line the line
+     * @return "row r" or "column c"
+     */
+    private String name(int line) {
+        return line < amountOfRows ? "row " + line : "column " + (line - amountOfRows);
+    }
+
+    /**
+     * Check that the row and column counts add up to the same totals.
+     *
+     * @return why they do not, or null
+     */
+    private String checkTotals() {
+        long posRows = total(0, amountOfRows, true);
+        long posCols = total(amountOfRows, amountOfRows + amountOfCols, true);
+        long negRows = total(0, amountOfRows, false);
+        long negCols = total(amountOfRows, amountOfRows + amountOfCols, false);
+        if (posRows >= 0 && posCols >= 0 && posRows != posCols)
+            return "the + counts of the rows add up to " + posRows + " and of the columns to " + posCols;
+        if (negRows >= 0 && negCols >= 0 && negRows != negCols)
+            return "the - counts of the rows add up to " + negRows + " and of the columns to " + negCols;
+        long pos = Math.max(posRows, posCols);
+        long neg = Math.max(negRows, negCols);
+        if (isBalanced() && pos >= 0 && neg >= 0 && pos != neg)
+            return "the puzzle needs " + pos + " + cells but " + neg + " - cells";
+        return null;
+    }
+
+    /**
+     * Add up a count of a range of lines.
+     *
+     * @param from the first line
+     * @param to the line after the last
+     * @param pos add up the + counts, rather than the - counts?
+     * @return the total, or -1 if a count is ignored
+     */
+    private long total(int from, int to, boolean pos) {
+        long total = 0;
+        for (int line = from; line < to; line++)
+        {
+            int count = pos ? posCount(line) : negCount(line);
+            if (count == MagnetsPuzzle.IGNORED)
+                return -1;
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Does every domino have as many cells flipped as not, so that a
+     * magnet always holds as many + as - cells?
+     *
+     * @return true if every domino is balanced
+     */
+    private boolean isBalanced() {
+        int[] balance = new int[puzzle.getDominoCount()];
+        for (int cell = 0; cell < allowed.length; cell++)
+            balance[puzzle.getDomino(cell)] += puzzle.isFlipped(cell) ? 1 : -1;
+        for (int b : balance)
+            if (b != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Check that the dominoes reaching a line can supply its counts.  The
+     * cells of a domino in the line hold one value if they are not flipped
+     * relative to each other and the opposite value if they are, so a
+     * domino can give the line at most the larger of its two groups of a
+     * polarity, and it shifts the difference of + and - cells by at most
+     * the difference of the groups.  Only the dominoes the line touches
+     * are looked at, so checking every line stays linear in the cells.
+     *
+     * @param line the line
+     * @return why it cannot, or null
+     */
+    private String checkSupply(int line) {
+        int pos = posCount(line);
+        int neg = negCount(line);
+        int length = length(line);
+        if (pos == MagnetsPuzzle.IGNORED && neg == MagnetsPuzzle.IGNORED)
+            return null;
+        if (pos != MagnetsPuzzle.IGNORED && neg != MagnetsPuzzle.IGNORED && pos + neg > length)
+            return name(line) + " needs " + (pos + neg) + " magnet cells but has " + length + " cells";
+        if (pos > (length + 1) / 2 || neg > (length + 1) / 2)
+            return name(line) + " needs more " + (pos > neg ? "+" : "-") + " cells than fit without touching";
+
+        // group the cells of the line by domino: the first cell of a
+        // domino in the line counts the cells like it, the rest add to it
+        int[] same = new int[length];
+        int[] opposite = new int[length];
+        for (int i = 0; i < length; i++)
+        {
+            int cell = cell(line, i);
+            int domino = puzzle.getDomino(cell);
+            if (firstInLine[domino] < 0)
+                firstInLine[domino] = i;
+            int head = firstInLine[domino];
+            if (puzzle.isFlipped(cell) == puzzle.isFlipped(cell(line, head)))
+                same[head]++;
+            else
+                opposite[head]++;
+        }
+        for (int i = 0; i < length; i++)
+            firstInLine[puzzle.getDomino(cell(line, i))] = -1;
+        int supply = 0;
+        int imbalance = 0;
+        for (int i = 0; i < length; i++)
+        {
+            supply += Math.max(same[i], opposite[i]);
+            imbalance += Math.abs(same[i] - opposite[i]);
+        }
+        if (pos > supply || neg > supply)
+            return name(line) + " needs " + Math.max(pos, neg) + " " + (pos > neg ? "+" : "-")
+                    + " cells but its dominoes can only supply " + supply;
+        if (pos != MagnetsPuzzle.IGNORED && neg != MagnetsPuzzle.IGNORED && Math.abs(pos - neg) > imbalance)
+            return name(line) + " needs " + pos + " + and " + neg + " - cells but its dominoes can only make up "
+                    + "a difference of " + imbalance;
+        return null;
+    }
+
+    /**
+     * Rule out the values a line's counts leave no room for.
+     *
+     * @param line the line
+     */
+    private void restrictLine(int line) {
+        int pos = posCount(line);
+        int neg = negCount(line);
+        int length = length(line);
+        int remove = 0;
+        if (pos == 0)
+            remove |= POS_BIT;
+        if (neg == 0)
+            remove |= NEG_BIT;
+        if (pos != MagnetsPuzzle.IGNORED && neg != MagnetsPuzzle.IGNORED && pos + neg == length)
+            remove |= BLANK_BIT;
+        for (int i = 0; i < length; i++)
+            allowed[cell(line, i)] &= ~remove;
+
+        // an odd line that needs (length + 1) / 2 of a polarity has it in
+        // every other cell, starting with the first
+        if (length % 2 == 1)
+        {
+            int full = (length + 1) / 2;
+            int bit = pos == full ? POS_BIT : neg == full ? NEG_BIT : 0;
+            for (int i = 0; bit != 0 && i < length; i++)
+                allowed[cell(line, i)] &= i % 2 == 0 ? bit : ~bit;
+        }
+    }
+
+    /**
+     * Narrow the values of every cell to what the other cells of its
+     * domino allow.
+     *
+     * @return why a domino has no value left, or null
+     */
+    private String restrictDominoes() {
+        int[] masks = new int[puzzle.getDominoCount()];
+        Arrays.fill(masks, ALL);
+        for (int cell = 0; cell < allowed.length; cell++)
+            masks[puzzle.getDomino(cell)] &= relative(cell, allowed[cell]);
+        for (int cell = 0; cell < allowed.length; cell++)
+        {
+            int mask = masks[puzzle.getDomino(cell)];
+            if (mask == 0)
+                return "no value fits the domino at (" + cell / amountOfCols + ", " + cell % amountOfCols + ")";
+            allowed[cell] = (byte) relative(cell, mask);
+        }
+        return null;
+    }
+
+    /**
+     * Convert between the values of a cell and those of the first cell of
+     * its domino, by swapping + and - for a flipped cell.
+     *
+     * @param cell the cell
+     * @param mask the values
+     * @return the values seen from the other side
+     */
+    private int relative(int cell, int mask) {
+        if (!puzzle.isFlipped(cell))
+            return mask;
+        return (mask & BLANK_BIT) | (mask & POS_BIT) << 1 | (mask & NEG_BIT) >> 1;
+    }
+
+    /**
+     * Check a line's counts against the values left to its cells.
+     *
+     * @param line the line
+     * @return why they cannot be met, or null
+     */
+    private String checkAllowed(int line) {
+        int pos = posCount(line);
+        int neg = negCount(line);
+        int canPos = 0;
+        int canNeg = 0;
+        int mustPos = 0;
+        int mustNeg = 0;
+        int mustMagnet = 0;
+        for (int i = 0; i < length(line); i++)
+        {
+            int mask = allowed[cell(line, i)];
+            canPos += (mask & POS_BIT) != 0 ? 1 : 0;
+            canNeg += (mask & NEG_BIT) != 0 ? 1 : 0;
+            mustPos += mask == POS_BIT ? 1 : 0;
+            mustNeg += mask == NEG_BIT ? 1 : 0;
+            mustMagnet += (mask & BLANK_BIT) == 0 ? 1 : 0;
+        }
+        if (pos != MagnetsPuzzle.IGNORED && (pos > canPos || pos < mustPos))
+            return name(line) + " needs " + pos + " + cells but " + mustPos + " to " + canPos + " are left";
+        if (neg != MagnetsPuzzle.IGNORED && (neg > canNeg || neg < mustNeg))
+            return name(line) + " needs " + neg + " - cells but " + mustNeg + " to " + canNeg + " are left";
+        if (pos != MagnetsPuzzle.IGNORED && neg != MagnetsPuzzle.IGNORED && pos + neg < mustMagnet)
+            return name(line) + " needs " + (pos + neg) + " magnet cells but " + mustMagnet + " cannot be blank";
+        return null;
+    }
+
+    /**
+     * Get the puzzle that was presolved.
+     *
+     * @return the puzzle
+     */
+    public MagnetsPuzzle getPuzzle() {
+        return puzzle;
+    }
+
+    /**
+     * Was the puzzle shown to have no solution?
+     *
+     * @return true if it has none
+     */
+    public boolean isInfeasible() {
+        return reason != null;
+    }
+
+    /**
+     * Get why the puzzle has no solution.
+     *
+     * @return the reason, or null if none was found
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Can a cell hold a value?  Nothing is ruled out for an infeasible
+     * puzzle, as it is not searched.
+     *
+     * @param row the row
+     * @param col the column
+     * @param val +, - or X
+     * @return false if the presolve ruled the value out
+     */
+    public boolean isAllowed(int row, int col, char val) {
+        int bit = val == '+' ? POS_BIT : val == '-' ? NEG_BIT : BLANK_BIT;
+        return reason != null || (allowed[row * amountOfCols + col] & bit) != 0;
+    }
+
+    /**
+     * Get the orientations a domino can still take, as the values left to
+     * its cells that are not flipped.  Nothing is ruled out for an
+     * infeasible puzzle, as it is not searched.
+     *
+     * @param domino the domino
+     * @return a mask of 1 for +, 2 for - and 4 for blank
+     */
+    int getDominoValues(int domino) {
+        if (reason != null)
+            return ALL;
+        int cell = puzzle.getDominoCells(domino)[0];
+        return relative(cell, allowed[cell]);
+    }
+
+    /**
+     * Get the value a cell must take.
+     *
+     * @param row the row
+     * @param col the column
+     * @return +, - or X, or . if more than one value is left
+     */
+    public char getForced(int row, int col) {
+        switch (allowed[row * amountOfCols + col])
+        {
+            case POS_BIT:
+                return '+';
+            case NEG_BIT:
+                return '-';
+            case BLANK_BIT:
+                return 'X';
+            default:
+                return '.';
+        }
+    }
+
+    /**
+     * Get the number of cells with only one value left.
+     *
+     * @return the forced cells
+     */
+    public int getForcedCount() {
+        int forced = 0;
+        for (byte mask : allowed)
+            forced += Integer.bitCount(mask) == 1 ? 1 : 0;
+        return forced;
+    }
+
+    /**
+     * Does the presolve narrow any cell down?
+     *
+     * @return true if a value was ruled out somewhere
+     */
+    public boolean isReduced() {
+        for (byte mask : allowed)
+            if (mask != ALL)
+                return true;
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        if (reason != null)
+            return "Presolve: no solution, as " + reason;
+        return "Presolve: " + getForcedCount() + " of " + allowed.length + " cells forced";
+    }
+}
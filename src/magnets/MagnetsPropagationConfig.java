@@ -0,0 +1,478 @@
+package magnets;
+
+import backtracking.Configuration;
+import backtracking.TraceableConfiguration;
+import test.IMagnetTest;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A magnet configuration that propagates constraints instead of only
+ * testing them.  Every domino keeps a domain of the orientations it can
+ * still take (+/-, -/+ and blank).  After each decision the constraints
+ * are applied until nothing more changes:
+ * - a cell that must be + or - rules out the same polarity in the cells
+ *   next to it
+ * - a row or column whose possible + (or -) cells are exactly as many as
+ *   its count forces them all to be +, and one whose certain + cells
+ *   already meet its count rules out + everywhere else in it
+ * A successor is only built by branching on a domino when propagation
+ * has stalled, so most puzzles need little or no backtracking.  Which
+ * domino is branched on is decided by a pluggable DominoOrdering.
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsPropagationConfig implements TraceableConfiguration, IMagnetTest {
+    /** a cell that has not been decided yet */
+    private final static char EMPTY = '.';
+    /** a blank cell */
+    private final static char BLANK = 'X';
+    /** a positive cell */
+    private final static char POS = '+';
+    /** a negative cell */
+    private final static char NEG = '-';
+    /** a cell that can be +, or a domino whose first cell can be + */
+    private final static int POS_BIT = 1;
+    /** a cell that can be -, or a domino whose first cell can be - */
+    private final static int NEG_BIT = 2;
+    /** a cell or domino that can be blank */
+    private final static int BLANK_BIT = 4;
+    /** every value a cell or domino can take */
+    private final static int ALL = POS_BIT | NEG_BIT | BLANK_BIT;
+    /** the orientations branched on, in successor order */
+    private final static int[] ORIENTATIONS = {POS_BIT, NEG_BIT, BLANK_BIT};
+    /** the static puzzle definition shared by every config */
+    private final MagnetsPuzzle puzzle;
+    private final int amountOfRows;
+    private final int amountOfCols;
+    /** chooses the domino to branch on */
+    private final DominoOrdering ordering;
+    /** the orientations each domino can still take */
+    private final byte[] domains;
+    /** the domino most recently branched on, -1 before the first */
+    private final int domino;
+    /** did propagation finish without emptying a domain? */
+    private final boolean consistent;
+
+    /**
+     * Create the initial config for a puzzle, with every orientation open
+     * to every domino, and propagate the counts of the puzzle.  Dominoes
+     * are branched on in row-major order.
+     *
+     * @param puzzle the puzzle to solve
+     */
+    public MagnetsPropagationConfig(MagnetsPuzzle puzzle) {
+        this(puzzle, DominoOrderings.ROW_MAJOR);
+    }
+
+    /**
+     * Create the initial config for a puzzle, with every orientation open
+     * to every domino, and propagate the counts of the puzzle.
+     *
+     * @param puzzle the puzzle to solve
+     * @param ordering chooses the domino to branch on
+     */
+    public MagnetsPropagationConfig(MagnetsPuzzle puzzle, DominoOrdering ordering) {
+        this(puzzle, ordering, null);
+    }
+
+    /**
+     * Create the initial config for a puzzle that has been presolved, with
+     * the orientations the presolve left open to each domino, and
+     * propagate the counts of the puzzle.
+     *
+     * @param puzzle the puzzle to solve
+     * @param ordering chooses the domino to branch on
+     * @param presolved the presolve of the puzzle, or null to start with
+     *  every orientation open
+     */
+    public MagnetsPropagationConfig(MagnetsPuzzle puzzle, DominoOrdering ordering, MagnetsPresolver presolved) {
+        this.puzzle = puzzle;
+        this.ordering = ordering;
+        this.amountOfRows = puzzle.getRows();
+        this.amountOfCols = puzzle.getCols();
+        this.domino = -1;
+        this.domains = new byte[puzzle.getDominoCount()];
+        for (int d = 0; d < domains.length; d++)
+            domains[d] = (byte) (presolved == null ? ALL : presolved.getDominoValues(d));
+        this.consistent = propagate();
+    }
+
+    /**
+     * The copy constructor which fixes one domino to one orientation and
+     * propagates the decision.
+     *
+     * @param other the config to copy
+     * @param domino the domino to decide
+     * @param orientation the orientation bit it takes
+     */
+    private MagnetsPropagationConfig(MagnetsPropagationConfig other, int domino, int orientation) {
+        this.puzzle = other.puzzle;
+        this.ordering = other.ordering;
+        this.amountOfRows = other.amountOfRows;
+        this.amountOfCols = other.amountOfCols;
+        this.domino = domino;
+        this.domains = other.domains.clone();
+        this.domains[domino] = (byte) orientation;
+        this.consistent = propagate();
+    }
+
+    /**
+     * Swap the + and - bits of a mask, which turns a domino orientation
+     * into the values of a flipped cell and back.
+     *
+     * @param mask a mask of POS_BIT, NEG_BIT and BLANK_BIT
+     * @return the mask with + and - swapped
+     */
+    private static int swap(int mask) {
+        return (mask & BLANK_BIT) | ((mask & POS_BIT) << 1) | ((mask & NEG_BIT) >> 1);
+    }
+
+    /**
+     * Get the values a cell can still take.
+     *
+     * @param cell the cell as row * cols + col
+     * @return a mask of POS_BIT, NEG_BIT and BLANK_BIT
+     */
+    private int values(int cell) {
+        int domain = domains[puzzle.getDomino(cell)];
+        return puzzle.isFlipped(cell) ? swap(domain) : domain;
+    }
+
+    /**
+     * Rule values out of a cell, by removing the orientations of its
+     * domino that would give the cell those values.
+     *
+     * @param cell the cell as row * cols + col
+     * @param mask the values to rule out
+     * @return true if the domain of the domino changed
+     */
+    private boolean remove(int cell, int mask) {
+        int d = puzzle.getDomino(cell);
+        int domain = domains[d] & ~(puzzle.isFlipped(cell) ? swap(mask) : mask);
+        if (domain == domains[d])
+            return false;
+        domains[d] = (byte) domain;
+        return true;
+    }
+
+    /**
+     * Apply every constraint until no domain changes any more.
+     *
+     * @return false if some domino is left with no orientation, or a
+     *  count can no longer be met
+     */
+    private boolean propagate() {
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+            // no two neighbours of the same polarity
+            for (int row = 0; row < amountOfRows; row++)
+                for (int col = 0; col < amountOfCols; col++)
+                {
+                    int cell = row * amountOfCols + col;
+                    if (col + 1 < amountOfCols)
+                        changed |= separate(cell, cell + 1);
+                    if (row + 1 < amountOfRows)
+                        changed |= separate(cell, cell + amountOfCols);
+                }
+            for (int d = 0; d < domains.length; d++)
+                if (domains[d] == 0)
+                    return false;
+
+            // row and column counts
+            for (int row = 0; row < amountOfRows; row++)
+            {
+                int first = row * amountOfCols;
+                int pos = countLine(first, 1, amountOfCols, POS_BIT, puzzle.getPosRowCount(row));
+                int neg = countLine(first, 1, amountOfCols, NEG_BIT, puzzle.getNegRowCount(row));
+                if (pos < 0 || neg < 0)
+                    return false;
+                changed |= pos > 0 || neg > 0;
+            }
+            for (int col = 0; col < amountOfCols; col++)
+            {
+                int pos = countLine(col, amountOfCols, amountOfRows, POS_BIT, puzzle.getPosColCount(col));
+                int neg = countLine(col, amountOfCols, amountOfRows, NEG_BIT, puzzle.getNegColCount(col));
+                if (pos < 0 || neg < 0)
+                    return false;
+                changed |= pos > 0 || neg > 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keep two neighbouring cells from sharing a polarity: once one of
+     * them must be + (or -), the other cannot be.
+     *
+     * @param a one cell
+     * @param b the cell next to it
+     * @return true if a domain changed
+     */
+    private boolean separate(int a, int b) {
+        if (puzzle.getDomino(a) == puzzle.getDomino(b))
+            return false;  // cells of one domino always hold opposite values
+        int valuesA = values(a);
+        int valuesB = values(b);
+        boolean changed = false;
+        if (valuesA == POS_BIT || valuesA == NEG_BIT)
+            changed = remove(b, valuesA);
+        if (valuesB == POS_BIT || valuesB == NEG_BIT)
+            changed |= remove(a, valuesB);
+        return changed;
+    }
+
+    /**
+     * Apply a count of one polarity to a row or column.
+     *
+     * @param first the first cell of the line
+     * @param stride the distance between cells of the line
+     * @param length the number of cells in the line
+     * @param bit POS_BIT or NEG_BIT
+     * @param expected the count from the puzzle, or IGNORED
+     * @return -1 if the count can no longer be met, otherwise the number
+     *  of cells that had values ruled out
+     */
+    private int countLine(int first, int stride, int length, int bit, int expected) {
+        if (expected == MagnetsPuzzle.IGNORED)
+            return 0;
+        int certain = 0;
+        int possible = 0;
+        for (int i = 0, cell = first; i < length; i++, cell += stride)
+        {
+            int values = values(cell);
+            if (values == bit)
+                certain++;
+            if ((values & bit) != 0)
+                possible++;
+        }
+        if (certain > expected || possible < expected)
+            return -1;
+        if (certain == possible)
+            return 0;
+        int changed = 0;
+        for (int i = 0, cell = first; i < length; i++, cell += stride)
+        {
+            int values = values(cell);
+            if ((values & bit) != 0 && values != bit)
+            {
+                // every possible cell is needed, or no more are allowed
+                if (possible == expected && remove(cell, ALL & ~bit))
+                    changed++;
+                else if (certain == expected && remove(cell, bit))
+                    changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Pick the domino to branch on with the ordering strategy.
+     *
+     * @return the domino, or -1 if every domino is decided
+     */
+    private int nextDomino() {
+        return ordering.select(puzzle, domains);
+    }
+
+    /**
+     * Generate the successor configs by branching on the next undecided
+     * domino, in the order +/-, -/+ and blank, skipping orientations that
+     * propagation has already ruled out.
+     *
+     * @return the collection of successors
+     */
+    @Override
+    public List<Configuration> getSuccessors() {
+        List<Configuration> successors = new ArrayList<>();
+        successorIterator().forEachRemaining(successors::add);
+        return successors;
+    }
+
+    /**
+     * Generate the successor configs lazily, so a successor only pays for
+     * its propagation when the search gets to it.
+     *
+     * @return an iterator over the successors
+     */
+    @Override
+    public Iterator<Configuration> successorIterator() {
+        final int next = consistent ? nextDomino() : -1;
+        return new Iterator<Configuration>() {
+            /** index into ORIENTATIONS of the next one to branch on */
+            private int index = skipRuledOut(0);
+
+            /**
+             * Find the first orientation, starting at index from, that is
+             * still in the domain of the domino being branched on.
+             *
+             * @param from the first index into ORIENTATIONS to try
+             * @return the index of an open orientation, or ORIENTATIONS.length
+             */
+            private int skipRuledOut(int from) {
+                while (next >= 0 && from < ORIENTATIONS.length && (domains[next] & ORIENTATIONS[from]) == 0)
+                    from++;
+                return next < 0 ? ORIENTATIONS.length : from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return index < ORIENTATIONS.length;
+            }
+
+            @Override
+            public Configuration next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Configuration child = new MagnetsPropagationConfig(
+                        MagnetsPropagationConfig.this, next, ORIENTATIONS[index]);
+                index = skipRuledOut(index + 1);
+                return child;
+            }
+        };
+    }
+
+    /**
+     * A config is valid if propagating its decisions left every domino
+     * with at least one orientation and every count reachable.
+     *
+     * @return whether this config is valid or not
+     */
+    @Override
+    public boolean isValid() {
+        return consistent;
+    }
+
+    /**
+     * The goal is reached once every domino has exactly one orientation
+     * left.  Propagation has checked every constraint by then.
+     *
+     * @return true if goal is reached, false otherwise
+     */
+    @Override
+    public boolean isGoal() {
+        if (!consistent)
+            return false;
+        for (byte domain : domains)
+            if (Integer.bitCount(domain) > 1)
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns a string representation of the puzzle including all necessary info.
+     *
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        return MagnetsConfig.render(this);
+    }
+
+    // TraceableConfiguration
+
+    /**
+     * The position of the most recent move is the cell at the cursor,
+     * as row * cols + col.
+     *
+     * @return the cell, or -1 before the first move
+     */
+    @Override
+    public int getTracePosition() {
+        return getCursorCol() < 0 ? -1 : getCursorRow() * getCols() + getCursorCol();
+    }
+
+    /**
+     * The value of the most recent move is the character it put in the first
+     * cell of its domino.
+     *
+     * @return the value, or 0 before the first move
+     */
+    @Override
+    public int getTraceValue() {
+        return getCursorCol() < 0 ? 0 : getVal(getCursorRow(), getCursorCol());
+    }
+
+    // IMagnetTest
+
+    @Override
+    public int getRows() {
+        return this.amountOfRows;
+    }
+
+    @Override
+    public int getCols() {
+        return this.amountOfCols;
+    }
+
+    @Override
+    public int getPosRowCount(int row) {
+        return puzzle.getPosRowCount(row);
+    }
+
+    @Override
+    public int getPosColCount(int col) {
+        return puzzle.getPosColCount(col);
+    }
+
+    @Override
+    public int getNegRowCount(int row) {
+        return puzzle.getNegRowCount(row);
+    }
+
+    @Override
+    public int getNegColCount(int col) {
+        return puzzle.getNegColCount(col);
+    }
+
+    @Override
+    public char getPair(int row, int col) {
+        return puzzle.getPair(row, col);
+    }
+
+    /**
+     * Get the value of a cell, or . if it has not been decided yet.
+     *
+     * @param row the row
+     * @param col the column
+     * @return the val
+     */
+    @Override
+    public char getVal(int row, int col) {
+        switch (values(row * amountOfCols + col)) {
+            case POS_BIT:
+                return POS;
+            case NEG_BIT:
+                return NEG;
+            case BLANK_BIT:
+                return BLANK;
+            default:
+                return EMPTY;
+        }
+    }
+
+    /**
+     * The cursor is the first cell of the domino most recently branched on.
+     *
+     * @return cursor row
+     */
+    @Override
+    public int getCursorRow() {
+        return domino < 0 ? 0 : puzzle.getDominoRow(domino);
+    }
+
+    /**
+     * The cursor is the first cell of the domino most recently branched on.
+     *
+     * @return cursor column, -1 before the first branch
+     */
+    @Override
+    public int getCursorCol() {
+        return domino < 0 ? -1 : puzzle.getDominoCol(domino);
+    }
+}
@@ -0,0 +1,335 @@
+package magnets;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * The static definition of a magnets puzzle: its dimensions, the pos/neg
+ * counts for each row and column, and the grid of pairs.  It never changes
+ * during a search, so every configuration of a puzzle shares one instance.
+ *
+ * A pair is formed by every R cell with the cell to its left and every B
+ * cell with the cell above it, and the two cells of a pair hold opposite
+ * values (+/-, -/+ or X/X).  The cells joined by pairs make up a domino.
+ * In a well formed grid every domino is an L/R or T/B magnet, but a T or
+ * L cell that nothing pairs with is a domino of its own, and a cell that
+ * two pairs meet at joins three cells into one domino.  Either way the
+ * first cell of a domino decides the value of all the others, so it can
+ * be assigned as a whole.  Dominoes are numbered in row-major order of
+ * their first cell.
+ *
+ * @author Jerry Chen
+ */
+public final class MagnetsPuzzle {
+    /** left pair value */
+    public final static char LEFT = 'L';
+    /** right pair value */
+    public final static char RIGHT = 'R';
+    /** top pair value */
+    public final static char TOP = 'T';
+    /** bottom pair value */
+    public final static char BOTTOM = 'B';
+    /** an ignored count for pos/neg row/col */
+    public final static int IGNORED = -1;
+    private final int amountOfRows;
+    private final int amountOfCols;
+    private final int[] posRow;
+    private final int[] posCol;
+    private final int[] negRow;
+    private final int[] negCol;
+    private final char[][] grid;
+    /** the cells (row * cols + col) of each domino, first cell first */
+    private final int[][] dominoCells;
+    /** the domino each cell belongs to */
+    private final int[] dominoOf;
+    /** does a cell hold the opposite value of the first cell of its domino? */
+    private final boolean[] flipped;
+
+    /**
+     * Create a puzzle from its counts and pairs.  The arrays are used
+     * as is, so the caller must not change them afterwards.
+     *
+     * @param posRow the positive count of each row
+     * @param posCol the positive count of each column
+     * @param negRow the negative count of each row
+     * @param negCol the negative count of each column
+     * @param grid the L/R/T/B pairs, one row of the puzzle per entry
+     * @throws IllegalArgumentException if the sizes do not agree or an R/B
+     *  cell has no cell to pair with
+     */
+    public MagnetsPuzzle(int[] posRow, int[] posCol, int[] negRow, int[] negCol, char[][] grid) {
+        this.amountOfRows = grid.length;
+        this.amountOfCols = grid.length == 0 ? 0 : grid[0].length;
+        if (posRow.length != amountOfRows || negRow.length != amountOfRows
+                || posCol.length != amountOfCols || negCol.length != amountOfCols)
+            throw new IllegalArgumentException("Counts do not match a " + amountOfRows + "x" + amountOfCols + " grid");
+        this.posRow = posRow;
+        this.posCol = posCol;
+        this.negRow = negRow;
+        this.negCol = negCol;
+        this.grid = grid;
+
+        // join every R/B cell to its partner, keeping track of the parity
+        // of each cell relative to the root of its group
+        int cells = amountOfRows * amountOfCols;
+        int[] parent = new int[cells];
+        boolean[] parity = new boolean[cells];
+        for (int cell = 0; cell < cells; cell++)
+            parent[cell] = cell;
+        for (int row = 0; row < amountOfRows; row++)
+        {
+            if (grid[row].length != amountOfCols)
+                throw new IllegalArgumentException("Row " + row + " of the pairs has " + grid[row].length + " columns");
+            for (int col = 0; col < amountOfCols; col++)
+            {
+                if (grid[row][col] == RIGHT)
+                {
+                    if (col == 0)
+                        throw new IllegalArgumentException("R with no cell to its left at (" + row + ", " + col + ")");
+                    join(parent, parity, row * amountOfCols + col - 1, row * amountOfCols + col);
+                }
+                else if (grid[row][col] == BOTTOM)
+                {
+                    if (row == 0)
+                        throw new IllegalArgumentException("B with no cell above it at (" + row + ", " + col + ")");
+                    join(parent, parity, (row - 1) * amountOfCols + col, row * amountOfCols + col);
+                }
+            }
+        }
+
+        // number the dominoes in row-major order of their first cell
+        this.dominoOf = new int[cells];
+        this.flipped = new boolean[cells];
+        int[] dominoOfRoot = new int[cells];
+        int[] sizes = new int[cells];
+        int dominoes = 0;
+        Arrays.fill(dominoOfRoot, -1);
+        for (int cell = 0; cell < cells; cell++)
+        {
+            int root = find(parent, parity, cell);
+            if (dominoOfRoot[root] < 0)
+                dominoOfRoot[root] = dominoes++;
+            dominoOf[cell] = dominoOfRoot[root];
+            sizes[dominoOf[cell]]++;
+        }
+        this.dominoCells = new int[dominoes][];
+        for (int domino = 0; domino < dominoes; domino++)
+            dominoCells[domino] = new int[sizes[domino]];
+        int[] filled = new int[dominoes];
+        for (int cell = 0; cell < cells; cell++)
+        {
+            int domino = dominoOf[cell];
+            dominoCells[domino][filled[domino]++] = cell;
+            // relative to the first cell, which is the smallest in its domino
+            find(parent, parity, cell);
+            flipped[cell] = parity[cell] != parity[dominoCells[domino][0]];
+        }
+    }
+
+    /**
+     * Find the root of a cell's group, compressing the path on the way and
+     * leaving parity[cell] relative to the root.
+     *
+     * @param parent the parent of each cell
+     * @param parity whether each cell is opposite its parent
+     * @param cell the cell
+     * @return the root of the group
+     */
+    private static int find(int[] parent, boolean[] parity, int cell) {
+        int p = parent[cell];
+        if (p == cell)
+            return cell;
+        int root = find(parent, parity, p);
+        parity[cell] ^= parity[p];
+        parent[cell] = root;
+        return root;
+    }
+
+    /**
+     * Join two cells that hold opposite values.
+     *
+     * @param parent the parent of each cell
+     * @param parity whether each cell is opposite its parent
+     * @param a one cell of the pair
+     * @param b the other cell of the pair
+     */
+    private static void join(int[] parent, boolean[] parity, int a, int b) {
+        int rootA = find(parent, parity, a);
+        int rootB = find(parent, parity, b);
+        // cells already joined through a cycle of pairs always disagree,
+        // since the grid is bipartite
+        if (rootA != rootB)
+        {
+            parent[rootB] = rootA;
+            parity[rootB] = !(parity[a] ^ parity[b]);
+        }
+    }
+
+    /**
+     * Read in a magnet puzzle from a file.  The file is parsed as a
+     * corpus, and the first puzzle in it is returned.
+     *
+     * @param filename the name of the file
+     * @return the puzzle
+     * @throws IOException thrown if there is a problem opening or reading the file
+     */
+    public static MagnetsPuzzle read(String filename) throws IOException {
+        try (MagnetsCorpusReader in = new MagnetsCorpusReader(Paths.get(filename), false))
+        {
+            MagnetsPuzzle puzzle = in.read();
+            if (puzzle == null)
+                throw new EOFException("No puzzle in " + filename);
+            return puzzle;
+        }
+    }
+
+    /**
+     * Get the number of rows in the puzzle.
+     * @return number of rows
+     */
+    public int getRows() {
+        return this.amountOfRows;
+    }
+
+    /**
+     * Get the number of columns in the puzzle.
+     * @return number of columns
+     */
+    public int getCols() {
+        return this.amountOfCols;
+    }
+
+    /**
+     * Get the positive count for a row.
+     * @param row the row
+     * @return the count, or IGNORED
+     */
+    public int getPosRowCount(int row) {
+        return this.posRow[row];
+    }
+
+    /**
+     * Get the positive count for a column.
+     * @param col the column
+     * @return the count, or IGNORED
+     */
+    public int getPosColCount(int col) {
+        return this.posCol[col];
+    }
+
+    /**
+     * Get the negative count for a row.
+     * @param row the row
+     * @return the count, or IGNORED
+     */
+    public int getNegRowCount(int row) {
+        return this.negRow[row];
+    }
+
+    /**
+     * Get the negative count for a column.
+     * @param col the column
+     * @return the count, or IGNORED
+     */
+    public int getNegColCount(int col) {
+        return this.negCol[col];
+    }
+
+    /**
+     * Do the counts stay the same when + and - are swapped?  Then the
+     * mirror image of every solution, with + and - swapped, is a solution
+     * too.
+     * @return true if every pos count equals the neg count of its line
+     */
+    public boolean isPolaritySymmetric() {
+        return Arrays.equals(posRow, negRow) && Arrays.equals(posCol, negCol);
+    }
+
+    /**
+     * Get the pair value (L, R, T or B) at (row, col).
+     * @param row the row
+     * @param col the column
+     * @return the pair value
+     */
+    public char getPair(int row, int col) {
+        return this.grid[row][col];
+    }
+
+    /**
+     * Get the number of dominoes in the puzzle.
+     * @return the number of dominoes
+     */
+    public int getDominoCount() {
+        return this.dominoCells.length;
+    }
+
+    /**
+     * Get the row of the first cell of a domino.
+     * @param domino the domino number
+     * @return the row
+     */
+    public int getDominoRow(int domino) {
+        return this.dominoCells[domino][0] / amountOfCols;
+    }
+
+    /**
+     * Get the column of the first cell of a domino.
+     * @param domino the domino number
+     * @return the column
+     */
+    public int getDominoCol(int domino) {
+        return this.dominoCells[domino][0] % amountOfCols;
+    }
+
+    /**
+     * Get the domino that the cell at (row, col) belongs to.
+     * @param row the row
+     * @param col the column
+     * @return the domino number
+     */
+    public int getDomino(int row, int col) {
+        return this.dominoOf[row * amountOfCols + col];
+    }
+
+    /**
+     * Does the cell at (row, col) hold the opposite value of the first cell
+     * of its domino?  A cell never does if it is the first cell.
+     * @param row the row
+     * @param col the column
+     * @return true if the cell is + when the first cell is -, and vice versa
+     */
+    public boolean isFlipped(int row, int col) {
+        return this.flipped[row * amountOfCols + col];
+    }
+
+    /**
+     * Get the cells of a domino as row * getCols() + col, first cell first.
+     * The array is shared and must not be changed.
+     * @param domino the domino number
+     * @return the cells of the domino
+     */
+    int[] getDominoCells(int domino) {
+        return this.dominoCells[domino];
+    }
+
+    /**
+     * Get the domino of a cell given as row * getCols() + col.
+     * @param cell the cell
+     * @return the domino number
+     */
+    int getDomino(int cell) {
+        return this.dominoOf[cell];
+    }
+
+    /**
+     * Is a cell, given as row * getCols() + col, flipped relative to the
+     * first cell of its domino?
+     * @param cell the cell
+     * @return true if the cell holds the opposite value of the first cell
+     */
+    boolean isFlipped(int cell) {
+        return this.flipped[cell];
+    }
+}
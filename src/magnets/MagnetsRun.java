@@ -0,0 +1,307 @@
+package magnets;
+
+import backtracking.Backtracker;
+import backtracking.Configuration;
+import backtracking.ParallelBacktracker;
+import backtracking.PortfolioSolver;
+import backtracking.SearchLimits;
+import backtracking.SearchListener;
+import backtracking.SolveResult;
+import backtracking.TranspositionTable;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The outcome of running one search engine on one puzzle: the solution,
+ * or the number of solutions for the counting engine, and how many
+ * configurations it took.  The engines are the ones Magnets accepts on
+ * the command line.
+ *
+ * Every engine first runs a MagnetsPresolver over the puzzle.  A puzzle
+ * it shows to have no solution is not searched at all, and the run has
+ * the presolve as its statistics.  Otherwise every engine searches with
+ * the values the presolve left to each cell: the cell and domino searches
+ * never try a value it ruled out, the propagating searches start from its
+ * domains, and the sat engine adds them as unit clauses.
+ *
+ * @author Jerry Chen
+ */
+public final class MagnetsRun {
+    /** the most failed frontiers the memo engine remembers */
+    private final static int MEMO_CAPACITY = 1 << 18;
+    /** the seed of the portfolio engine's randomized orderings */
+    private final static long PORTFOLIO_SEED = 0x4d41474eL;
+    /** the configurations in the shortest run of a restarting portfolio strategy */
+    private final static long RESTART_UNIT = 64;
+    /** the names of the engines */
+    private final static List<String> ENGINES = List.of("recursive", "packed", "inplace", "iterative", "slack",
+            "domino", "domino-slack", "memo", "bitboard", "propagate", "mrv", "portfolio", "sat", "parallel", "count");
+    /** how the search ended */
+    private final SolveResult.Status status;
+    /** the solution found, if any */
+    private final Optional<Configuration> solution;
+    /** the number of configurations generated */
+    private final long configCount;
+    /** the number of solutions counted, or -1 if they were not counted */
+    private final long solutions;
+    /** extra statistics of the engine, or null if it has none */
+    private final Object statistics;
+
+    /**
+     * Record the outcome of a run.
+     *
+     * @param status how the search ended
+     * @param solution the solution found, if any
+     * @param configCount the number of configurations generated
+     * @param solutions the number of solutions counted, or -1
+     * @param statistics extra statistics of the engine, or null
+     */
+    MagnetsRun(SolveResult.Status status, Optional<Configuration> solution, long configCount,
+               long solutions, Object statistics) {
+        this.status = status;
+        this.solution = solution;
+        this.configCount = configCount;
+        this.solutions = solutions;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Solve a puzzle with a search engine.
+     *
+     * @param puzzle the puzzle to solve
+     * @param engine the name of the engine, as given to Magnets
+     * @param debug Is debugging output enabled?
+     * @return the outcome
+     * @throws IllegalArgumentException if there is no such engine
+     */
+    public static MagnetsRun run(MagnetsPuzzle puzzle, String engine, boolean debug) {
+        return run(puzzle, engine, debug, null);
+    }
+
+    /**
+     * Solve a puzzle with a search engine, telling a listener about the
+     * search, such as a trace or metrics.  Only the engines that run on a
+     * Backtracker have a listener; the sat, parallel, count and portfolio
+     * ignore it.
+     *
+     * @param puzzle the puzzle to solve
+     * @param engine the name of the engine, as given to Magnets
+     * @param debug Is debugging output enabled?
+     * @param listener the listener, or null for none
+     * @return the outcome
+     * @throws IllegalArgumentException if there is no such engine
+     */
+    public static MagnetsRun run(MagnetsPuzzle puzzle, String engine, boolean debug, SearchListener listener) {
+        return run(puzzle, engine, debug, listener, SearchLimits.NONE);
+    }
+
+    /**
+     * Solve a puzzle with a search engine under limits.  Every engine stops
+     * when the timeout passes or it is cancelled or interrupted.  The node
+     * limit applies to every engine but sat, which generates no
+     * configurations, and progress is only reported by the engines that
+     * run on a Backtracker.  A count that stops early has counted only the
+     * solutions found by then.  A puzzle the presolve rejects is not
+     * searched; with debugging on, the reason is printed instead.
+     *
+     * @param puzzle the puzzle to solve
+     * @param engine the name of the engine, as given to Magnets
+     * @param debug Is debugging output enabled?
+     * @param listener the listener, or null for none
+     * @param limits the limits of the search
+     * @return the outcome
+     * @throws IllegalArgumentException if there is no such engine
+     */
+    public static MagnetsRun run(MagnetsPuzzle puzzle, String engine, boolean debug, SearchListener listener,
+                                 SearchLimits limits) {
+        if (!ENGINES.contains(engine)) {
+            throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+        MagnetsPresolver presolved = new MagnetsPresolver(puzzle);
+        if (presolved.isInfeasible()) {
+            // no search runs, so say why in its place
+            if (debug) {
+                System.out.println(presolved);
+            }
+            return new MagnetsRun(SolveResult.Status.UNSOLVABLE, Optional.empty(), 0,
+                                  engine.equals("count") ? 0 : -1, presolved);
+        }
+        Backtracker bt = new Backtracker(debug);
+        bt.setListener(listener);
+        SolveResult result;
+        switch (engine) {
+            case "recursive":
+                result = bt.solve(new MagnetsConfig(puzzle, ValueOrdering.FIXED, presolved), limits);
+                break;
+            case "packed":
+                result = bt.solve(new MagnetsPackedConfig(puzzle, presolved), limits);
+                break;
+            case "inplace":
+                result = bt.solveInPlace(new MagnetsConfig(puzzle, ValueOrdering.FIXED, presolved), limits);
+                break;
+            case "iterative":
+                result = bt.solveIterativeInPlace(new MagnetsConfig(puzzle, ValueOrdering.FIXED, presolved), limits);
+                break;
+            case "slack":
+                result = bt.solve(new MagnetsConfig(puzzle, ValueOrdering.SLACK, presolved), limits);
+                break;
+            case "domino":
+                result = bt.solve(new MagnetsDominoConfig(puzzle, ValueOrdering.FIXED, presolved), limits);
+                break;
+            case "domino-slack":
+                result = bt.solve(new MagnetsDominoConfig(puzzle, ValueOrdering.SLACK, presolved), limits);
+                break;
+            case "memo":
+                TranspositionTable table = new TranspositionTable(MEMO_CAPACITY);
+                bt = new Backtracker(debug, table);
+                bt.setListener(listener);
+                result = bt.solveInPlace(new MagnetsConfig(puzzle, ValueOrdering.FIXED, presolved), limits);
+                return new MagnetsRun(result.getStatus(), result.getSolution(), bt.getConfigCount(), -1, table);
+            case "bitboard":
+                result = bt.solveInPlace(new MagnetsBitboardConfig(puzzle, presolved), limits);
+                break;
+            case "propagate":
+                result = bt.solve(new MagnetsPropagationConfig(puzzle, DominoOrderings.ROW_MAJOR, presolved), limits);
+                break;
+            case "mrv":
+                result = bt.solve(new MagnetsPropagationConfig(puzzle, DominoOrderings.MOST_CONSTRAINED_DEGREE,
+                                                               presolved), limits);
+                break;
+            case "portfolio":
+                PortfolioSolver portfolio = portfolio(puzzle, presolved);
+                result = portfolio.solve(limits);
+                return new MagnetsRun(result.getStatus(), result.getSolution(), result.getConfigCount(), -1,
+                                      portfolio);
+            case "sat":
+                MagnetsSatEncoder encoder = new MagnetsSatEncoder(puzzle, presolved);
+                result = encoder.solve(limits);
+                // the solver generates no configurations; its decisions and conflicts are in its statistics
+                return new MagnetsRun(result.getStatus(), result.getSolution(), 0, -1, encoder.getSolver());
+            case "parallel":
+                ParallelBacktracker pbt = new ParallelBacktracker();
+                result = pbt.solve(new MagnetsPackedConfig(puzzle, presolved), limits);
+                return new MagnetsRun(result.getStatus(), result.getSolution(), pbt.getConfigCount(), -1, null);
+            case "count":
+                ParallelBacktracker counter = new ParallelBacktracker();
+                long solutions = counter.countSolutions(
+                        new MagnetsPackedConfig(puzzle, presolved), Long.MAX_VALUE, limits);
+                SolveResult.Status stop = counter.getStopReason();
+                return new MagnetsRun(stop != null ? stop : solutions > 0 ? SolveResult.Status.SOLVED
+                                      : SolveResult.Status.UNSOLVABLE,
+                                      Optional.empty(), counter.getConfigCount(), solutions, null);
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+        return new MagnetsRun(result.getStatus(), result.getSolution(), bt.getConfigCount(), -1, null);
+    }
+
+    /**
+     * Build the portfolio engine for a puzzle: the propagate and mrv
+     * searches, which never restart, and two searches that break ties of
+     * the most constrained domino at random and restart on a Luby
+     * schedule.
+     *
+     * @param puzzle the puzzle to solve
+     * @param presolved the presolve of the puzzle
+     * @return the portfolio
+     */
+    private static PortfolioSolver portfolio(MagnetsPuzzle puzzle, MagnetsPresolver presolved) {
+        return new PortfolioSolver(List.of(
+                new PortfolioSolver.Strategy("propagate", seed -> new MagnetsPropagationConfig(puzzle,
+                        DominoOrderings.ROW_MAJOR, presolved), 0),
+                new PortfolioSolver.Strategy("mrv", seed -> new MagnetsPropagationConfig(puzzle,
+                        DominoOrderings.MOST_CONSTRAINED_DEGREE, presolved), 0),
+                new PortfolioSolver.Strategy("random", seed -> new MagnetsPropagationConfig(puzzle,
+                        new RandomizedOrdering(seed), presolved), RESTART_UNIT),
+                new PortfolioSolver.Strategy("random", seed -> new MagnetsPropagationConfig(puzzle,
+                        new RandomizedOrdering(seed), presolved), RESTART_UNIT)), PORTFOLIO_SEED);
+    }
+
+    /**
+     * Solve a puzzle with a search engine, answering from a solution cache
+     * when the puzzle, or a mirror image of it, was solved before.  A run
+     * answered from the cache generates no configurations and has the
+     * cache as its statistics.  The count engine always searches.
+     *
+     * @param puzzle the puzzle to solve
+     * @param engine the name of the engine, as given to Magnets
+     * @param debug Is debugging output enabled?
+     * @param listener the listener, or null for none
+     * @param limits the limits of the search
+     * @param cache the cache, or null for none
+     * @return the outcome
+     * @throws IllegalArgumentException if there is no such engine
+     */
+    public static MagnetsRun run(MagnetsPuzzle puzzle, String engine, boolean debug, SearchListener listener,
+                                 SearchLimits limits, MagnetsSolutionCache cache) {
+        if (cache == null || engine.equals("count")) {
+            return run(puzzle, engine, debug, listener, limits);
+        }
+        MagnetsRun cached = cache.lookup(puzzle);
+        if (cached != null) {
+            return cached;
+        }
+        MagnetsRun run = run(puzzle, engine, debug, listener, limits);
+        cache.store(puzzle, run);
+        return run;
+    }
+
+    /**
+     * Get how the search ended.
+     *
+     * @return the status; budget exhausted only for a search under limits
+     */
+    public SolveResult.Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the solution found.
+     *
+     * @return the solution, or empty if there is none or solutions were
+     *  only counted
+     */
+    public Optional<Configuration> getSolution() {
+        return solution;
+    }
+
+    /**
+     * Get the number of configurations generated.  The sat engine generates
+     * none, so it reports 0; its decisions, conflicts and propagations are
+     * in its statistics.
+     *
+     * @return config count
+     */
+    public long getConfigCount() {
+        return configCount;
+    }
+
+    /**
+     * Get the number of solutions counted.
+     *
+     * @return the count, or -1 if solutions were not counted
+     */
+    public long getSolutions() {
+        return solutions;
+    }
+
+    /**
+     * Does the puzzle have a solution?
+     *
+     * @return true if a solution was found or counted
+     */
+    public boolean isSolved() {
+        return solutions >= 0 ? solutions > 0 : solution.isPresent();
+    }
+
+    /**
+     * Get the extra statistics of the engine, such as the hits of a
+     * transposition table.
+     *
+     * @return the statistics, or null if the engine has none
+     */
+    public Object getStatistics() {
+        return statistics;
+    }
+}
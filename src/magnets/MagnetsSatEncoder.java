@@ -0,0 +1,296 @@
+package magnets;
+
+import backtracking.CancellationToken;
+import backtracking.Configuration;
+import backtracking.SearchLimits;
+import backtracking.SolveResult;
+import sat.SatSolver;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Solves a magnets puzzle by encoding it as CNF for the built-in SAT
+ * solver.  Every cell has two variables, one true when the cell is + and
+ * one true when it is -; a cell with neither is blank.  The clauses say:
+ * - no cell is both + and -
+ * - the two cells of a pair hold opposite values, so a + cell's partner
+ *   is -, a - cell's partner is +, and blanks go together
+ * - no two neighbours are both + or both -
+ * - every row and column count is met exactly, using a sequential
+ *   counter over the line's + (or -) variables, which takes about
+ *   length * (count + 1) extra variables
+ * - given a MagnetsPresolver, no cell takes a value the presolve ruled out
+ * The solution is decoded back into a full MagnetsConfig board.
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsSatEncoder {
+    /** the puzzle being solved */
+    private final MagnetsPuzzle puzzle;
+    /** the solver holding the encoding */
+    private final SatSolver solver;
+    /** the variable of each cell (row * cols + col) that is true for + */
+    private final int[] pos;
+    /** the variable of each cell (row * cols + col) that is true for - */
+    private final int[] neg;
+    /** a variable that is always true, to stand for constants */
+    private final int truth;
+
+    /**
+     * Encode a puzzle.
+     *
+     * @param puzzle the puzzle to solve
+     */
+    public MagnetsSatEncoder(MagnetsPuzzle puzzle) {
+        this(puzzle, null);
+    }
+
+    /**
+     * Encode a puzzle that has been presolved, with the values the presolve
+     * ruled out as unit clauses.
+     *
+     * @param puzzle the puzzle to solve
+     * @param presolved the presolve of the puzzle, or null to encode
+     *  without one
+     */
+    public MagnetsSatEncoder(MagnetsPuzzle puzzle, MagnetsPresolver presolved) {
+        this.puzzle = puzzle;
+        this.solver = new SatSolver();
+        int rows = puzzle.getRows();
+        int cols = puzzle.getCols();
+        this.pos = new int[rows * cols];
+        this.neg = new int[rows * cols];
+        for (int cell = 0; cell < pos.length; cell++)
+        {
+            pos[cell] = solver.newVariable();
+            neg[cell] = solver.newVariable();
+            solver.addClause(-pos[cell], -neg[cell]);
+        }
+        this.truth = solver.newVariable();
+        solver.addClause(truth);
+
+        for (int row = 0; row < rows; row++)
+            for (int col = 0; col < cols; col++)
+            {
+                int cell = row * cols + col;
+                // pairs, the same way the puzzle joins them
+                if (puzzle.getPair(row, col) == MagnetsPuzzle.RIGHT)
+                    opposite(cell - 1, cell);
+                else if (puzzle.getPair(row, col) == MagnetsPuzzle.BOTTOM)
+                    opposite(cell - cols, cell);
+                // polarity, with the neighbours to the right and below
+                if (col + 1 < cols)
+                    apart(cell, cell + 1);
+                if (row + 1 < rows)
+                    apart(cell, cell + cols);
+            }
+
+        for (int row = 0; row < rows; row++)
+        {
+            exactly(line(pos, row * cols, 1, cols), puzzle.getPosRowCount(row));
+            exactly(line(neg, row * cols, 1, cols), puzzle.getNegRowCount(row));
+        }
+        for (int col = 0; col < cols; col++)
+        {
+            exactly(line(pos, col, cols, rows), puzzle.getPosColCount(col));
+            exactly(line(neg, col, cols, rows), puzzle.getNegColCount(col));
+        }
+
+        for (int row = 0; presolved != null && row < rows; row++)
+            for (int col = 0; col < cols; col++)
+            {
+                int cell = row * cols + col;
+                if (!presolved.isAllowed(row, col, '+'))
+                    solver.addClause(-pos[cell]);
+                if (!presolved.isAllowed(row, col, '-'))
+                    solver.addClause(-neg[cell]);
+                if (!presolved.isAllowed(row, col, 'X'))
+                    solver.addClause(pos[cell], neg[cell]);
+            }
+    }
+
+    /**
+     * Make two cells of a pair hold opposite values: a is + exactly when
+     * b is -, and a is - exactly when b is +.
+     *
+     * @param a one cell of the pair
+     * @param b the other cell of the pair
+     */
+    private void opposite(int a, int b) {
+        solver.addClause(-pos[a], neg[b]);
+        solver.addClause(pos[a], -neg[b]);
+        solver.addClause(-neg[a], pos[b]);
+        solver.addClause(neg[a], -pos[b]);
+    }
+
+    /**
+     * Keep two neighbouring cells from having the same polarity.
+     *
+     * @param a one cell
+     * @param b the other cell
+     */
+    private void apart(int a, int b) {
+        solver.addClause(-pos[a], -pos[b]);
+        solver.addClause(-neg[a], -neg[b]);
+    }
+
+    /**
+     * Get the variables of a row or column.
+     *
+     * @param vars pos or neg
+     * @param first the first cell of the line
+     * @param stride the distance between cells of the line
+     * @param length the number of cells in the line
+     * @return the variables
+     */
+    private static int[] line(int[] vars, int first, int stride, int length) {
+        int[] xs = new int[length];
+        for (int i = 0; i < length; i++)
+            xs[i] = vars[first + i * stride];
+        return xs;
+    }
+
+    /**
+     * Require exactly k of some variables to be true, with a sequential
+     * counter: r(i, j) is true when at least j of the first i + 1
+     * variables are, for j up to k + 1.  The last r(., k) must then be
+     * true and the last r(., k + 1) false.
+     *
+     * @param xs the variables
+     * @param k the count, or IGNORED for no constraint
+     */
+    private void exactly(int[] xs, int k) {
+        if (k == MagnetsPuzzle.IGNORED)
+            return;
+        if (k > xs.length)
+        {
+            solver.addClause();  // can never be met
+            return;
+        }
+        // prev[j] is r(i - 1, j), starting before the first variable
+        int[] prev = new int[k + 2];
+        prev[0] = truth;
+        for (int j = 1; j <= k + 1; j++)
+            prev[j] = -truth;
+        for (int i = 0; i < xs.length; i++)
+        {
+            int[] cur = new int[k + 2];
+            cur[0] = truth;
+            for (int j = 1; j <= k + 1; j++)
+            {
+                if (j > i + 1)
+                {
+                    cur[j] = -truth;  // not enough variables yet
+                    continue;
+                }
+                int r = solver.newVariable();
+                // r <-> prev[j] or (xs[i] and prev[j - 1])
+                solver.addClause(-prev[j], r);
+                solver.addClause(-xs[i], -prev[j - 1], r);
+                solver.addClause(-r, prev[j], xs[i]);
+                solver.addClause(-r, prev[j], prev[j - 1]);
+                cur[j] = r;
+            }
+            prev = cur;
+        }
+        solver.addClause(prev[k]);
+        solver.addClause(-prev[k + 1]);
+    }
+
+    /**
+     * Solve the encoded puzzle.
+     *
+     * @return a full board that solves the puzzle, or empty if there is none
+     */
+    public Optional<Configuration> solve() {
+        return solver.solve() ? Optional.of(decode()) : Optional.empty();
+    }
+
+    /**
+     * Solve the encoded puzzle under limits.  The timeout, the token and
+     * the thread's interrupt flag are checked after every conflict of the
+     * solver.  The node limit does not apply, as the solver generates no
+     * configurations, and progress is not reported.
+     *
+     * @param limits the limits to solve under
+     * @return the outcome, with no configurations generated
+     */
+    public SolveResult solve(SearchLimits limits) {
+        long start = System.nanoTime();
+        CancellationToken token = limits.getCancellation();
+        long deadline = limits.getDeadline(start);
+        SolveResult.Status[] stop = new SolveResult.Status[1];
+        BooleanSupplier stopped = () -> {
+            if ((token != null && token.isCancelled()) || Thread.currentThread().isInterrupted())
+                stop[0] = SolveResult.Status.CANCELLED;
+            else if (System.nanoTime() - deadline >= 0)
+                stop[0] = SolveResult.Status.TIMED_OUT;
+            return stop[0] != null;
+        };
+        Boolean sat = stopped.getAsBoolean() ? null : solver.solveLimited(stopped);
+        SolveResult.Status status = sat == null ? stop[0]
+                : sat ? SolveResult.Status.SOLVED : SolveResult.Status.UNSOLVABLE;
+        Optional<Configuration> sol = sat == Boolean.TRUE ? Optional.of(decode()) : Optional.empty();
+        return new SolveResult(status, sol, 0, System.nanoTime() - start);
+    }
+
+    /**
+     * Decode the solver's solution into a board.
+     *
+     * @return the full board
+     */
+    private Configuration decode() {
+        int rows = puzzle.getRows();
+        int cols = puzzle.getCols();
+        char[][] values = new char[rows][cols];
+        for (int row = 0; row < rows; row++)
+            for (int col = 0; col < cols; col++)
+            {
+                int cell = row * cols + col;
+                values[row][col] = solver.getValue(pos[cell]) ? '+' : solver.getValue(neg[cell]) ? '-' : 'X';
+            }
+        return new MagnetsConfig(puzzle, values);
+    }
+
+    /**
+     * Rule out a board, so that solve() only finds other solutions.  The
+     * first cell of each domino decides the others, so the clause only
+     * needs those.
+     *
+     * @param values a full board of +, - and X, such as a solution
+     * @return false if no other solution can exist
+     */
+    boolean exclude(char[][] values) {
+        int cols = puzzle.getCols();
+        int dominoes = puzzle.getDominoCount();
+        // the clause says some first cell differs from the board
+        int[] clause = new int[2 * dominoes];
+        int size = 0;
+        for (int domino = 0; domino < dominoes; domino++)
+        {
+            int cell = puzzle.getDominoCells(domino)[0];
+            char val = values[cell / cols][cell % cols];
+            if (val == '+')
+                clause[size++] = -pos[cell];
+            else if (val == '-')
+                clause[size++] = -neg[cell];
+            else
+            {
+                clause[size++] = pos[cell];
+                clause[size++] = neg[cell];
+            }
+        }
+        return solver.addClause(Arrays.copyOf(clause, size));
+    }
+
+    /**
+     * Get the solver holding the encoding, for its statistics.
+     *
+     * @return the solver
+     */
+    public SatSolver getSolver() {
+        return solver;
+    }
+}
@@ -0,0 +1,516 @@
+package magnets;
+
+import backtracking.SolveResult;
+import test.IMagnetTest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Remembers the solutions of puzzles, so a puzzle that was seen before is
+ * answered without a search, even when it comes back mirrored, rotated,
+ * transposed or with + and - swapped.
+ *
+ * Each puzzle is brought into a canonical form: of its 16 variants (the 8
+ * symmetries of a rectangle, each with and without the polarity swap),
+ * the one whose counts and pairs compare smallest.  A transposed variant
+ * swaps the row and column counts and turns L/R pairs into T/B ones.  The
+ * solution is kept in the orientation of the canonical form, and mapped
+ * back to the orientation of whoever asks for it.  A grid that is not
+ * tiled with L/R and T/B dominoes cannot always be mirrored, so only its
+ * polarity is normalized.
+ *
+ * There are two tiers:
+ * - memory: the most recently used solutions, up to a capacity
+ * - disk: one file per canonical puzzle in a directory, named by the
+ *   SHA-256 of the puzzle, which holds the canonical puzzle in the puzzle
+ *   file format followed by its solution (or "no solution"), so the cache
+ *   survives restarts and can be shared by several processes
+ * A cache can be used from several threads at once.  Only searches that
+ * ran to the end are stored, never one that hit a limit.
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsSolutionCache {
+    /** the transform bit that swaps + and - */
+    private final static int SWAP = 1;
+    /** the transform bit that mirrors the columns, left to right */
+    private final static int FLIP_COLS = 2;
+    /** the transform bit that mirrors the rows, top to bottom */
+    private final static int FLIP_ROWS = 4;
+    /** the transform bit that swaps rows and columns, done before flipping */
+    private final static int TRANSPOSE = 8;
+    /** the number of transforms */
+    private final static int TRANSFORMS = 16;
+    /** the entry of a puzzle known to have no solution */
+    private final static char[][] UNSOLVABLE = new char[0][];
+    /** the line of a cache file that says there is no solution */
+    private final static String NO_SOLUTION = "no solution";
+    /** the canonical solutions in memory, least recently used first */
+    private final Map<String, char[][]> entries;
+    /** the directory of the disk tier, or null for memory only */
+    private final Path directory;
+    /** the lookups answered from memory */
+    private long hits;
+    /** the lookups answered from disk */
+    private long diskHits;
+    /** the lookups that found nothing */
+    private long misses;
+
+    /**
+     * Create a cache.
+     *
+     * @param capacity the most solutions kept in memory
+     * @param directory the directory of the disk tier, which is created if
+     *  needed, or null to keep solutions in memory only
+     * @throws IllegalArgumentException if capacity is not positive
+     * @throws IOException if the directory cannot be created
+     */
+    public MagnetsSolutionCache(int capacity, Path directory) throws IOException {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.entries = new LinkedHashMap<String, char[][]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, char[][]> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.directory = directory;
+        if (directory != null)
+            Files.createDirectories(directory);
+    }
+
+    /**
+     * Look up the outcome of a puzzle.
+     *
+     * @param puzzle the puzzle
+     * @return a run with the solution in the orientation of the puzzle, or
+     *  no solution if it has none, or null if the puzzle is not cached
+     */
+    public MagnetsRun lookup(MagnetsPuzzle puzzle) {
+        int transform = canonical(puzzle);
+        String key = new String(key(puzzle, transform));
+        char[][] canon;
+        synchronized (this)
+        {
+            canon = entries.get(key);
+            if (canon != null)
+                hits++;
+        }
+        if (canon == null)
+        {
+            canon = read(key);
+            synchronized (this)
+            {
+                if (canon == null)
+                {
+                    misses++;
+                    return null;
+                }
+                diskHits++;
+                entries.put(key, canon);
+            }
+        }
+        if (canon == UNSOLVABLE)
+            return new MagnetsRun(SolveResult.Status.UNSOLVABLE, Optional.empty(), 0, -1, this);
+        char[][] values = new char[puzzle.getRows()][puzzle.getCols()];
+        for (int row = 0; row < canon.length; row++)
+            for (int col = 0; col < canon[row].length; col++)
+            {
+                int cell = source(puzzle, transform, row, col);
+                values[cell / puzzle.getCols()][cell % puzzle.getCols()] = swap(canon[row][col], transform);
+            }
+        return new MagnetsRun(SolveResult.Status.SOLVED, Optional.of(new MagnetsConfig(puzzle, values)), 0, -1,
+                              this);
+    }
+
+    /**
+     * Store the outcome of a search, if it ran to the end and found a
+     * board.  Solutions that were only counted are not stored.  If the
+     * disk tier cannot be written, the solution is only kept in memory.
+     *
+     * @param puzzle the puzzle that was searched
+     * @param run the outcome of the search
+     */
+    public void store(MagnetsPuzzle puzzle, MagnetsRun run) {
+        if (run.getSolutions() >= 0 || run.getStatus().isBudgetExhausted())
+            return;
+        int transform = canonical(puzzle);
+        String key = new String(key(puzzle, transform));
+        char[][] canon = UNSOLVABLE;
+        if (run.getSolution().isPresent())
+        {
+            IMagnetTest board = (IMagnetTest) run.getSolution().get();
+            boolean transposed = (transform & TRANSPOSE) != 0;
+            canon = new char[transposed ? puzzle.getCols() : puzzle.getRows()]
+                            [transposed ? puzzle.getRows() : puzzle.getCols()];
+            for (int row = 0; row < canon.length; row++)
+                for (int col = 0; col < canon[row].length; col++)
+                {
+                    int cell = source(puzzle, transform, row, col);
+                    canon[row][col] = swap(board.getVal(cell / puzzle.getCols(), cell % puzzle.getCols()), transform);
+                }
+        }
+        synchronized (this)
+        {
+            entries.put(key, canon);
+        }
+        write(key, canon);
+    }
+
+    /**
+     * Find the transform that brings a puzzle into its canonical form.
+     *
+     * @param puzzle the puzzle
+     * @return the transform whose key is smallest
+     */
+    private static int canonical(MagnetsPuzzle puzzle) {
+        int transforms = isTiled(puzzle) ? TRANSFORMS : SWAP + 1;
+        int best = 0;
+        char[] bestKey = key(puzzle, 0);
+        for (int transform = 1; transform < transforms; transform++)
+        {
+            char[] key = key(puzzle, transform);
+            if (compare(key, bestKey) < 0)
+            {
+                best = transform;
+                bestKey = key;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Is every cell part of an L/R or T/B domino?
+     *
+     * @param puzzle the puzzle
+     * @return true if the grid can be mirrored and transposed as is
+     */
+    private static boolean isTiled(MagnetsPuzzle puzzle) {
+        int rows = puzzle.getRows();
+        int cols = puzzle.getCols();
+        for (int row = 0; row < rows; row++)
+            for (int col = 0; col < cols; col++)
+            {
+                char pair = puzzle.getPair(row, col);
+                boolean tiled;
+                if (pair == MagnetsPuzzle.LEFT)
+                    tiled = col + 1 < cols && puzzle.getPair(row, col + 1) == MagnetsPuzzle.RIGHT;
+                else if (pair == MagnetsPuzzle.RIGHT)
+                    tiled = col > 0 && puzzle.getPair(row, col - 1) == MagnetsPuzzle.LEFT;
+                else if (pair == MagnetsPuzzle.TOP)
+                    tiled = row + 1 < rows && puzzle.getPair(row + 1, col) == MagnetsPuzzle.BOTTOM;
+                else
+                    tiled = row > 0 && puzzle.getPair(row - 1, col) == MagnetsPuzzle.TOP;
+                if (!tiled)
+                    return false;
+            }
+        return true;
+    }
+
+    /**
+     * Build the key of a puzzle under a transform: the rows and columns,
+     * the pos row, pos col, neg row and neg col counts (plus one, so an
+     * ignored count is 0), and the pairs in row-major order.
+     *
+     * @param puzzle the puzzle
+     * @param transform the transform
+     * @return the key of the transformed puzzle
+     */
+    private static char[] key(MagnetsPuzzle puzzle, int transform) {
+        boolean transposed = (transform & TRANSPOSE) != 0;
+        int rows = transposed ? puzzle.getCols() : puzzle.getRows();
+        int cols = transposed ? puzzle.getRows() : puzzle.getCols();
+        char[] key = new char[2 + 2 * rows + 2 * cols + rows * cols];
+        int k = 0;
+        key[k++] = (char) rows;
+        key[k++] = (char) cols;
+        for (boolean pos : new boolean[] {true, false})
+        {
+            for (int row = 0; row < rows; row++)
+                key[k++] = (char) (count(puzzle, transform, pos, true, row) + 1);
+            for (int col = 0; col < cols; col++)
+                key[k++] = (char) (count(puzzle, transform, pos, false, col) + 1);
+        }
+        for (int row = 0; row < rows; row++)
+            for (int col = 0; col < cols; col++)
+            {
+                int cell = source(puzzle, transform, row, col);
+                key[k++] = pair(puzzle.getPair(cell / puzzle.getCols(), cell % puzzle.getCols()), transform);
+            }
+        return key;
+    }
+
+    /**
+     * Get a count of a transformed puzzle.
+     *
+     * @param puzzle the puzzle
+     * @param transform the transform
+     * @param pos the pos count, or the neg count
+     * @param row a row count, or a column count
+     * @param index the row or column of the transformed puzzle
+     * @return the count of the original puzzle it comes from
+     */
+    private static int count(MagnetsPuzzle puzzle, int transform, boolean pos, boolean row, int index) {
+        boolean transposed = (transform & TRANSPOSE) != 0;
+        int rows = transposed ? puzzle.getCols() : puzzle.getRows();
+        int cols = transposed ? puzzle.getRows() : puzzle.getCols();
+        if (row && (transform & FLIP_ROWS) != 0)
+            index = rows - 1 - index;
+        else if (!row && (transform & FLIP_COLS) != 0)
+            index = cols - 1 - index;
+        if ((transform & SWAP) != 0)
+            pos = !pos;
+        if (row != transposed)
+            return pos ? puzzle.getPosRowCount(index) : puzzle.getNegRowCount(index);
+        return pos ? puzzle.getPosColCount(index) : puzzle.getNegColCount(index);
+    }
+
+    /**
+     * Find the cell of the original puzzle that a cell of a transformed
+     * puzzle comes from.
+     *
+     * @param puzzle the original puzzle
+     * @param transform the transform
+     * @param row the row of the transformed puzzle
+     * @param col the column of the transformed puzzle
+     * @return the original cell, as row * cols + col
+     */
+    private static int source(MagnetsPuzzle puzzle, int transform, int row, int col) {
+        boolean transposed = (transform & TRANSPOSE) != 0;
+        if ((transform & FLIP_ROWS) != 0)
+            row = (transposed ? puzzle.getCols() : puzzle.getRows()) - 1 - row;
+        if ((transform & FLIP_COLS) != 0)
+            col = (transposed ? puzzle.getRows() : puzzle.getCols()) - 1 - col;
+        return transposed ? col * puzzle.getCols() + row : row * puzzle.getCols() + col;
+    }
+
+    /**
+     * Transform a pair: transposing turns L/R into T/B and back, and
+     * mirroring swaps the ends of the pairs it reverses.
+     *
+     * @param pair L, R, T or B
+     * @param transform the transform
+     * @return the pair in the transformed puzzle
+     */
+    private static char pair(char pair, int transform) {
+        if ((transform & TRANSPOSE) != 0)
+            pair = pair == MagnetsPuzzle.LEFT ? MagnetsPuzzle.TOP
+                    : pair == MagnetsPuzzle.RIGHT ? MagnetsPuzzle.BOTTOM
+                    : pair == MagnetsPuzzle.TOP ? MagnetsPuzzle.LEFT : MagnetsPuzzle.RIGHT;
+        if ((transform & FLIP_ROWS) != 0 && (pair == MagnetsPuzzle.TOP || pair == MagnetsPuzzle.BOTTOM))
+            pair = pair == MagnetsPuzzle.TOP ? MagnetsPuzzle.BOTTOM : MagnetsPuzzle.TOP;
+        if ((transform & FLIP_COLS) != 0 && (pair == MagnetsPuzzle.LEFT || pair == MagnetsPuzzle.RIGHT))
+            pair = pair == MagnetsPuzzle.LEFT ? MagnetsPuzzle.RIGHT : MagnetsPuzzle.LEFT;
+        return pair;
+    }
+
+    /**
+     * Swap the polarity of a value if the transform does.
+     *
+     * @param val +, - or X
+     * @param transform the transform
+     * @return the value in the transformed puzzle
+     */
+    private static char swap(char val, int transform) {
+        if ((transform & SWAP) == 0)
+            return val;
+        return val == '+' ? '-' : val == '-' ? '+' : val;
+    }
+
+    /**
+     * Compare two keys, shorter keys first.
+     *
+     * @param a a key
+     * @param b another key
+     * @return negative, zero or positive as a is less than, equal to or
+     *  greater than b
+     */
+    private static int compare(char[] a, char[] b) {
+        if (a.length != b.length)
+            return a.length - b.length;
+        for (int i = 0; i < a.length; i++)
+            if (a[i] != b[i])
+                return a[i] - b[i];
+        return 0;
+    }
+
+    /**
+     * Write a key as a puzzle file.
+     *
+     * @param key the key of a canonical puzzle
+     * @return the lines of the puzzle file
+     */
+    private static String text(String key) {
+        int rows = key.charAt(0);
+        int cols = key.charAt(1);
+        StringBuilder out = new StringBuilder();
+        out.append(rows).append(' ').append(cols).append('\n');
+        int k = 2;
+        // the key has pos row, pos col, neg row, neg col; the file has the same
+        for (int line = 0; line < 4; line++)
+        {
+            int length = line % 2 == 0 ? rows : cols;
+            for (int i = 0; i < length; i++)
+                out.append(i == 0 ? "" : " ").append(key.charAt(k++) - 1);
+            out.append('\n');
+        }
+        for (int row = 0; row < rows; row++)
+        {
+            for (int col = 0; col < cols; col++)
+                out.append(col == 0 ? "" : " ").append(key.charAt(k++));
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Get the disk file of a canonical puzzle.
+     *
+     * @param text the canonical puzzle file
+     * @return the file, named by the SHA-256 of the puzzle
+     */
+    private Path file(String text) {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : hash)
+                name.append(String.format("%02x", b));
+            return directory.resolve(name.append(".txt").toString());
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read a canonical solution from the disk tier.
+     *
+     * @param key the key of the canonical puzzle
+     * @return the solution, UNSOLVABLE, or null if it is not on disk or
+     *  the file is not for this puzzle
+     */
+    private char[][] read(String key) {
+        if (directory == null)
+            return null;
+        String text = text(key);
+        Path file = file(text);
+        if (!Files.exists(file))
+            return null;
+        try
+        {
+            String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            if (!content.startsWith(text))
+                return null;
+            List<String> lines = List.of(content.substring(text.length()).split("\n"));
+            if (lines.size() == 1 && lines.get(0).equals(NO_SOLUTION))
+                return UNSOLVABLE;
+            int rows = key.charAt(0);
+            int cols = key.charAt(1);
+            if (lines.size() != rows)
+                return null;
+            char[][] canon = new char[rows][cols];
+            for (int row = 0; row < rows; row++)
+            {
+                String[] values = lines.get(row).split(" ");
+                if (values.length != cols)
+                    return null;
+                for (int col = 0; col < cols; col++)
+                    canon[row][col] = values[col].charAt(0);
+            }
+            return canon;
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Write a canonical solution to the disk tier, through a temporary
+     * file so that readers never see half of one.
+     *
+     * @param key the key of the canonical puzzle
+     * @param canon the solution, or UNSOLVABLE
+     */
+    private void write(String key, char[][] canon) {
+        if (directory == null)
+            return;
+        String text = text(key);
+        StringBuilder out = new StringBuilder(text);
+        if (canon == UNSOLVABLE)
+            out.append(NO_SOLUTION).append('\n');
+        for (char[] row : canon)
+        {
+            for (int col = 0; col < row.length; col++)
+                out.append(col == 0 ? "" : " ").append(row[col]);
+            out.append('\n');
+        }
+        Path file = file(text);
+        Path temp = null;
+        try
+        {
+            temp = Files.createTempFile(directory, "solution", ".tmp");
+            Files.write(temp, out.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            // the solution is still in memory
+            try
+            {
+                if (temp != null)
+                    Files.deleteIfExists(temp);
+            }
+            catch (IOException ignored)
+            {
+                // nothing more can be done
+            }
+        }
+    }
+
+    /**
+     * Get the number of lookups answered from memory.
+     *
+     * @return the hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups answered from disk.
+     *
+     * @return the disk hits
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * Get the number of lookups that found nothing.
+     *
+     * @return the misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Solution cache: " + hits + " hits, " + diskHits + " disk hits, " + misses + " misses, "
+                + entries.size() + " in memory";
+    }
+}
@@ -0,0 +1,176 @@
+package magnets;
+
+import backtracking.BinaryTraceReader;
+import backtracking.SearchListener;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Reads a trace file written with -Dmagnets.trace and prints what the
+ * search did, offline.  Run it as:
+ *
+ *   java magnets.MagnetsTraceTool trace summary|events|replay [puzzle]
+ *
+ * - summary: the events of each kind, and how many were at each depth
+ * - events: every event, with its cell as (row, col) if the puzzle is given
+ * - replay: follow the search path and print the board at every goal,
+ *   and where the trace ends; the puzzle is needed for its size
+ *
+ * The trace holds the cell and value of each move, so the domino engines
+ * only show the first cell of every domino, and the propagate engines do
+ * not show the cells propagation filled in.  A sampled trace may also
+ * leave stale cells on a replayed board.
+ *
+ * @author Jerry Chen
+ */
+public class MagnetsTraceTool {
+    /**
+     * Run the tool.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3
+                || (args[1].equals("replay") && args.length < 3)) {
+            System.out.println("Usage: java magnets.MagnetsTraceTool trace summary|events|replay [puzzle]");
+            return;
+        }
+        try (BinaryTraceReader in = new BinaryTraceReader(Paths.get(args[0]))) {
+            MagnetsPuzzle puzzle = args.length == 3 ? MagnetsPuzzle.read(args[2]) : null;
+            switch (args[1]) {
+                case "summary":
+                    System.out.print(summary(in));
+                    break;
+                case "events":
+                    events(in, puzzle);
+                    break;
+                case "replay":
+                    replay(in, puzzle);
+                    break;
+                default:
+                    System.out.println("Unknown command: " + args[1]);
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Count the events of a trace by kind and by depth.
+     *
+     * @param in the trace
+     * @return the summary, ready to print
+     * @throws IOException if the trace cannot be read
+     */
+    static String summary(BinaryTraceReader in) throws IOException {
+        long[] kinds = new long[SearchListener.Kind.values().length];
+        long[] depths = new long[16];
+        int maxDepth = 0;
+        while (in.next()) {
+            kinds[in.getKind().ordinal()]++;
+            int depth = in.getDepth();
+            if (depth >= depths.length) {
+                depths = Arrays.copyOf(depths, Math.max(depths.length * 2, depth + 1));
+            }
+            depths[depth]++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        String nl = System.lineSeparator();
+        StringBuilder out = new StringBuilder();
+        for (SearchListener.Kind kind : SearchListener.Kind.values()) {
+            out.append(String.format("%-8s %d", kind, kinds[kind.ordinal()])).append(nl);
+        }
+        out.append("Max depth: ").append(maxDepth).append(nl);
+        out.append("depth  events").append(nl);
+        for (int depth = 0; depth <= maxDepth; depth++) {
+            out.append(String.format("%5d  %d", depth, depths[depth])).append(nl);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Print every event of a trace.
+     *
+     * @param in the trace
+     * @param puzzle the puzzle, to show cells as (row, col), or null
+     * @throws IOException if the trace cannot be read
+     */
+    private static void events(BinaryTraceReader in, MagnetsPuzzle puzzle) throws IOException {
+        while (in.next()) {
+            int position = in.getPosition();
+            String cell;
+            if (position < 0) {
+                cell = "-";
+            } else if (puzzle != null) {
+                cell = "(" + position / puzzle.getCols() + ", " + position % puzzle.getCols() + ")";
+            } else {
+                cell = Integer.toString(position);
+            }
+            String value = in.getValue() == 0 ? "-" : String.valueOf((char) in.getValue());
+            System.out.println(in.getKind() + " " + in.getDepth() + " " + cell + " " + value);
+        }
+    }
+
+    /**
+     * Follow the search path of a trace, printing the board at every goal
+     * and where the trace ends.
+     *
+     * @param in the trace
+     * @param puzzle the puzzle the trace was recorded on
+     * @throws IOException if the trace cannot be read
+     */
+    private static void replay(BinaryTraceReader in, MagnetsPuzzle puzzle) throws IOException {
+        int cols = puzzle.getCols();
+        char[] board = new char[puzzle.getRows() * cols];
+        Arrays.fill(board, '.');
+        // the cell set at each depth of the current path, or -1
+        int[] path = new int[16];
+        int top = 0;
+        long events = 0;
+        while (in.next()) {
+            events++;
+            int depth = in.getDepth();
+            // a move at this depth replaces the path from here down
+            while (top > depth) {
+                top--;
+                if (path[top] >= 0) {
+                    board[path[top]] = '.';
+                }
+            }
+            int position = in.getPosition();
+            if (position >= 0 && position < board.length) {
+                board[position] = (char) in.getValue();
+            }
+            if (depth >= path.length) {
+                path = Arrays.copyOf(path, Math.max(path.length * 2, depth + 1));
+            }
+            while (top <= depth) {
+                path[top++] = -1;
+            }
+            path[depth] = position < board.length ? position : -1;
+            if (in.getKind() == SearchListener.Kind.GOAL) {
+                System.out.println("Goal at event " + events + ", depth " + depth + ":");
+                System.out.print(render(board, cols));
+            }
+        }
+        System.out.println("End of trace after " + events + " events:");
+        System.out.print(render(board, cols));
+    }
+
+    /**
+     * Draw a replayed board, one row per line.
+     *
+     * @param board the cells in row-major order
+     * @param cols the number of columns
+     * @return the board, ready to print
+     */
+    private static String render(char[] board, int cols) {
+        StringBuilder out = new StringBuilder();
+        for (int cell = 0; cell < board.length; cell++) {
+            out.append(board[cell]).append(cell % cols == cols - 1 ? System.lineSeparator() : " ");
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package magnets;
+
+import java.util.SplittableRandom;
+
+/**
+ * A domino ordering that picks the undecided domino with the fewest
+ * orientations left, like DominoOrderings.MOST_CONSTRAINED, but breaks
+ * ties at random instead of in row-major order.  Runs with different
+ * seeds branch on different dominoes first, which is what a portfolio
+ * with restarts needs to get away from a bad early choice.
+ *
+ * An ordering keeps its own random generator, so it must only be used by
+ * one search at a time.
+ *
+ * @author Jerry Chen
+ */
+public class RandomizedOrdering implements DominoOrdering {
+    /** draws the ties */
+    private final SplittableRandom random;
+
+    /**
+     * Create an ordering.
+     *
+     * @param seed the seed of the ties
+     */
+    public RandomizedOrdering(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Choose an undecided domino with the fewest orientations left, each
+     * of the tied dominoes being equally likely.
+     *
+     * @param puzzle the puzzle being solved
+     * @param domains the orientations each domino can still take
+     * @return the domino, or -1 if every domino is decided
+     */
+    @Override
+    public int select(MagnetsPuzzle puzzle, byte[] domains) {
+        int best = -1;
+        int bestSize = Integer.MAX_VALUE;
+        int ties = 0;
+        for (int d = 0; d < domains.length; d++)
+        {
+            int size = Integer.bitCount(domains[d]);
+            if (size <= 1 || size > bestSize)
+                continue;
+            if (size < bestSize)
+            {
+                bestSize = size;
+                ties = 0;
+            }
+            // keep each of the ties seen so far with the same chance
+            if (random.nextInt(++ties) == 0)
+                best = d;
+        }
+        return best;
+    }
+}
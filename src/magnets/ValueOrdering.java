@@ -0,0 +1,123 @@
+package magnets;
+
+/**
+ * The order in which a search tries the values of a cell, or the
+ * orientations of a domino.
+ *
+ * @author Jerry Chen
+ */
+public enum ValueOrdering {
+    /** always +, then -, then blank */
+    FIXED,
+
+    /**
+     * The value that leaves the most ways to meet the counts of its rows
+     * and columns first.  A line that needs p more + cells among its l
+     * empty cells keeps p / l of its ways to be filled in when a cell
+     * takes +, and likewise for - and for blanks, so a cell in a row that
+     * needs no more + cells, or that needs a magnet in every cell left,
+     * tries the value that still fits first.  The lines are taken to be
+     * independent, so the shares of the row and column of a cell, and of
+     * both cells of a domino, are multiplied.  A count the puzzle ignores
+     * gives every value it depends on a share of 1/3.  Ties keep the
+     * FIXED order.
+     */
+    SLACK;
+
+    /** the index of + in a move order */
+    final static int POS = 0;
+    /** the index of - in a move order */
+    final static int NEG = 1;
+    /** the index of blank in a move order */
+    final static int BLANK = 2;
+    /** the FIXED order of the three moves */
+    private final static int[] FIXED_ORDER = {POS, NEG, BLANK};
+    /** the share of a value whose count is ignored */
+    private final static double UNKNOWN = 1.0 / 3;
+
+    /**
+     * Get how well a value fits an empty cell of a line: the log of the
+     * share of the line's ways to meet its counts that the value keeps.
+     * Logs let the shares of several lines be multiplied by adding them.
+     *
+     * @param posExpected the + count from the puzzle, or IGNORED
+     * @param negExpected the - count from the puzzle, or IGNORED
+     * @param posCount the number of + cells so far
+     * @param negCount the number of - cells so far
+     * @param left the number of cells still empty in the line, counting
+     *  the cell itself
+     * @param value POS, NEG or BLANK
+     * @return the log of the share, negative infinity if the value cannot
+     *  meet the counts
+     */
+    static double fit(int posExpected, int negExpected, int posCount, int negCount, int left, int value) {
+        boolean posKnown = posExpected != MagnetsPuzzle.IGNORED;
+        boolean negKnown = negExpected != MagnetsPuzzle.IGNORED;
+        int posNeeded = posExpected - posCount;
+        int negNeeded = negExpected - negCount;
+        double share;
+        switch (value)
+        {
+            case POS:
+                share = posKnown ? (double) posNeeded / left : UNKNOWN;
+                break;
+            case NEG:
+                share = negKnown ? (double) negNeeded / left : UNKNOWN;
+                break;
+            default:
+                share = posKnown && negKnown ? (double) (left - posNeeded - negNeeded) / left : UNKNOWN;
+                break;
+        }
+        return Math.log(Math.max(share, 0));
+    }
+
+    /**
+     * Order the three moves by how well they fit, best first.
+     *
+     * @param fit the fit of POS, NEG and BLANK
+     * @return the move indices in the order to try them
+     */
+    static int[] order(double[] fit) {
+        return order(fit, new int[FIXED_ORDER.length]);
+    }
+
+    /**
+     * Order the three moves by how well they fit, best first, into an
+     * array the caller keeps, so nothing is allocated.
+     *
+     * @param fit the fit of POS, NEG and BLANK
+     * @param order where to put the move indices, in the order to try them
+     * @return order
+     */
+    static int[] order(double[] fit, int[] order) {
+        System.arraycopy(FIXED_ORDER, 0, order, 0, FIXED_ORDER.length);
+        // an insertion sort of three keeps ties in the FIXED order
+        for (int i = 1; i < order.length; i++)
+            for (int j = i; j > 0 && fit[order[j]] > fit[order[j - 1]]; j--)
+            {
+                int swap = order[j];
+                order[j] = order[j - 1];
+                order[j - 1] = swap;
+            }
+        return order;
+    }
+
+    /**
+     * Get the value the other cell of a domino takes.
+     *
+     * @param value POS, NEG or BLANK
+     * @return NEG, POS or BLANK
+     */
+    static int opposite(int value) {
+        return value == BLANK ? BLANK : NEG - value;
+    }
+
+    /**
+     * Get the FIXED order of the three moves.
+     *
+     * @return +, - then blank; the array must not be changed
+     */
+    static int[] fixedOrder() {
+        return FIXED_ORDER;
+    }
+}
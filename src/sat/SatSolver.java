@@ -0,0 +1,840 @@
+package sat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A self-contained conflict-driven clause learning (CDCL) SAT solver.
+ * Variables are numbered from 1 and literals are given DIMACS style, as
+ * the variable for true and its negation for false.
+ *
+ * The search is the usual one:
+ * - unit propagation over two watched literals per clause
+ * - on a conflict, a clause is learned at the first unique implication
+ *   point, minimised, and the search jumps back to the second highest
+ *   decision level in it instead of just undoing the last decision
+ * - variables are picked by VSIDS activity, with their last value kept
+ *   (phase saving)
+ * - the search restarts after a Luby sequence of conflicts, and the less
+ *   active half of the learned clauses is dropped now and then
+ *
+ * Clauses can be added between calls to solve(), for example to block a
+ * solution and look for another one.  solveLimited() gives up when asked
+ * to, such as when a deadline passes, and keeps what it learned so a
+ * later call picks up from there.
+ *
+ * @author Jerry Chen
+ */
+public class SatSolver {
+    /** the value of an unassigned variable or literal */
+    private final static byte UNDEF = 0;
+    /** the value of a true variable or literal */
+    private final static byte TRUE = 1;
+    /** the value of a false variable or literal */
+    private final static byte FALSE = -1;
+    /** how much variable activities fade after each conflict */
+    private final static double VAR_DECAY = 0.95;
+    /** how much learned clause activities fade after each conflict */
+    private final static double CLAUSE_DECAY = 0.999;
+    /** the conflicts in one unit of the Luby restart sequence */
+    private final static int RESTART_UNIT = 100;
+    /** the number of learned clauses kept before the first clean up */
+    private final static int MIN_LEARNTS = 2000;
+    /** what search() returns when it was asked to stop */
+    private final static int STOPPED = 2;
+    /** the initial room for variables */
+    private final static int INITIAL_CAPACITY = 64;
+
+    /** the number of variables */
+    private int numVars;
+    /** false once the clauses are known to be unsatisfiable */
+    private boolean ok;
+    /** the value of each variable */
+    private byte[] value;
+    /** the decision level each variable was assigned at */
+    private int[] level;
+    /** the clause that implied each variable, or null for a decision */
+    private Clause[] reason;
+    /** the clauses watching each literal, indexed by internal literal */
+    private Watches[] watches;
+    /** the literals assigned so far, in order */
+    private int[] trail;
+    /** the number of literals on the trail */
+    private int trailSize;
+    /** the next trail entry to propagate */
+    private int qhead;
+    /** the trail size at the start of each decision level */
+    private int[] trailLim;
+    /** the current decision level */
+    private int decisionLevel;
+    /** the VSIDS activity of each variable */
+    private double[] activity;
+    /** the amount a variable's activity is bumped by */
+    private double varInc;
+    /** the amount a learned clause's activity is bumped by */
+    private double clauseInc;
+    /** the last value of each variable, tried first when it is decided */
+    private boolean[] polarity;
+    /** scratch marks for conflict analysis */
+    private boolean[] seen;
+    /** the unassigned variables, most active first */
+    private final VarHeap order;
+    /** the number of problem clauses */
+    private int clauseCount;
+    /** the learned clauses still kept */
+    private final List<Clause> learnts;
+    /** the learned clauses kept before the next clean up */
+    private double maxLearnts;
+    /** the values of the last solution found */
+    private boolean[] model;
+    private long conflicts;
+    private long decisions;
+    private long propagations;
+    private long restarts;
+
+    /**
+     * Create a solver with no variables or clauses.
+     */
+    public SatSolver() {
+        this.ok = true;
+        this.value = new byte[INITIAL_CAPACITY];
+        this.level = new int[INITIAL_CAPACITY];
+        this.reason = new Clause[INITIAL_CAPACITY];
+        this.watches = new Watches[2 * INITIAL_CAPACITY];
+        this.trail = new int[INITIAL_CAPACITY];
+        this.trailLim = new int[INITIAL_CAPACITY];
+        this.activity = new double[INITIAL_CAPACITY];
+        this.polarity = new boolean[INITIAL_CAPACITY];
+        this.seen = new boolean[INITIAL_CAPACITY];
+        this.varInc = 1;
+        this.clauseInc = 1;
+        this.order = new VarHeap();
+        this.learnts = new ArrayList<>();
+        this.model = new boolean[0];
+    }
+
+    /**
+     * Add a new variable.
+     *
+     * @return its number, starting at 1
+     */
+    public int newVariable() {
+        if (numVars == value.length) {
+            int capacity = 2 * value.length;
+            value = Arrays.copyOf(value, capacity);
+            level = Arrays.copyOf(level, capacity);
+            reason = Arrays.copyOf(reason, capacity);
+            watches = Arrays.copyOf(watches, 2 * capacity);
+            trail = Arrays.copyOf(trail, capacity);
+            trailLim = Arrays.copyOf(trailLim, capacity);
+            activity = Arrays.copyOf(activity, capacity);
+            polarity = Arrays.copyOf(polarity, capacity);
+            seen = Arrays.copyOf(seen, capacity);
+        }
+        int v = numVars++;
+        watches[2 * v] = new Watches();
+        watches[2 * v + 1] = new Watches();
+        order.insert(v);
+        return v + 1;
+    }
+
+    /**
+     * Get the number of variables.
+     *
+     * @return the number of variables
+     */
+    public int getVariableCount() {
+        return numVars;
+    }
+
+    /**
+     * Add a clause: at least one of its literals must be true.  Duplicate
+     * literals are dropped, and a clause holding a literal and its
+     * negation is ignored.  Clauses may only be added outside of solve().
+     *
+     * @param literals the literals, each a variable or its negation
+     * @return false if the clauses are now known to be unsatisfiable
+     * @throws IllegalArgumentException if a literal is 0 or names a
+     *  variable that does not exist
+     */
+    public boolean addClause(int... literals) {
+        int[] lits = new int[literals.length];
+        for (int i = 0; i < literals.length; i++) {
+            int var = Math.abs(literals[i]);
+            if (var == 0 || var > numVars) {
+                throw new IllegalArgumentException("No such variable: " + literals[i]);
+            }
+            lits[i] = toInternal(literals[i]);
+        }
+        if (!ok) {
+            return false;
+        }
+        // sort so duplicates and opposite literals end up next to each other
+        Arrays.sort(lits);
+        int size = 0;
+        for (int i = 0; i < lits.length; i++) {
+            int lit = lits[i];
+            if (litValue(lit) == TRUE || (size > 0 && lits[size - 1] == (lit ^ 1))) {
+                return true;  // already satisfied, or always true
+            }
+            if (litValue(lit) != FALSE && (size == 0 || lits[size - 1] != lit)) {
+                lits[size++] = lit;
+            }
+        }
+        if (size == 0) {
+            ok = false;
+        } else if (size == 1) {
+            enqueue(lits[0], null);
+            ok = propagate() == null;
+        } else {
+            attach(new Clause(Arrays.copyOf(lits, size), false));
+            clauseCount++;
+        }
+        return ok;
+    }
+
+    /**
+     * Search for an assignment that satisfies every clause.
+     *
+     * @return true if one was found, false if the clauses are unsatisfiable
+     */
+    public boolean solve() {
+        return solveLimited(null);
+    }
+
+    /**
+     * Search for an assignment that satisfies every clause, giving up when
+     * a condition holds.  The condition is checked after every conflict.
+     *
+     * @param stop says when to give up, or null to never give up
+     * @return true if an assignment was found, false if the clauses are
+     *  unsatisfiable, or null if the search gave up first
+     */
+    public Boolean solveLimited(BooleanSupplier stop) {
+        if (!ok) {
+            return false;
+        }
+        maxLearnts = Math.max(MIN_LEARNTS, clauseCount / 3.0);
+        for (int restart = 0; ; restart++) {
+            int status = search(luby(restart) * RESTART_UNIT, stop);
+            if (status == STOPPED) {
+                return null;
+            }
+            if (status != 0) {
+                return status > 0;
+            }
+            restarts++;
+        }
+    }
+
+    /**
+     * Get the value of a variable in the last solution found.
+     *
+     * @param var the variable, starting at 1
+     * @return its value
+     * @throws IllegalStateException if no solution has been found
+     */
+    public boolean getValue(int var) {
+        if (var > model.length) {
+            throw new IllegalStateException("No solution for variable " + var);
+        }
+        return model[var - 1];
+    }
+
+    /**
+     * Turn a DIMACS literal into the internal form: twice the variable's
+     * index, plus one if the literal is negated.
+     *
+     * @param literal the variable or its negation
+     * @return the internal literal
+     */
+    private static int toInternal(int literal) {
+        return literal > 0 ? 2 * (literal - 1) : 2 * (-literal - 1) + 1;
+    }
+
+    /**
+     * Get the value of an internal literal.
+     *
+     * @param lit the literal
+     * @return TRUE, FALSE or UNDEF
+     */
+    private byte litValue(int lit) {
+        byte v = value[lit >> 1];
+        return (lit & 1) == 0 ? v : (byte) -v;
+    }
+
+    /**
+     * Make a literal true at the current decision level.
+     *
+     * @param lit the literal
+     * @param from the clause that implied it, or null for a decision
+     */
+    private void enqueue(int lit, Clause from) {
+        int v = lit >> 1;
+        value[v] = (lit & 1) == 0 ? TRUE : FALSE;
+        level[v] = decisionLevel;
+        reason[v] = from;
+        trail[trailSize++] = lit;
+    }
+
+    /**
+     * Watch the first two literals of a clause.
+     *
+     * @param c the clause, at least two literals long
+     */
+    private void attach(Clause c) {
+        watches[c.lits[0]].add(c);
+        watches[c.lits[1]].add(c);
+    }
+
+    /**
+     * Propagate every literal on the trail that has not been propagated
+     * yet.  A clause that watches a literal which has become false looks
+     * for another literal to watch; if there is none, its other watched
+     * literal is implied, or the clause is a conflict.
+     *
+     * @return the conflicting clause, or null if there is none
+     */
+    private Clause propagate() {
+        while (qhead < trailSize) {
+            int falseLit = trail[qhead++] ^ 1;
+            propagations++;
+            Watches ws = watches[falseLit];
+            Clause[] cs = ws.clauses;
+            int n = ws.size;
+            int i = 0;
+            int j = 0;
+            while (i < n) {
+                Clause c = cs[i++];
+                if (c.deleted) {
+                    continue;  // drop the watch of a forgotten clause
+                }
+                int[] lits = c.lits;
+                if (lits[0] == falseLit) {
+                    lits[0] = lits[1];
+                    lits[1] = falseLit;
+                }
+                if (litValue(lits[0]) == TRUE) {
+                    cs[j++] = c;
+                    continue;
+                }
+                int k = 2;
+                while (k < lits.length && litValue(lits[k]) == FALSE) {
+                    k++;
+                }
+                if (k < lits.length) {
+                    lits[1] = lits[k];
+                    lits[k] = falseLit;
+                    watches[lits[1]].add(c);
+                    continue;
+                }
+                cs[j++] = c;
+                if (litValue(lits[0]) == FALSE) {
+                    while (i < n) {
+                        cs[j++] = cs[i++];
+                    }
+                    ws.size = j;
+                    qhead = trailSize;
+                    return c;
+                }
+                enqueue(lits[0], c);
+            }
+            ws.size = j;
+        }
+        return null;
+    }
+
+    /**
+     * Search until a solution is found, the clauses are refuted, or the
+     * conflict budget of this restart runs out.
+     *
+     * @param budget the conflicts allowed before restarting
+     * @param stop says when to give up, or null to never give up
+     * @return 1 if satisfiable, -1 if unsatisfiable, 0 to restart, or
+     *  STOPPED to give up
+     */
+    private int search(long budget, BooleanSupplier stop) {
+        long conflictsHere = 0;
+        while (true) {
+            Clause conflict = propagate();
+            if (conflict != null) {
+                conflicts++;
+                conflictsHere++;
+                if (decisionLevel == 0) {
+                    ok = false;
+                    return -1;
+                }
+                int[] learnt = analyze(conflict);
+                cancelUntil(learnt.length == 1 ? 0 : level[learnt[1] >> 1]);
+                if (learnt.length == 1) {
+                    enqueue(learnt[0], null);
+                } else {
+                    Clause c = new Clause(learnt, true);
+                    attach(c);
+                    learnts.add(c);
+                    bumpClause(c);
+                    enqueue(learnt[0], c);
+                }
+                varInc /= VAR_DECAY;
+                clauseInc /= CLAUSE_DECAY;
+                if (stop != null && stop.getAsBoolean()) {
+                    cancelUntil(0);
+                    return STOPPED;
+                }
+            } else {
+                if (conflictsHere >= budget) {
+                    cancelUntil(0);
+                    return 0;
+                }
+                if (learnts.size() - trailSize >= maxLearnts) {
+                    reduceLearnts();
+                }
+                int v = pickBranchVariable();
+                if (v < 0) {
+                    model = new boolean[numVars];
+                    for (int u = 0; u < numVars; u++) {
+                        model[u] = value[u] == TRUE;
+                    }
+                    cancelUntil(0);
+                    return 1;
+                }
+                decisions++;
+                trailLim[decisionLevel++] = trailSize;
+                enqueue(polarity[v] ? 2 * v : 2 * v + 1, null);
+            }
+        }
+    }
+
+    /**
+     * Learn a clause from a conflict, by resolving the conflict with the
+     * reasons of the current level's literals until only one of them is
+     * left (the first unique implication point).  Literals whose reason is
+     * already covered by the rest of the clause are then dropped.
+     *
+     * @param conflict the conflicting clause
+     * @return the learned clause: the negated implication point first,
+     *  then the literal of the highest remaining level
+     */
+    private int[] analyze(Clause conflict) {
+        int[] out = new int[8];
+        int size = 1;  // out[0] is filled in with the implication point
+        int pathCount = 0;
+        int p = -1;
+        int index = trailSize - 1;
+        Clause c = conflict;
+        do {
+            if (c.learnt) {
+                bumpClause(c);
+            }
+            for (int j = p == -1 ? 0 : 1; j < c.lits.length; j++) {
+                int q = c.lits[j];
+                int v = q >> 1;
+                if (!seen[v] && level[v] > 0) {
+                    seen[v] = true;
+                    bumpVariable(v);
+                    if (level[v] >= decisionLevel) {
+                        pathCount++;
+                    } else {
+                        if (size == out.length) {
+                            out = Arrays.copyOf(out, 2 * size);
+                        }
+                        out[size++] = q;
+                    }
+                }
+            }
+            while (!seen[trail[index] >> 1]) {
+                index--;
+            }
+            p = trail[index--];
+            c = reason[p >> 1];
+            seen[p >> 1] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        out[0] = p ^ 1;
+
+        // drop literals implied by the others, then clear the marks
+        int[] learnt = new int[size];
+        learnt[0] = out[0];
+        int kept = 1;
+        for (int i = 1; i < size; i++) {
+            if (!isRedundant(out[i])) {
+                learnt[kept++] = out[i];
+            }
+        }
+        for (int i = 1; i < size; i++) {
+            seen[out[i] >> 1] = false;
+        }
+
+        // watch the literal that will be unassigned last after backjumping
+        int max = 1;
+        for (int i = 2; i < kept; i++) {
+            if (level[learnt[i] >> 1] > level[learnt[max] >> 1]) {
+                max = i;
+            }
+        }
+        if (kept > 1) {
+            int tmp = learnt[1];
+            learnt[1] = learnt[max];
+            learnt[max] = tmp;
+        }
+        return Arrays.copyOf(learnt, kept);
+    }
+
+    /**
+     * Is a literal of a learned clause implied by the others?  It is if it
+     * was propagated by a clause whose other literals are all in the
+     * learned clause or fixed at level 0.
+     *
+     * @param lit a literal of the learned clause, other than the first
+     * @return true if it can be dropped
+     */
+    private boolean isRedundant(int lit) {
+        Clause r = reason[lit >> 1];
+        if (r == null) {
+            return false;
+        }
+        for (int k = 1; k < r.lits.length; k++) {
+            int v = r.lits[k] >> 1;
+            if (!seen[v] && level[v] > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Undo every assignment above a decision level, saving the values
+     * for phase saving.
+     *
+     * @param target the decision level to go back to
+     */
+    private void cancelUntil(int target) {
+        if (decisionLevel <= target) {
+            return;
+        }
+        for (int i = trailSize - 1; i >= trailLim[target]; i--) {
+            int v = trail[i] >> 1;
+            polarity[v] = value[v] == TRUE;
+            value[v] = UNDEF;
+            reason[v] = null;
+            if (!order.contains(v)) {
+                order.insert(v);
+            }
+        }
+        trailSize = trailLim[target];
+        qhead = trailSize;
+        decisionLevel = target;
+    }
+
+    /**
+     * Pick the most active unassigned variable.
+     *
+     * @return the variable's index, or -1 if every variable is assigned
+     */
+    private int pickBranchVariable() {
+        while (!order.isEmpty()) {
+            int v = order.removeMax();
+            if (value[v] == UNDEF) {
+                return v;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Raise the activity of a variable that took part in a conflict.
+     *
+     * @param v the variable's index
+     */
+    private void bumpVariable(int v) {
+        activity[v] += varInc;
+        if (activity[v] > 1e100) {
+            for (int u = 0; u < numVars; u++) {
+                activity[u] *= 1e-100;
+            }
+            varInc *= 1e-100;
+        }
+        if (order.contains(v)) {
+            order.increased(v);
+        }
+    }
+
+    /**
+     * Raise the activity of a learned clause that took part in a conflict.
+     *
+     * @param c the clause
+     */
+    private void bumpClause(Clause c) {
+        c.activity += clauseInc;
+        if (c.activity > 1e20) {
+            for (Clause learnt : learnts) {
+                learnt.activity *= 1e-20;
+            }
+            clauseInc *= 1e-20;
+        }
+    }
+
+    /**
+     * Forget the less active half of the learned clauses.  Binary clauses,
+     * and clauses that are the reason for a current assignment, are kept.
+     */
+    private void reduceLearnts() {
+        learnts.sort(Comparator.comparingDouble(c -> c.activity));
+        int half = learnts.size() / 2;
+        int kept = 0;
+        for (int i = 0; i < learnts.size(); i++) {
+            Clause c = learnts.get(i);
+            boolean locked = reason[c.lits[0] >> 1] == c && litValue(c.lits[0]) == TRUE;
+            if (i < half && c.lits.length > 2 && !locked) {
+                c.deleted = true;
+            } else {
+                learnts.set(kept++, c);
+            }
+        }
+        learnts.subList(kept, learnts.size()).clear();
+        maxLearnts *= 1.1;
+    }
+
+    /**
+     * Get the x-th term of the Luby sequence 1 1 2 1 1 2 4 1 1 2 ...
+     * It paces the restarts of this solver and of the restarting
+     * strategies of backtracking.PortfolioSolver.
+     *
+     * @param x the index, starting at 0
+     * @return the term
+     */
+    public static long luby(long x) {
+        long size = 1;
+        int seq = 0;
+        while (size < x + 1) {
+            seq++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != x) {
+            size = (size - 1) >> 1;
+            seq--;
+            x = x % size;
+        }
+        return 1L << seq;
+    }
+
+    /**
+     * Get the number of conflicts met so far.
+     *
+     * @return the conflicts
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Get the number of decisions made so far.
+     *
+     * @return the decisions
+     */
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Get the number of literals propagated so far.
+     *
+     * @return the propagations
+     */
+    public long getPropagations() {
+        return propagations;
+    }
+
+    /**
+     * Get the number of restarts so far.
+     *
+     * @return the restarts
+     */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * Get the statistics of the solver.
+     *
+     * @return the sizes and counters
+     */
+    @Override
+    public String toString() {
+        return "SAT solver: " + numVars + " variables, " + clauseCount + " clauses, "
+                + learnts.size() + " learned, " + decisions + " decisions, "
+                + conflicts + " conflicts, " + propagations + " propagations, "
+                + restarts + " restarts";
+    }
+
+    /**
+     * A clause, whose first two literals are the watched ones.  Once a
+     * clause implies a literal, that literal is its first.
+     */
+    private static final class Clause {
+        /** the internal literals */
+        final int[] lits;
+        /** was the clause learned from a conflict? */
+        final boolean learnt;
+        /** the activity of a learned clause */
+        double activity;
+        /** has the clause been forgotten? */
+        boolean deleted;
+
+        /**
+         * Create a clause.
+         *
+         * @param lits the internal literals
+         * @param learnt was the clause learned from a conflict?
+         */
+        Clause(int[] lits, boolean learnt) {
+            this.lits = lits;
+            this.learnt = learnt;
+        }
+    }
+
+    /**
+     * A growable list of the clauses watching one literal.
+     */
+    private static final class Watches {
+        /** the clauses, the first size of which are in use */
+        Clause[] clauses = new Clause[4];
+        /** the number of clauses */
+        int size;
+
+        /**
+         * Add a clause to the list.
+         *
+         * @param c the clause
+         */
+        void add(Clause c) {
+            if (size == clauses.length) {
+                clauses = Arrays.copyOf(clauses, 2 * size);
+            }
+            clauses[size++] = c;
+        }
+    }
+
+    /**
+     * A binary max-heap of variables ordered by activity.
+     */
+    private final class VarHeap {
+        /** the variables in heap order */
+        private int[] heap = new int[INITIAL_CAPACITY];
+        /** the number of variables in the heap */
+        private int size;
+        /** the position of each variable in heap, or -1 */
+        private int[] position = new int[0];
+
+        /**
+         * Is a variable in the heap?
+         *
+         * @param v the variable's index
+         * @return true if it is
+         */
+        boolean contains(int v) {
+            return v < position.length && position[v] >= 0;
+        }
+
+        /**
+         * Is the heap empty?
+         *
+         * @return true if it is
+         */
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * Add a variable to the heap.
+         *
+         * @param v the variable's index
+         */
+        void insert(int v) {
+            if (v >= position.length) {
+                int old = position.length;
+                position = Arrays.copyOf(position, Math.max(INITIAL_CAPACITY, 2 * (v + 1)));
+                Arrays.fill(position, old, position.length, -1);
+            }
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, 2 * size);
+            }
+            heap[size] = v;
+            position[v] = size;
+            up(size++);
+        }
+
+        /**
+         * Restore the heap after a variable's activity went up.
+         *
+         * @param v the variable's index
+         */
+        void increased(int v) {
+            up(position[v]);
+        }
+
+        /**
+         * Take the most active variable out of the heap.
+         *
+         * @return the variable's index
+         */
+        int removeMax() {
+            int v = heap[0];
+            heap[0] = heap[--size];
+            position[heap[0]] = 0;
+            position[v] = -1;
+            if (size > 0) {
+                down(0);
+            }
+            return v;
+        }
+
+        /**
+         * Move the variable at a position up until its parent is at least
+         * as active.
+         *
+         * @param i the position
+         */
+        private void up(int i) {
+            int v = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (activity[heap[parent]] >= activity[v]) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                position[heap[i]] = i;
+                i = parent;
+            }
+            heap[i] = v;
+            position[v] = i;
+        }
+
+        /**
+         * Move the variable at a position down until both of its children
+         * are at most as active.
+         *
+         * @param i the position
+         */
+        private void down(int i) {
+            int v = heap[i];
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && activity[heap[child + 1]] > activity[heap[child]]) {
+                    child++;
+                }
+                if (activity[heap[child]] <= activity[v]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                position[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = v;
+            position[v] = i;
+        }
+    }
+}
@@ -0,0 +1,1110 @@
+package test;
+
+import backtracking.Backtracker;
+import backtracking.BinaryTraceReader;
+import backtracking.BinaryTraceWriter;
+import backtracking.CancellationToken;
+import backtracking.Configuration;
+import backtracking.ParallelBacktracker;
+import backtracking.PortfolioSolver;
+import backtracking.SearchLimits;
+import backtracking.SearchListener;
+import backtracking.SearchMetrics;
+import backtracking.SolveResult;
+import backtracking.TranspositionTable;
+import magnets.DominoOrderings;
+import magnets.MagnetsBitboardConfig;
+import magnets.MagnetsBatch;
+import magnets.MagnetsConfig;
+import magnets.MagnetsCorpusReader;
+import magnets.MagnetsCorpusWriter;
+import magnets.MagnetsDominoConfig;
+import magnets.MagnetsGenerator;
+import magnets.MagnetsPackedConfig;
+import magnets.MagnetsPresolver;
+import magnets.MagnetsPropagationConfig;
+import magnets.MagnetsPuzzle;
+import magnets.MagnetsRun;
+import magnets.MagnetsSatEncoder;
+import magnets.MagnetsSolutionCache;
+import magnets.RandomizedOrdering;
+import magnets.ValueOrdering;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import sat.SatSolver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A Junit 5 unit test that checks the different search engines against
+ * the classic recursive backtracker.  The long running puzzles (14 and 16)
+ * are left out to keep the test fast.
+ */
+public class TestMagnetsSolvers {
+    /** the puzzles that every engine is checked against */
+    private static final String[] PUZZLES = {
+            "data/magnets-1.txt", "data/magnets-2.txt", "data/magnets-3.txt",
+            "data/magnets-4.txt", "data/magnets-5.txt", "data/magnets-6.txt",
+            "data/magnets-7.txt", "data/magnets-8.txt", "data/magnets-9.txt",
+            "data/magnets-10.txt", "data/magnets-11.txt", "data/magnets-12.txt",
+            "data/magnets-13.txt", "data/magnets-15.txt", "data/magnets-nosol.txt"
+    };
+
+    /**
+     * A puzzle to check an engine against, with the answer of the
+     * classic recursive backtracker.
+     */
+    static final class Reference {
+        /** the puzzle file */
+        final String filename;
+        /** the puzzle */
+        final MagnetsPuzzle puzzle;
+        /** the solution the recursive backtracker finds */
+        final Optional<Configuration> expected;
+        /** the configurations the recursive backtracker generates */
+        final long configCount;
+        /** the number of solutions */
+        final long count;
+
+        /**
+         * Solve and count a puzzle with the recursive backtracker.
+         *
+         * @param filename the puzzle file
+         * @throws IOException if the puzzle cannot be read
+         */
+        Reference(String filename) throws IOException {
+            this.filename = filename;
+            this.puzzle = MagnetsPuzzle.read(filename);
+            Backtracker recursive = new Backtracker(false);
+            this.expected = recursive.solve(new MagnetsConfig(puzzle));
+            this.configCount = recursive.getConfigCount();
+            this.count = new Backtracker(false).countSolutions(new MagnetsConfig(puzzle), Long.MAX_VALUE);
+        }
+
+        /**
+         * Name the test after the puzzle file.
+         *
+         * @return the puzzle file
+         */
+        @Override
+        public String toString() {
+            return filename;
+        }
+    }
+
+    /** the references of the puzzles, worked out on first use */
+    private static List<Reference> references;
+
+    /**
+     * Get the puzzles every engine is checked against, solving each one
+     * with the recursive backtracker only once for all the tests.
+     *
+     * @return a reference for every puzzle
+     * @throws IOException if a puzzle cannot be read
+     */
+    static synchronized List<Reference> puzzles() throws IOException {
+        if (references == null) {
+            List<Reference> list = new ArrayList<>();
+            for (String filename : PUZZLES) {
+                list.add(new Reference(filename));
+            }
+            references = list;
+        }
+        return references;
+    }
+
+    /**
+     * Make sure two solver results agree, comparing the solved boards.
+     *
+     * @param expected the result of the recursive backtracker
+     * @param actual the result of the engine under test
+     * @param filename the puzzle file, for failure messages
+     */
+    private static void assertSameSolution(Optional<Configuration> expected,
+                                           Optional<Configuration> actual,
+                                           String filename) {
+        assertEquals(expected.isPresent(), actual.isPresent(), filename);
+        if (expected.isPresent()) {
+            assertTrue(actual.get().isGoal(), filename);
+            assertEquals(expected.get().toString(), actual.get().toString(), filename);
+        }
+    }
+
+    /**
+     * Make sure a solver result is a complete board that follows every
+     * rule of the puzzle: pairs hold opposite values, no two neighbours
+     * share a polarity, and every row and column count is met.
+     *
+     * @param puzzle the puzzle that was solved
+     * @param expected the result of the recursive backtracker
+     * @param actual the result of the engine under test
+     * @param filename the puzzle file, for failure messages
+     */
+    private static void assertSolves(MagnetsPuzzle puzzle, Optional<Configuration> expected,
+                                     Optional<Configuration> actual, String filename) {
+        assertEquals(expected.isPresent(), actual.isPresent(), filename);
+        if (actual.isEmpty()) {
+            return;
+        }
+        IMagnetTest board = (IMagnetTest) actual.get();
+        for (int row = 0; row < puzzle.getRows(); row++) {
+            for (int col = 0; col < puzzle.getCols(); col++) {
+                char val = board.getVal(row, col);
+                assertTrue(val == '+' || val == '-' || val == 'X', filename);
+                if (puzzle.getPair(row, col) == 'R') {
+                    assertEquals(opposite(val), board.getVal(row, col - 1), filename);
+                }
+                if (puzzle.getPair(row, col) == 'B') {
+                    assertEquals(opposite(val), board.getVal(row - 1, col), filename);
+                }
+                if (val != 'X' && col > 0) {
+                    assertFalse(val == board.getVal(row, col - 1), filename);
+                }
+                if (val != 'X' && row > 0) {
+                    assertFalse(val == board.getVal(row - 1, col), filename);
+                }
+            }
+        }
+        for (int row = 0; row < puzzle.getRows(); row++) {
+            int pos = 0;
+            int neg = 0;
+            for (int col = 0; col < puzzle.getCols(); col++) {
+                pos += board.getVal(row, col) == '+' ? 1 : 0;
+                neg += board.getVal(row, col) == '-' ? 1 : 0;
+            }
+            assertTrue(puzzle.getPosRowCount(row) == -1 || puzzle.getPosRowCount(row) == pos, filename);
+            assertTrue(puzzle.getNegRowCount(row) == -1 || puzzle.getNegRowCount(row) == neg, filename);
+        }
+        for (int col = 0; col < puzzle.getCols(); col++) {
+            int pos = 0;
+            int neg = 0;
+            for (int row = 0; row < puzzle.getRows(); row++) {
+                pos += board.getVal(row, col) == '+' ? 1 : 0;
+                neg += board.getVal(row, col) == '-' ? 1 : 0;
+            }
+            assertTrue(puzzle.getPosColCount(col) == -1 || puzzle.getPosColCount(col) == pos, filename);
+            assertTrue(puzzle.getNegColCount(col) == -1 || puzzle.getNegColCount(col) == neg, filename);
+        }
+    }
+
+    /**
+     * Get the value the other cell of a pair must hold.
+     *
+     * @param val +, - or X
+     * @return -, + or X
+     */
+    private static char opposite(char val) {
+        return val == '+' ? '-' : val == '-' ? '+' : 'X';
+    }
+
+    /** Test the in-place search finds the same solutions as the recursive search. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testInPlace(Reference ref) {
+        Backtracker inPlace = new Backtracker(false);
+        Optional<Configuration> actual = inPlace.solveInPlace(new MagnetsConfig(ref.puzzle));
+        assertSameSolution(ref.expected, actual, ref.filename);
+        // the recursive search skips invalid values before building them
+        assertTrue(ref.configCount <= inPlace.getConfigCount(), ref.filename);
+    }
+
+    /** Test the iterative searches find the same solutions as the recursive ones. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testIterative(Reference ref) {
+        Backtracker inPlace = new Backtracker(false);
+        Optional<Configuration> expected = inPlace.solveInPlace(new MagnetsConfig(ref.puzzle));
+        Backtracker iterative = new Backtracker(false);
+        Optional<Configuration> actual = iterative.solveIterativeInPlace(new MagnetsConfig(ref.puzzle));
+        assertSameSolution(expected, actual, ref.filename);
+        assertEquals(inPlace.getConfigCount(), iterative.getConfigCount(), ref.filename);
+        Backtracker copying = new Backtracker(false);
+        assertSameSolution(ref.expected, copying.solveIterative(new MagnetsConfig(ref.puzzle)), ref.filename);
+        assertEquals(ref.configCount, copying.getConfigCount(), ref.filename);
+    }
+
+    /** Test the iterative search on a board far deeper than the recursion could go. */
+    @Test
+    public void testIterativeDeep() {
+        final int size = 300;
+        char[][] grid = new char[size][size];
+        int[] posRow = new int[size];
+        int[] negRow = new int[size];
+        int[] ignored = new int[size];
+        Arrays.fill(ignored, -1);
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col += 2) {
+                grid[row][col] = 'L';
+                grid[row][col + 1] = 'R';
+            }
+            // every other row is blank, the rest are full of magnets
+            posRow[row] = row % 2 == 0 ? size / 2 : 0;
+            negRow[row] = posRow[row];
+        }
+        MagnetsPuzzle puzzle = new MagnetsPuzzle(posRow, ignored, negRow, ignored.clone(), grid);
+        MagnetsConfig config = new MagnetsConfig(puzzle);
+        Optional<Configuration> sol = new Backtracker(false).solveIterativeInPlace(config);
+        assertTrue(sol.isPresent());
+        assertEquals(size - 1, config.getCursorRow());
+        assertEquals('X', config.getVal(size - 1, size - 1));
+        assertEquals('+', config.getVal(size - 2, 0));
+    }
+
+    /** Test the domino search finds the same solutions as the cell search. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testDomino(Reference ref) {
+        Optional<Configuration> actual = new Backtracker(false).solve(new MagnetsDominoConfig(ref.puzzle));
+        assertSameSolution(ref.expected, actual, ref.filename);
+    }
+
+    /** Test the bitboard search finds the same solutions as the char[][] search. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testBitboard(Reference ref) {
+        Optional<Configuration> actual = new Backtracker(false).solveInPlace(new MagnetsBitboardConfig(ref.puzzle));
+        assertSameSolution(ref.expected, actual, ref.filename);
+    }
+
+    /** Test the bitboard search on a board wider than one 64 bit word. */
+    @Test
+    public void testWideBitboard() {
+        final int cols = 70;
+        char[][] grid = new char[2][cols];
+        for (int row = 0; row < 2; row++) {
+            for (int col = 0; col < cols; col += 2) {
+                grid[row][col] = 'L';
+                grid[row][col + 1] = 'R';
+            }
+        }
+        int[] rowCounts = {cols / 2, cols / 2};
+        int[] colCounts = new int[cols];
+        Arrays.fill(colCounts, -1);
+        MagnetsPuzzle puzzle = new MagnetsPuzzle(rowCounts, colCounts, rowCounts.clone(), colCounts.clone(), grid);
+        Optional<Configuration> expected = new Backtracker(false).solveInPlace(new MagnetsConfig(puzzle));
+        Optional<Configuration> actual = new Backtracker(false).solveInPlace(new MagnetsBitboardConfig(puzzle));
+        assertSameSolution(expected, actual, "70 columns");
+        assertTrue(actual.isPresent());
+        MagnetsBitboardConfig solution = (MagnetsBitboardConfig) actual.get();
+        assertEquals('+', solution.getVal(0, 64));
+        assertEquals('-', solution.getVal(1, 64));
+    }
+
+    /** Test the parallel search finds valid solutions, including on a small pool. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testParallel(Reference ref) {
+        ParallelBacktracker common = new ParallelBacktracker();
+        assertSolves(ref.puzzle, ref.expected, common.solve(new MagnetsConfig(ref.puzzle)), ref.filename);
+        assertTrue(common.getConfigCount() >= 1, ref.filename);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ParallelBacktracker small = new ParallelBacktracker(pool, 1);
+            assertSolves(ref.puzzle, ref.expected, small.solve(new MagnetsDominoConfig(ref.puzzle)), ref.filename);
+            assertSolves(ref.puzzle, ref.expected, small.solve(new MagnetsPackedConfig(ref.puzzle)), ref.filename);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Test that every way of enumerating or counting solutions agrees. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testCountSolutions(Reference ref) {
+        MagnetsConfig config = new MagnetsConfig(ref.puzzle);
+        MagnetsDominoConfig domino = new MagnetsDominoConfig(ref.puzzle);
+        long count = ref.count;
+        assertEquals(count, new Backtracker(false).solutions(config).count(), ref.filename);
+        assertEquals(count, new Backtracker(false).countSolutionsInPlace(config, Long.MAX_VALUE), ref.filename);
+        assertEquals(count, new Backtracker(false).countSolutions(domino, Long.MAX_VALUE), ref.filename);
+        assertEquals(count, new ParallelBacktracker().countSolutions(domino, Long.MAX_VALUE), ref.filename);
+        assertEquals(count, new ParallelBacktracker().countSolutions(new MagnetsPackedConfig(ref.puzzle),
+                                                                     Long.MAX_VALUE), ref.filename);
+        assertEquals(Math.min(count, 2), new Backtracker(false).countSolutions(config, 2), ref.filename);
+        assertEquals(Math.min(count, 2), new ParallelBacktracker().countSolutions(domino, 2), ref.filename);
+
+        // the first solution enumerated is the one solve() finds
+        Optional<Configuration> first = new Backtracker(false).solutions(config).findFirst();
+        assertSameSolution(ref.expected, first, ref.filename);
+    }
+
+    /** Test that enumeration is lazy and stops at the limit. */
+    @Test
+    public void testSolutionsLimit() throws IOException {
+        MagnetsConfig config = new MagnetsConfig("data/magnets-15.txt");
+        Backtracker all = new Backtracker(false);
+        long count = all.solutions(config).count();
+        Backtracker one = new Backtracker(false);
+        assertEquals(1, one.solutions(config).limit(1).count());
+        assertTrue(count == 1 || one.getConfigCount() < all.getConfigCount());
+    }
+
+    /** Test the propagation search finds valid solutions and counts them all. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testPropagation(Reference ref) {
+        MagnetsPropagationConfig propagation = new MagnetsPropagationConfig(ref.puzzle);
+        assertSolves(ref.puzzle, ref.expected, new Backtracker(false).solve(propagation), ref.filename);
+        assertEquals(ref.count, new Backtracker(false).countSolutions(propagation, Long.MAX_VALUE), ref.filename);
+    }
+
+    /** Test every domino ordering finds a valid solution and the same number of solutions. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testDominoOrderings(Reference ref) {
+        for (DominoOrderings ordering : DominoOrderings.values()) {
+            MagnetsPropagationConfig propagation = new MagnetsPropagationConfig(ref.puzzle, ordering);
+            assertSolves(ref.puzzle, ref.expected, new Backtracker(false).solve(propagation),
+                         ref.filename + " " + ordering);
+            assertEquals(ref.count, new Backtracker(false).countSolutions(propagation, Long.MAX_VALUE),
+                         ref.filename + " " + ordering);
+        }
+    }
+
+    /** Test the packed config searches exactly like MagnetsConfig, also when shared between threads. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testPacked(Reference ref) {
+        MagnetsPackedConfig packed = new MagnetsPackedConfig(ref.puzzle);
+        Backtracker compact = new Backtracker(false);
+        assertSameSolution(ref.expected, compact.solve(packed), ref.filename);
+        assertEquals(ref.configCount, compact.getConfigCount(), ref.filename);
+        assertEquals(ref.count, new Backtracker(false).countSolutions(packed, Long.MAX_VALUE), ref.filename);
+        assertEquals(ref.count, new ParallelBacktracker().countSolutions(packed, Long.MAX_VALUE), ref.filename);
+    }
+
+    /** Test the slack value ordering finds valid solutions, the same number of them, and in place too. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testValueOrdering(Reference ref) {
+        MagnetsConfig slack = new MagnetsConfig(ref.puzzle, ValueOrdering.SLACK);
+        Optional<Configuration> solution = new Backtracker(false).solve(slack);
+        assertSolves(ref.puzzle, ref.expected, solution, ref.filename);
+        assertSameSolution(solution, new Backtracker(false).solveInPlace(
+                new MagnetsConfig(ref.puzzle, ValueOrdering.SLACK)), ref.filename);
+        assertEquals(ref.count, new Backtracker(false).countSolutions(slack, Long.MAX_VALUE), ref.filename);
+        // the in-place moves keep their ranking while the search backs up and down
+        assertEquals(ref.count, new Backtracker(false).countSolutionsInPlace(
+                new MagnetsConfig(ref.puzzle, ValueOrdering.SLACK), Long.MAX_VALUE), ref.filename);
+        MagnetsDominoConfig domino = new MagnetsDominoConfig(ref.puzzle, ValueOrdering.SLACK);
+        assertSolves(ref.puzzle, ref.expected, new Backtracker(false).solve(domino), ref.filename);
+        assertEquals(ref.count, new Backtracker(false).countSolutions(domino, Long.MAX_VALUE), ref.filename);
+    }
+
+    /** Test the counts of magnets-16 steer the slack ordering well clear of its dead ends. */
+    @Test
+    public void testValueOrderingHard() throws IOException {
+        MagnetsPuzzle hard = MagnetsPuzzle.read("data/magnets-16.txt");
+        MagnetsRun fixed = MagnetsRun.run(hard, "recursive", false);
+        MagnetsRun slack = MagnetsRun.run(hard, "slack", false);
+        assertSolves(hard, fixed.getSolution(), slack.getSolution(), "magnets-16");
+        assertTrue(slack.getConfigCount() * 2 < fixed.getConfigCount(),
+                   slack.getConfigCount() + " vs " + fixed.getConfigCount());
+    }
+
+    /** Test the portfolio engine agrees with the recursive search. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testPortfolio(Reference ref) {
+        MagnetsRun run = MagnetsRun.run(ref.puzzle, "portfolio", false);
+        assertSolves(ref.puzzle, ref.expected, run.getSolution(), ref.filename);
+        if (run.getStatistics() instanceof MagnetsPresolver) {
+            // the presolve answers without starting the portfolio
+            assertTrue(((MagnetsPresolver) run.getStatistics()).isInfeasible(), ref.filename);
+        } else {
+            assertTrue(((PortfolioSolver) run.getStatistics()).getWinner() != null, ref.filename);
+        }
+    }
+
+    /** Test the portfolio engine follows the Luby sequence, and restarts and stops as asked. */
+    @Test
+    public void testPortfolioRestarts() throws IOException {
+        long[] luby = {1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1};
+        for (int i = 0; i < luby.length; i++) {
+            assertEquals(luby[i], SatSolver.luby(i));
+        }
+
+        // restarting on every few configurations still gets to the end
+        MagnetsPuzzle hard = MagnetsPuzzle.read("data/magnets-14.txt");
+        PortfolioSolver restarting = new PortfolioSolver(List.of(new PortfolioSolver.Strategy(
+                "random", seed -> new MagnetsPropagationConfig(hard, new RandomizedOrdering(seed)), 4)), 1);
+        SolveResult solved = restarting.solve(SearchLimits.NONE);
+        assertEquals(SolveResult.Status.SOLVED, solved.getStatus());
+        assertSolves(hard, solved.getSolution(), solved.getSolution(), "restarts");
+        assertTrue(restarting.getRestarts() > 0, restarting.toString());
+
+        assertEquals(SolveResult.Status.NODE_LIMIT,
+                     MagnetsRun.run(hard, "portfolio", false, null, SearchLimits.NONE.withMaxNodes(10))
+                             .getStatus());
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        assertEquals(SolveResult.Status.CANCELLED,
+                     MagnetsRun.run(hard, "portfolio", false, null, SearchLimits.NONE.withCancellation(token))
+                             .getStatus());
+    }
+
+    /** Test the presolve keeps every solution, and every engine still solves after it. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testPresolve(Reference ref) {
+        MagnetsPresolver presolved = new MagnetsPresolver(ref.puzzle);
+        assertEquals(ref.expected.isPresent(), !presolved.isInfeasible(), ref.filename);
+        if (ref.expected.isPresent()) {
+            IMagnetTest solution = (IMagnetTest) ref.expected.get();
+            for (int row = 0; row < ref.puzzle.getRows(); row++) {
+                for (int col = 0; col < ref.puzzle.getCols(); col++) {
+                    assertTrue(presolved.isAllowed(row, col, solution.getVal(row, col)), ref.filename);
+                }
+            }
+            assertEquals(ref.count, new Backtracker(false).countSolutions(
+                    new MagnetsConfig(ref.puzzle, ValueOrdering.FIXED, presolved), Long.MAX_VALUE), ref.filename);
+        }
+        for (String engine : List.of("recursive", "memo", "packed", "domino", "bitboard", "propagate", "sat")) {
+            assertSolves(ref.puzzle, ref.expected, MagnetsRun.run(ref.puzzle, engine, false).getSolution(),
+                         ref.filename + " " + engine);
+        }
+    }
+
+    /** Test the presolve forces what the counts force, and rejects impossible counts. */
+    @Test
+    public void testPresolveForced() throws IOException {
+        // magnets-nosol has more + cells in its rows than in its columns
+        MagnetsPuzzle nosol = MagnetsPuzzle.read("data/magnets-nosol.txt");
+        MagnetsRun rejected = MagnetsRun.run(nosol, "recursive", false);
+        assertEquals(SolveResult.Status.UNSOLVABLE, rejected.getStatus());
+        assertEquals(0, rejected.getConfigCount());
+        assertTrue(((MagnetsPresolver) rejected.getStatistics()).isInfeasible());
+        assertEquals(0, MagnetsRun.run(nosol, "count", false).getSolutions());
+        assertThrows(IllegalArgumentException.class, () -> MagnetsRun.run(nosol, "none", false));
+
+        // column 0 needs a + in every other cell and row 1 needs no magnets
+        char[][] grid = new char[3][];
+        for (int row = 0; row < grid.length; row++) {
+            grid[row] = "LRLR".toCharArray();
+        }
+        int[] ignored = {-1, -1, -1, -1};
+        MagnetsPuzzle forced = new MagnetsPuzzle(new int[]{-1, 0, -1}, new int[]{2, -1, -1, -1},
+                                                 new int[]{-1, 0, -1}, ignored, grid);
+        MagnetsPresolver presolved = new MagnetsPresolver(forced);
+        assertFalse(presolved.isInfeasible(), presolved.toString());
+        assertEquals(8, presolved.getForcedCount(), presolved.toString());
+        for (int row = 0; row < 3; row += 2) {
+            assertEquals('+', presolved.getForced(row, 0));
+            assertEquals('-', presolved.getForced(row, 1));
+            assertEquals('.', presolved.getForced(row, 2));
+        }
+        for (int col = 0; col < 4; col++) {
+            assertEquals('X', presolved.getForced(1, col));
+        }
+
+        // a row of 4 cells cannot hold 3 + cells without two of them touching
+        MagnetsPuzzle crowded = new MagnetsPuzzle(new int[]{3, -1, -1}, ignored, new int[]{-1, -1, -1},
+                                                  ignored.clone(), grid);
+        assertTrue(new MagnetsPresolver(crowded).isInfeasible());
+        assertEquals(0, new Backtracker(false).countSolutions(new MagnetsConfig(crowded), Long.MAX_VALUE));
+    }
+
+    /** Test the SAT encoding solves every puzzle. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testSat(Reference ref) {
+        Optional<Configuration> actual = new MagnetsSatEncoder(ref.puzzle).solve();
+        assertSolves(ref.puzzle, ref.expected, actual, ref.filename);
+        actual.ifPresent(sol -> assertTrue(sol.isGoal() && sol.isValid(), ref.filename));
+    }
+
+    /** Test the SAT encoding solves the long running puzzles, and reports its own work. */
+    @Test
+    public void testSatHard() throws IOException {
+        for (String filename : new String[] {"data/magnets-14.txt", "data/magnets-16.txt"}) {
+            MagnetsPuzzle puzzle = MagnetsPuzzle.read(filename);
+            Optional<Configuration> expected = new Backtracker(false).solve(new MagnetsPropagationConfig(puzzle));
+            assertSolves(puzzle, expected, new MagnetsSatEncoder(puzzle).solve(), filename);
+        }
+
+        // the solver's work is in its statistics, not in the configurations
+        MagnetsRun run = MagnetsRun.run(MagnetsPuzzle.read("data/magnets-14.txt"), "sat", false);
+        assertEquals(0, run.getConfigCount());
+        assertTrue(((SatSolver) run.getStatistics()).getDecisions() > 0, run.getStatistics().toString());
+    }
+
+    /** Test the batch mode reports every puzzle in a directory. */
+    @Test
+    public void testBatch() throws IOException {
+        Path report = Files.createTempFile("magnets", ".csv");
+        try {
+            MagnetsBatch.main(new String[] {"data", report.toString(), "sat", "2"});
+            List<String> lines = Files.readAllLines(report);
+            assertEquals("file,engine,status,elapsed_ms,configs", lines.get(0));
+            assertEquals(17, lines.size() - 1);
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(",");
+                assertEquals(fields[0].equals("magnets-nosol.txt") ? "unsolvable" : "solved", fields[2], line);
+            }
+        } finally {
+            Files.delete(report);
+        }
+    }
+
+    /** Test a batch reports the puzzles that run out of time. */
+    @Test
+    public void testBatchTimeout() throws IOException {
+        Path report = Files.createTempFile("magnets", ".csv");
+        try {
+            MagnetsBatch.main(new String[] {"data/magnets-14.txt", report.toString(), "recursive", "1", "0.05"});
+            List<String> lines = Files.readAllLines(report);
+            assertEquals(2, lines.size());
+            assertEquals("timed_out", lines.get(1).split(",")[2]);
+        } finally {
+            Files.delete(report);
+        }
+    }
+
+    /** Test a search under limits tells solved, unsolvable and out of budget apart. */
+    @Test
+    public void testSearchLimits() throws IOException {
+        SearchLimits none = SearchLimits.NONE;
+        SolveResult solved = new Backtracker(false).solve(new MagnetsConfig("data/magnets-8.txt"), none);
+        assertEquals(SolveResult.Status.SOLVED, solved.getStatus());
+        assertTrue(solved.getSolution().isPresent());
+        SolveResult unsolvable = new Backtracker(false).solve(new MagnetsConfig("data/magnets-nosol.txt"),
+                                                              none.withMaxNodes(1_000_000));
+        assertEquals(SolveResult.Status.UNSOLVABLE, unsolvable.getStatus());
+
+        MagnetsPuzzle hard = MagnetsPuzzle.read("data/magnets-14.txt");
+        SolveResult nodes = new Backtracker(false).solve(new MagnetsConfig(hard), none.withMaxNodes(1000));
+        assertEquals(SolveResult.Status.NODE_LIMIT, nodes.getStatus());
+        assertTrue(nodes.getStatus().isBudgetExhausted());
+        assertFalse(nodes.getSolution().isPresent());
+        assertTrue(nodes.getConfigCount() >= 1000 && nodes.getConfigCount() < 1010, nodes.toString());
+
+        SolveResult time = new Backtracker(false).solve(new MagnetsConfig(hard),
+                                                        none.withTimeout(Duration.ofMillis(20)));
+        assertEquals(SolveResult.Status.TIMED_OUT, time.getStatus());
+        // a timeout past the range of nanoTime() is no timeout
+        MagnetsPuzzle easy = MagnetsPuzzle.read("data/magnets-8.txt");
+        SearchLimits forever = none.withTimeout(ChronoUnit.FOREVER.getDuration())
+                .withProgress(ChronoUnit.FOREVER.getDuration(), (count, nanos) -> { });
+        for (String engine : List.of("recursive", "iterative", "sat", "parallel", "portfolio", "count")) {
+            assertEquals(SolveResult.Status.SOLVED,
+                         MagnetsRun.run(easy, engine, false, null, forever).getStatus(), engine);
+        }
+
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        MagnetsConfig config = new MagnetsConfig(hard);
+        String initial = config.toString();
+        SolveResult cancelled = new Backtracker(false).solveInPlace(config, none.withCancellation(token));
+        assertEquals(SolveResult.Status.CANCELLED, cancelled.getStatus());
+        assertEquals(initial, config.toString());
+        SolveResult iterative = new Backtracker(false).solveIterativeInPlace(config, none.withMaxNodes(5000));
+        assertEquals(SolveResult.Status.NODE_LIMIT, iterative.getStatus());
+        assertEquals(initial, config.toString());
+        SolveResult copying = new Backtracker(false).solveIterative(config, none.withMaxNodes(5000));
+        assertEquals(SolveResult.Status.NODE_LIMIT, copying.getStatus());
+        assertTrue(copying.getConfigCount() >= 5000 && copying.getConfigCount() < 5010, copying.toString());
+        assertEquals(SolveResult.Status.TIMED_OUT, new Backtracker(false).solveIterative(
+                new MagnetsConfig(hard), none.withTimeout(Duration.ofMillis(20))).getStatus());
+
+        for (String engine : List.of("iterative", "sat", "parallel", "count")) {
+            assertEquals(SolveResult.Status.CANCELLED,
+                         MagnetsRun.run(hard, engine, false, null, none.withCancellation(token)).getStatus(), engine);
+        }
+        assertEquals(SolveResult.Status.NODE_LIMIT,
+                     MagnetsRun.run(hard, "parallel", false, null, none.withMaxNodes(1000)).getStatus());
+        assertEquals(SolveResult.Status.TIMED_OUT,
+                     MagnetsRun.run(hard, "count", false, null, none.withTimeout(Duration.ofMillis(20))).getStatus());
+
+        Thread.currentThread().interrupt();
+        try {
+            SolveResult interrupted = new Backtracker(false).solveInPlace(config, none.withMaxNodes(1 << 30));
+            assertEquals(SolveResult.Status.CANCELLED, interrupted.getStatus());
+        } finally {
+            Thread.interrupted();
+        }
+
+        // a search stopped by its budget must not record its frontier as failed
+        TranspositionTable table = new TranspositionTable(1 << 12);
+        Backtracker memo = new Backtracker(false, table);
+        assertEquals(SolveResult.Status.NODE_LIMIT,
+                     memo.solve(new MagnetsConfig(hard), none.withMaxNodes(5000)).getStatus());
+        assertSameSolution(new Backtracker(false).solve(new MagnetsConfig("data/magnets-13.txt")),
+                           memo.solve(new MagnetsConfig("data/magnets-13.txt"), none).getSolution(), "13");
+        table.clear();
+        assertEquals(SolveResult.Status.SOLVED, memo.solve(new MagnetsConfig(hard), none).getStatus());
+    }
+
+    /** Test an asynchronous search reports progress and stops when cancelled. */
+    @Test
+    public void testSolveAsync() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch progressed = new CountDownLatch(1);
+            SearchLimits limits = SearchLimits.NONE.withProgress(Duration.ofMillis(1), (count, elapsed) -> {
+                assertTrue(count > 0);
+                progressed.countDown();
+            });
+            Backtracker bt = new Backtracker(false);
+            CompletableFuture<SolveResult> future = bt.solveAsync(
+                    new MagnetsConfig("data/magnets-14.txt"), limits, executor);
+            assertTrue(progressed.await(10, TimeUnit.SECONDS));
+            assertTrue(future.cancel(true));
+            // the search notices the cancel and frees the thread
+            assertEquals(SolveResult.Status.SOLVED, executor.submit(() ->
+                    new Backtracker(false).solve(new MagnetsConfig("data/magnets-8.txt"), SearchLimits.NONE)
+                                         .getStatus()).get(10, TimeUnit.SECONDS));
+
+            SolveResult result = new Backtracker(false).solveAsync(
+                    new MagnetsConfig("data/magnets-8.txt"), SearchLimits.NONE, executor).get();
+            assertEquals(SolveResult.Status.SOLVED, result.getStatus());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Make sure two puzzles have the same counts and pairs.
+     *
+     * @param expected the puzzle read from its own file
+     * @param actual the puzzle read back from a corpus
+     * @param message the failure message
+     */
+    private static void assertSamePuzzle(MagnetsPuzzle expected, MagnetsPuzzle actual, String message) {
+        assertEquals(expected.getRows(), actual.getRows(), message);
+        assertEquals(expected.getCols(), actual.getCols(), message);
+        for (int row = 0; row < expected.getRows(); row++) {
+            assertEquals(expected.getPosRowCount(row), actual.getPosRowCount(row), message);
+            assertEquals(expected.getNegRowCount(row), actual.getNegRowCount(row), message);
+            for (int col = 0; col < expected.getCols(); col++) {
+                assertEquals(expected.getPair(row, col), actual.getPair(row, col), message);
+            }
+        }
+        for (int col = 0; col < expected.getCols(); col++) {
+            assertEquals(expected.getPosColCount(col), actual.getPosColCount(col), message);
+            assertEquals(expected.getNegColCount(col), actual.getNegColCount(col), message);
+        }
+    }
+
+    /** Test every puzzle survives a text and a binary corpus, read with and without mmap. */
+    @Test
+    public void testCorpus() throws IOException {
+        List<MagnetsPuzzle> puzzles = new ArrayList<>();
+        for (String filename : PUZZLES) {
+            puzzles.add(MagnetsPuzzle.read(filename));
+        }
+        for (boolean binary : new boolean[] {false, true}) {
+            Path corpus = Files.createTempFile("magnets", binary ? ".magc" : ".txt");
+            try {
+                try (MagnetsCorpusWriter writer = new MagnetsCorpusWriter(corpus, binary)) {
+                    for (MagnetsPuzzle puzzle : puzzles) {
+                        writer.write(puzzle);
+                    }
+                }
+                for (boolean mmap : new boolean[] {false, true}) {
+                    try (MagnetsCorpusReader reader = new MagnetsCorpusReader(corpus, mmap)) {
+                        assertEquals(binary, reader.isBinary());
+                        for (int i = 0; i < puzzles.size(); i++) {
+                            assertSamePuzzle(puzzles.get(i), reader.read(), PUZZLES[i] + " binary=" + binary);
+                        }
+                        assertNull(reader.read());
+                    }
+                }
+            } finally {
+                Files.delete(corpus);
+            }
+        }
+    }
+
+    /** Test a malformed corpus is reported with its line. */
+    @Test
+    public void testCorpusErrors() throws IOException {
+        Path corpus = Files.createTempFile("magnets", ".txt");
+        try {
+            Files.write(corpus, "1 2\n1\n0 1\n0\n1 x\nL R\n".getBytes());
+            try (MagnetsCorpusReader reader = new MagnetsCorpusReader(corpus, false)) {
+                IOException e = assertThrows(IOException.class, reader::read);
+                assertTrue(e.getMessage().contains("line 5"), e.getMessage());
+            }
+        } finally {
+            Files.delete(corpus);
+        }
+    }
+
+    /** Test generated puzzles are reproducible, solvable, and unique when asked to be. */
+    @Test
+    public void testGenerator() {
+        for (int seed = 0; seed < 10; seed++) {
+            MagnetsPuzzle puzzle = new MagnetsGenerator(seed).generate(5, 6, 0.3, false);
+            assertSamePuzzle(puzzle, new MagnetsGenerator(seed).generate(5, 6, 0.3, false), "seed " + seed);
+            assertTrue(new Backtracker(false).solve(new MagnetsConfig(puzzle)).isPresent(), "seed " + seed);
+
+            MagnetsPuzzle unique = new MagnetsGenerator(seed).generate(6, 6, seed / 9.0, true);
+            assertEquals(1, new Backtracker(false).countSolutions(new MagnetsConfig(unique), 2), "seed " + seed);
+        }
+        MagnetsPuzzle large = new MagnetsGenerator(1).generate(1000, 1000, 0.5, false);
+        assertEquals(1000, large.getRows());
+        assertThrows(IllegalArgumentException.class, () -> new MagnetsGenerator(1).generate(3, 5, 0, false));
+    }
+
+    /**
+     * Mirror, transpose and polarity swap a puzzle.
+     *
+     * @param puzzle the puzzle
+     * @param transpose swap the rows and columns first
+     * @param flipRows then mirror top to bottom
+     * @param flipCols then mirror left to right
+     * @param swap swap the pos and neg counts
+     * @return the new puzzle
+     */
+    private static MagnetsPuzzle transform(MagnetsPuzzle puzzle, boolean transpose, boolean flipRows,
+                                           boolean flipCols, boolean swap) {
+        int rows = transpose ? puzzle.getCols() : puzzle.getRows();
+        int cols = transpose ? puzzle.getRows() : puzzle.getCols();
+        int[][] counts = {new int[rows], new int[cols], new int[rows], new int[cols]};
+        char[][] grid = new char[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int r = flipRows ? rows - 1 - row : row;
+                int c = flipCols ? cols - 1 - col : col;
+                char pair = transpose ? puzzle.getPair(c, r) : puzzle.getPair(r, c);
+                if (transpose) {
+                    pair = "TBLR".charAt("LRTB".indexOf(pair));
+                }
+                if (flipRows && (pair == 'T' || pair == 'B')) {
+                    pair = pair == 'T' ? 'B' : 'T';
+                }
+                if (flipCols && (pair == 'L' || pair == 'R')) {
+                    pair = pair == 'L' ? 'R' : 'L';
+                }
+                grid[row][col] = pair;
+                if (col == 0) {
+                    counts[0][row] = transpose ? puzzle.getPosColCount(r) : puzzle.getPosRowCount(r);
+                    counts[2][row] = transpose ? puzzle.getNegColCount(r) : puzzle.getNegRowCount(r);
+                }
+                if (row == 0) {
+                    counts[1][col] = transpose ? puzzle.getPosRowCount(c) : puzzle.getPosColCount(c);
+                    counts[3][col] = transpose ? puzzle.getNegRowCount(c) : puzzle.getNegColCount(c);
+                }
+            }
+        }
+        return swap ? new MagnetsPuzzle(counts[2], counts[3], counts[0], counts[1], grid)
+                    : new MagnetsPuzzle(counts[0], counts[1], counts[2], counts[3], grid);
+    }
+
+    /** Test the solution cache answers every mirror image of a puzzle, from memory and from disk. */
+    @Test
+    public void testSolutionCache() throws IOException {
+        Path dir = Files.createTempDirectory("magnets-cache");
+        try {
+            MagnetsSolutionCache cache = new MagnetsSolutionCache(4, dir);
+            for (String filename : new String[] {"data/magnets-14.txt", "data/magnets-nosol.txt"}) {
+                MagnetsPuzzle puzzle = MagnetsPuzzle.read(filename);
+                MagnetsRun first = MagnetsRun.run(puzzle, "sat", false, null, SearchLimits.NONE, cache);
+                for (int variant = 0; variant < 16; variant++) {
+                    MagnetsPuzzle mirrored = transform(puzzle, (variant & 8) != 0, (variant & 4) != 0,
+                                                       (variant & 2) != 0, (variant & 1) != 0);
+                    MagnetsRun run = MagnetsRun.run(mirrored, "recursive", false, null, SearchLimits.NONE, cache);
+                    assertEquals(0, run.getConfigCount(), filename + " variant " + variant);
+                    assertSolves(mirrored, first.getSolution(), run.getSolution(), filename + " variant " + variant);
+                }
+            }
+            assertEquals(32, cache.getHits());
+            assertEquals(2, cache.getMisses());
+
+            // a new cache finds the solutions on disk
+            MagnetsSolutionCache restarted = new MagnetsSolutionCache(4, dir);
+            MagnetsPuzzle puzzle = transform(MagnetsPuzzle.read("data/magnets-14.txt"), true, false, true, false);
+            MagnetsRun run = restarted.lookup(puzzle);
+            assertSolves(puzzle, Optional.of(new MagnetsConfig(puzzle)), run.getSolution(), "disk");
+            assertEquals(1, restarted.getDiskHits());
+            assertNull(restarted.lookup(MagnetsPuzzle.read("data/magnets-1.txt")));
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    /** Test symmetric puzzles search half the tree, and counting and enumerating add the mirror images back. */
+    @Test
+    public void testPolaritySymmetry() {
+        for (int seed = 0; seed < 5; seed++) {
+            // with every count hidden, swapping + and - always gives another solution
+            MagnetsPuzzle puzzle = new MagnetsGenerator(seed).generate(4, 4, 1.0, false);
+            assertTrue(puzzle.isPolaritySymmetric());
+            Backtracker full = new Backtracker(false);
+            long expected = full.countSolutionsInPlace(new MagnetsBitboardConfig(puzzle), Long.MAX_VALUE);
+            Backtracker broken = new Backtracker(false);
+            assertEquals(expected, broken.countSolutions(new MagnetsConfig(puzzle), Long.MAX_VALUE), "seed " + seed);
+            assertTrue(broken.getConfigCount() < full.getConfigCount(), "seed " + seed);
+            assertEquals(expected, new Backtracker(false).countSolutionsInPlace(new MagnetsConfig(puzzle),
+                                                                                Long.MAX_VALUE), "seed " + seed);
+            assertEquals(expected, new ParallelBacktracker().countSolutions(new MagnetsDominoConfig(puzzle),
+                                                                            Long.MAX_VALUE), "seed " + seed);
+            assertEquals(Math.min(expected, 3), new Backtracker(false).countSolutions(new MagnetsConfig(puzzle), 3));
+
+            List<String> boards = new ArrayList<>();
+            new Backtracker(false).solutions(new MagnetsDominoConfig(puzzle)).forEach(solution -> {
+                StringBuilder board = new StringBuilder();
+                for (int row = 0; row < puzzle.getRows(); row++) {
+                    for (int col = 0; col < puzzle.getCols(); col++) {
+                        board.append(((IMagnetTest) solution).getVal(row, col));
+                    }
+                }
+                boards.add(board.toString());
+            });
+            assertEquals(expected, boards.size(), "seed " + seed);
+            assertEquals(expected, boards.stream().distinct().count(), "seed " + seed);
+            for (String board : boards) {
+                String mirror = board.replace('+', '#').replace('-', '+').replace('#', '-');
+                assertTrue(boards.contains(mirror), "seed " + seed);
+            }
+        }
+    }
+
+    /** Test the lazy successors are exactly the valid eager successors, in order. */
+    @Test
+    public void testLazySuccessors() throws IOException {
+        MagnetsPuzzle puzzle = MagnetsPuzzle.read("data/magnets-8.txt");
+        // a symmetric puzzle, so the first magnet is checked too
+        MagnetsPuzzle symmetric = new MagnetsGenerator(0).generate(4, 4, 1.0, false);
+        for (Configuration config : List.of(new MagnetsConfig(puzzle), new MagnetsPackedConfig(puzzle),
+                                            new MagnetsPackedConfig(symmetric))) {
+            assertLazySuccessors(config);
+        }
+    }
+
+    /**
+     * Make sure the lazy successors of the first levels under a config are
+     * exactly its valid eager successors, in order.
+     *
+     * @param config the config at the top
+     */
+    private static void assertLazySuccessors(Configuration config) {
+        List<Configuration> level = List.of(config);
+        for (int depth = 0; depth < 4; depth++) {
+            List<Configuration> next = new ArrayList<>();
+            for (Configuration parent : level) {
+                List<String> expected = new ArrayList<>();
+                for (Configuration child : parent.getSuccessors()) {
+                    if (child.isValid()) {
+                        expected.add(child.toString());
+                    }
+                }
+                List<String> actual = new ArrayList<>();
+                Iterator<Configuration> it = parent.successorIterator();
+                while (it.hasNext()) {
+                    Configuration child = it.next();
+                    actual.add(child.toString());
+                    next.add(child);
+                }
+                assertEquals(expected, actual);
+            }
+            level = next;
+        }
+    }
+
+    /** Test the transposition table finds the same solutions and counts. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testTranspositionTable(Reference ref) {
+        Backtracker memo = new Backtracker(false, new TranspositionTable(1 << 12));
+        assertSameSolution(ref.expected, memo.solve(new MagnetsConfig(ref.puzzle)), ref.filename);
+        memo = new Backtracker(false, new TranspositionTable(1 << 12));
+        assertEquals(ref.count, memo.countSolutionsInPlace(new MagnetsConfig(ref.puzzle), Long.MAX_VALUE),
+                     ref.filename);
+    }
+
+    /**
+     * Test the transposition table cuts down the search of a board whose
+     * rows are all ignored, and stays within its capacity.
+     */
+    @Test
+    public void testTranspositionTableIgnoredRows() {
+        int rows = 10;
+        char[][] grid = new char[rows][];
+        int[] ignored = new int[rows];
+        Arrays.fill(ignored, MagnetsPuzzle.IGNORED);
+        for (int row = 0; row < rows; row++) {
+            grid[row] = "LRLR".toCharArray();
+        }
+        // the last column can never hold one + more than half its cells
+        int[] posCol = {rows / 2, rows / 2, rows / 2, rows / 2 + 1};
+        int[] negCol = {-1, -1, -1, -1};
+        MagnetsPuzzle puzzle = new MagnetsPuzzle(ignored, posCol, ignored.clone(), negCol, grid);
+
+        Backtracker plain = new Backtracker(false);
+        assertEquals(0, plain.countSolutionsInPlace(new MagnetsConfig(puzzle), Long.MAX_VALUE));
+        TranspositionTable table = new TranspositionTable(1 << 12);
+        Backtracker memo = new Backtracker(false, table);
+        assertEquals(0, memo.countSolutionsInPlace(new MagnetsConfig(puzzle), Long.MAX_VALUE));
+        assertTrue(memo.getConfigCount() * 4 < plain.getConfigCount());
+        assertTrue(table.getHits() > 0);
+
+        TranspositionTable small = new TranspositionTable(16);
+        assertFalse(new Backtracker(false, small).solveInPlace(new MagnetsConfig(puzzle)).isPresent());
+        assertTrue(small.size() <= 16);
+        assertTrue(small.getEvictions() > 0);
+    }
+
+    /**
+     * Read every event of a binary trace.
+     *
+     * @param file the trace
+     * @return the kind, depth, position and value of each event
+     * @throws IOException if the trace cannot be read
+     */
+    private static List<String> readTrace(Path file) throws IOException {
+        List<String> events = new ArrayList<>();
+        try (BinaryTraceReader in = new BinaryTraceReader(file)) {
+            while (in.next()) {
+                events.add(in.getKind() + " " + in.getDepth() + " " + in.getPosition() + " " + in.getValue());
+            }
+        }
+        return events;
+    }
+
+    /** Test a binary trace records the configurations generated, and its filters. */
+    @Test
+    public void testTrace() throws IOException {
+        Path file = Files.createTempFile("magnets", ".mtrc");
+        try {
+            MagnetsConfig config = new MagnetsConfig("data/magnets-8.txt");
+            Backtracker bt = new Backtracker(false);
+            try (BinaryTraceWriter trace = new BinaryTraceWriter(file, 64, Integer.MAX_VALUE, 1, true)) {
+                bt.setListener(trace);
+                Optional<Configuration> sol = bt.solveInPlace(config);
+                assertTrue(sol.isPresent());
+            }
+            long[] kinds = new long[SearchListener.Kind.values().length];
+            int cells = config.getRows() * config.getCols();
+            try (BinaryTraceReader in = new BinaryTraceReader(file)) {
+                while (in.next()) {
+                    kinds[in.getKind().ordinal()]++;
+                    if (in.getKind() == SearchListener.Kind.GOAL) {
+                        assertEquals(cells, in.getDepth());
+                        assertEquals(cells - 1, in.getPosition());
+                        assertEquals(config.getVal(config.getRows() - 1, config.getCols() - 1), in.getValue());
+                    } else if (in.getKind() == SearchListener.Kind.CURRENT) {
+                        assertEquals(-1, in.getPosition());
+                    }
+                }
+            }
+            assertEquals(1, kinds[SearchListener.Kind.CURRENT.ordinal()]);
+            assertEquals(1, kinds[SearchListener.Kind.GOAL.ordinal()]);
+            long generated = kinds[SearchListener.Kind.VALID.ordinal()] + kinds[SearchListener.Kind.INVALID.ordinal()];
+            // the successors after the goal are counted but never generated
+            assertTrue(generated > 0 && generated <= bt.getConfigCount());
+
+            // the recursive search records the values it skips as invalid,
+            // so its trace matches the in-place one event for event
+            List<String> inPlace = readTrace(file);
+            assertTrue(kinds[SearchListener.Kind.INVALID.ordinal()] > 0);
+            try (BinaryTraceWriter trace = new BinaryTraceWriter(file, 64, Integer.MAX_VALUE, 1, true)) {
+                Backtracker recursive = new Backtracker(false);
+                recursive.setListener(trace);
+                assertTrue(recursive.solve(new MagnetsConfig(config.getPuzzle())).isPresent());
+            }
+            assertEquals(inPlace, readTrace(file));
+
+            // only every 10th event up to depth 5, so no goal
+            try (BinaryTraceWriter trace = new BinaryTraceWriter(file, 64, 5, 10, true)) {
+                bt.setListener(trace);
+                bt.solveInPlace(new MagnetsConfig(config.getPuzzle()));
+            }
+            long sampled = 0;
+            try (BinaryTraceReader in = new BinaryTraceReader(file)) {
+                while (in.next()) {
+                    sampled++;
+                    assertTrue(in.getDepth() <= 5);
+                }
+            }
+            assertTrue(sampled > 0 && sampled * 10 < generated);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Test the search metrics add up to the configurations generated. */
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("puzzles")
+    public void testSearchMetrics(Reference ref) {
+        String filename = ref.filename;
+        MagnetsConfig config = new MagnetsConfig(ref.puzzle);
+        SearchMetrics metrics = new SearchMetrics();
+        Backtracker bt = new Backtracker(false);
+        bt.setListener(metrics);
+        Optional<Configuration> sol = bt.solveInPlace(config);
+        assertEquals(1, metrics.getNodes(0), filename);
+        long pruned = 0;
+        for (long count : metrics.getPruneReasons().values()) {
+            pruned += count;
+        }
+        assertEquals(metrics.getInvalid(), pruned, filename);
+        long nodes = 0;
+        for (int depth = 0; depth <= metrics.getMaxDepth(); depth++) {
+            nodes += metrics.getNodes(depth);
+        }
+        assertEquals(metrics.getValid() + 1, nodes, filename);
+        assertTrue(metrics.getValid() + metrics.getInvalid() <= bt.getConfigCount(), filename);
+        if (sol.isPresent()) {
+            assertEquals(1, metrics.getSolutions(), filename);
+            assertEquals(config.getRows() * config.getCols(), metrics.getMaxDepth(), filename);
+            assertTrue(metrics.getTimeToFirstSolutionNanos() >= 0, filename);
+        } else {
+            assertEquals(-1, metrics.getTimeToFirstSolutionNanos(), filename);
+            // every valid config, and the initial one, is backed out of
+            assertEquals(metrics.getValid() + 1, metrics.getBacktracks(), filename);
+            assertEquals(metrics.getValid() + metrics.getInvalid(), bt.getConfigCount() - 1, filename);
+        }
+
+        // the recursive search skips invalid values before building
+        // them, but still reports them just like the in-place search
+        SearchMetrics recursive = new SearchMetrics();
+        Backtracker rbt = new Backtracker(false);
+        rbt.setListener(recursive);
+        assertSameSolution(sol, rbt.solve(new MagnetsConfig(ref.puzzle)), filename);
+        assertEquals(metrics.getValid(), recursive.getValid(), filename);
+        assertEquals(metrics.getInvalid(), recursive.getInvalid(), filename);
+        assertEquals(metrics.getPruneReasons(), recursive.getPruneReasons(), filename);
+        assertEquals(metrics.getBacktracks(), recursive.getBacktracks(), filename);
+        assertEquals(recursive.getValid(), rbt.getConfigCount() - 1, filename);
+    }
+
+    /** Test that undoing every move restores the initial board. */
+    @Test
+    public void testUndo() throws IOException {
+        MagnetsConfig config = new MagnetsConfig("data/magnets-nosol.txt");
+        String initial = config.toString();
+        assertFalse(new Backtracker(false).solveInPlace(config).isPresent());
+        assertEquals(initial, config.toString());
+        assertEquals(0, config.getCursorRow());
+        assertEquals(-1, config.getCursorCol());
+    }
+}
@@ -0,0 +1,129 @@
+package test;
+
+import org.junit.jupiter.api.Test;
+import sat.SatSolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A Junit 5 unit test for the CDCL SAT solver, checking its answers
+ * against brute force on small random formulas and on pigeonhole
+ * formulas, which take plenty of learning and restarts to refute.
+ */
+public class TestSatSolver {
+    /**
+     * Does an assignment satisfy every clause?
+     *
+     * @param clauses the clauses, DIMACS style
+     * @param values the value of each variable, from index 1
+     * @return true if it does
+     */
+    private static boolean satisfies(List<int[]> clauses, boolean[] values) {
+        for (int[] clause : clauses) {
+            boolean sat = false;
+            for (int lit : clause) {
+                sat |= values[Math.abs(lit)] == lit > 0;
+            }
+            if (!sat) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Test random 3-SAT formulas near the threshold against brute force. */
+    @Test
+    public void testRandom3Sat() {
+        Random random = new Random(42);
+        int vars = 12;
+        for (int round = 0; round < 200; round++) {
+            List<int[]> clauses = new ArrayList<>();
+            SatSolver solver = new SatSolver();
+            for (int v = 0; v < vars; v++) {
+                solver.newVariable();
+            }
+            for (int c = 0; c < 51; c++) {
+                int[] clause = new int[3];
+                for (int i = 0; i < 3; i++) {
+                    clause[i] = (random.nextInt(vars) + 1) * (random.nextBoolean() ? 1 : -1);
+                }
+                clauses.add(clause);
+                solver.addClause(clause);
+            }
+            boolean expected = false;
+            for (int bits = 0; bits < 1 << vars && !expected; bits++) {
+                boolean[] values = new boolean[vars + 1];
+                for (int v = 1; v <= vars; v++) {
+                    values[v] = (bits >> (v - 1) & 1) != 0;
+                }
+                expected = satisfies(clauses, values);
+            }
+            boolean actual = solver.solve();
+            assertEquals(expected, actual, "round " + round);
+            if (actual) {
+                boolean[] values = new boolean[vars + 1];
+                for (int v = 1; v <= vars; v++) {
+                    values[v] = solver.getValue(v);
+                }
+                assertTrue(satisfies(clauses, values), "round " + round);
+            }
+        }
+    }
+
+    /** Test n + 1 pigeons never fit in n holes, but n pigeons do. */
+    @Test
+    public void testPigeonhole() {
+        for (int holes = 2; holes <= 7; holes++) {
+            assertFalse(pigeonhole(holes + 1, holes).solve(), holes + " holes");
+            assertTrue(pigeonhole(holes, holes).solve(), holes + " holes");
+        }
+    }
+
+    /**
+     * Build the pigeonhole formula: every pigeon is in a hole, and no
+     * two pigeons share one.
+     *
+     * @param pigeons the number of pigeons
+     * @param holes the number of holes
+     * @return a solver holding the formula
+     */
+    private static SatSolver pigeonhole(int pigeons, int holes) {
+        SatSolver solver = new SatSolver();
+        int[][] in = new int[pigeons][holes];
+        for (int p = 0; p < pigeons; p++) {
+            for (int h = 0; h < holes; h++) {
+                in[p][h] = solver.newVariable();
+            }
+            solver.addClause(in[p]);
+        }
+        for (int h = 0; h < holes; h++) {
+            for (int p = 0; p < pigeons; p++) {
+                for (int q = p + 1; q < pigeons; q++) {
+                    solver.addClause(-in[p][h], -in[q][h]);
+                }
+            }
+        }
+        return solver;
+    }
+
+    /** Test clauses can be added after a solution to block it. */
+    @Test
+    public void testIncremental() {
+        SatSolver solver = new SatSolver();
+        int a = solver.newVariable();
+        int b = solver.newVariable();
+        solver.addClause(a, b);
+        int solutions = 0;
+        while (solver.solve()) {
+            solutions++;
+            solver.addClause(solver.getValue(a) ? -a : a, solver.getValue(b) ? -b : b);
+        }
+        assertEquals(3, solutions);
+    }
+}